@@ -0,0 +1,59 @@
+package liquibase.ext.keyspace.change;
+
+import liquibase.change.AbstractChange;
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.database.Database;
+import liquibase.statement.SqlStatement;
+import liquibase.util.StringUtil;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Ordering hint for AWS Keyspace: blocks until the given tables, or every table with pending DDL when none are given,
+ * are ACTIVE again before the next change runs. Does not generate any CQL.
+ */
+@DatabaseChange(name = "awaitTables",
+        description = "Waits until tables with pending DDL are ACTIVE",
+        priority = ChangeMetaData.PRIORITY_DEFAULT)
+public class AwaitTablesChange extends AbstractChange {
+
+    private String tableNames;
+
+    @DatabaseChangeProperty(description = "Comma separated names of the tables to wait on, all pending tables if not set")
+    public String getTableNames() {
+        return tableNames;
+    }
+
+    public void setTableNames(String tableNames) {
+        this.tableNames = tableNames;
+    }
+
+    /**
+     * @return the lower case table names to wait on, or null to wait on all pending tables
+     */
+    public Set<String> getTableNameSet() {
+        if (StringUtil.trimToNull(tableNames) == null) {
+            return null;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : StringUtil.splitAndTrim(tableNames, ",")) {
+            if (!name.isEmpty()) {
+                names.add(name.toLowerCase());
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        return new SqlStatement[0];
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return tableNames == null ? "Waited for all pending tables" : "Waited for tables " + tableNames;
+    }
+}
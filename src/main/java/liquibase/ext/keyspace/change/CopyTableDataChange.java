@@ -0,0 +1,180 @@
+package liquibase.ext.keyspace.change;
+
+import liquibase.change.AbstractChange;
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.ValidationErrors;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.data.KeyspaceTableCopier;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.statement.CopyTableDataStatement;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.CommentStatement;
+import liquibase.util.StringUtil;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies the rows of a table into another table of the keyspace, e.g. when the primary key has to change, which
+ * Cassandra can't do in place. The copy is done by {@link KeyspaceTableCopier}, token range by token range, and resumes
+ * with the ranges not copied yet if it fails and the changeset runs again.
+ * <p>
+ * Without a column mapping every source column which the target table also has is copied. When SQL is only written
+ * out, e.g. by update-sql, the copy is only noted as a comment.
+ */
+@DatabaseChange(name = "copyTableData",
+        description = "Copies the rows of a table into another table",
+        priority = ChangeMetaData.PRIORITY_DEFAULT, appliesTo = "table")
+public class CopyTableDataChange extends AbstractChange {
+
+    private String sourceTableName;
+    private String targetTableName;
+    private String columnMapping;
+    private Integer tokenRanges;
+    private Integer parallelism;
+    private Integer writeCapacity;
+
+    @DatabaseChangeProperty(description = "Name of the table to copy the rows of")
+    public String getSourceTableName() {
+        return sourceTableName;
+    }
+
+    public void setSourceTableName(String sourceTableName) {
+        this.sourceTableName = sourceTableName;
+    }
+
+    @DatabaseChangeProperty(description = "Name of the table to copy the rows into")
+    public String getTargetTableName() {
+        return targetTableName;
+    }
+
+    public void setTargetTableName(String targetTableName) {
+        this.targetTableName = targetTableName;
+    }
+
+    @DatabaseChangeProperty(description = "Comma separated target columns to copy, each optionally followed by " +
+            "'=' and the source column it is copied from, e.g. 'id, name=full_name'. All common columns if not set")
+    public String getColumnMapping() {
+        return columnMapping;
+    }
+
+    public void setColumnMapping(String columnMapping) {
+        this.columnMapping = columnMapping;
+    }
+
+    @DatabaseChangeProperty(description = "Number of token ranges the source table is split into")
+    public Integer getTokenRanges() {
+        return tokenRanges;
+    }
+
+    public void setTokenRanges(Integer tokenRanges) {
+        this.tokenRanges = tokenRanges;
+    }
+
+    @DatabaseChangeProperty(description = "Maximum number of token ranges copied concurrently")
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    @DatabaseChangeProperty(description = "Write capacity units per second the copy may consume, 0 for no limit")
+    public Integer getWriteCapacity() {
+        return writeCapacity;
+    }
+
+    public void setWriteCapacity(Integer writeCapacity) {
+        this.writeCapacity = writeCapacity;
+    }
+
+    /**
+     * @return the source column of every target column in the column mapping, or null if there is none
+     */
+    public Map<String, String> getColumnMap() {
+        if (StringUtil.trimToNull(columnMapping) == null) {
+            return null;
+        }
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (String entry : StringUtil.splitAndTrim(columnMapping, ",")) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int separator = entry.indexOf('=');
+            String target = separator < 0 ? entry : entry.substring(0, separator).trim();
+            String source = separator < 0 ? entry : entry.substring(separator + 1).trim();
+            columns.put(target, source);
+        }
+        return columns;
+    }
+
+    @Override
+    public boolean supports(Database database) {
+        return database instanceof KeyspaceDatabase;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        errors.checkRequiredField("sourceTableName", sourceTableName);
+        errors.checkRequiredField("targetTableName", targetTableName);
+        if (getColumnMap() != null) {
+            for (Map.Entry<String, String> column : getColumnMap().entrySet()) {
+                if (column.getKey().isEmpty() || column.getValue().isEmpty()) {
+                    errors.addError("Invalid columnMapping entry for " + column);
+                }
+            }
+        }
+        return errors;
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        if (!((KeyspaceDatabase) database).updatesDatabase()) {
+            return new SqlStatement[]{new CommentStatement("copyTableData copies the rows of " + sourceTableName
+                    + " into " + targetTableName + " when the changeset is deployed")};
+        }
+        return new SqlStatement[]{new CopyTableDataStatement(this, (KeyspaceDatabase) database)};
+    }
+
+    /**
+     * Copies the rows of the source table into the target table.
+     */
+    public void copy(KeyspaceDatabase database) throws DatabaseException {
+        Map<String, String> columns = getColumnMap();
+        if (columns == null) {
+            columns = new LinkedHashMap<>();
+            List<String> targetColumns = readColumns(database, targetTableName);
+            for (String column : readColumns(database, sourceTableName)) {
+                if (targetColumns.contains(column)) {
+                    columns.put(column, column);
+                }
+            }
+            if (columns.isEmpty()) {
+                throw new DatabaseException(sourceTableName + " and " + targetTableName + " have no columns in common");
+            }
+        }
+        String copyId = (getChangeSet() == null ? "" : getChangeSet().toString(false)) + ":" + sourceTableName + ">" + targetTableName;
+        new KeyspaceTableCopier(database, sourceTableName, targetTableName, columns, copyId).copy(
+                tokenRanges != null ? tokenRanges : KeyspaceConfiguration.COPY_TABLE_DATA_TOKEN_RANGES.getCurrentValue(),
+                parallelism != null ? parallelism : KeyspaceConfiguration.COPY_TABLE_DATA_PARALLELISM.getCurrentValue(),
+                writeCapacity != null ? writeCapacity : KeyspaceConfiguration.COPY_TABLE_DATA_WRITE_CAPACITY.getCurrentValue());
+    }
+
+    private static List<String> readColumns(KeyspaceDatabase database, String tableName) throws DatabaseException {
+        return database.getStatementCache().query(
+                "SELECT column_name FROM system_schema.columns WHERE keyspace_name = ? AND table_name = ?",
+                rs -> rs.getString("column_name"), database.getDefaultCatalogName(), tableName.toLowerCase());
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Copied the rows of " + sourceTableName + " into " + targetTableName;
+    }
+}
@@ -0,0 +1,132 @@
+package liquibase.ext.keyspace.change;
+
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.change.core.CreateTableChange;
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.statement.CreateTableStatementKeyspace;
+import liquibase.statement.core.CreateTableStatement;
+
+/**
+ * createTable with the table options of AWS Keyspace: capacity mode and throughput, default TTL and point in time
+ * recovery. They are set by the CREATE TABLE statement itself, so the table doesn't need an ALTER TABLE, and another
+ * wait for it to become ACTIVE, after it is created. In XML changelogs the options are attributes of an extension
+ * namespace. Other databases ignore them.
+ */
+@DatabaseChange(name = "createTable",
+        description = "Create Table",
+        priority = ChangeMetaData.PRIORITY_DATABASE)
+public class CreateTableChangeKeyspace extends CreateTableChange {
+
+    public static final String PROVISIONED = "PROVISIONED";
+    public static final String PAY_PER_REQUEST = "PAY_PER_REQUEST";
+
+    private String capacityMode;
+    private Integer readCapacityUnits;
+    private Integer writeCapacityUnits;
+    private Integer defaultTimeToLive;
+    private Boolean pointInTimeRecovery;
+
+    @DatabaseChangeProperty(description = "AWS Keyspace capacity mode, PROVISIONED or PAY_PER_REQUEST. PROVISIONED " +
+            "if capacity units are given", supportsDatabase = "keyspace")
+    public String getCapacityMode() {
+        return capacityMode;
+    }
+
+    public void setCapacityMode(String capacityMode) {
+        this.capacityMode = capacityMode;
+    }
+
+    @DatabaseChangeProperty(description = "Provisioned read capacity units", supportsDatabase = "keyspace")
+    public Integer getReadCapacityUnits() {
+        return readCapacityUnits;
+    }
+
+    public void setReadCapacityUnits(Integer readCapacityUnits) {
+        this.readCapacityUnits = readCapacityUnits;
+    }
+
+    @DatabaseChangeProperty(description = "Provisioned write capacity units", supportsDatabase = "keyspace")
+    public Integer getWriteCapacityUnits() {
+        return writeCapacityUnits;
+    }
+
+    public void setWriteCapacityUnits(Integer writeCapacityUnits) {
+        this.writeCapacityUnits = writeCapacityUnits;
+    }
+
+    @DatabaseChangeProperty(description = "Default TTL of the rows in seconds. Enables TTL on the table",
+            supportsDatabase = "keyspace")
+    public Integer getDefaultTimeToLive() {
+        return defaultTimeToLive;
+    }
+
+    public void setDefaultTimeToLive(Integer defaultTimeToLive) {
+        this.defaultTimeToLive = defaultTimeToLive;
+    }
+
+    @DatabaseChangeProperty(description = "If true, point in time recovery is enabled", supportsDatabase = "keyspace")
+    public Boolean getPointInTimeRecovery() {
+        return pointInTimeRecovery;
+    }
+
+    public void setPointInTimeRecovery(Boolean pointInTimeRecovery) {
+        this.pointInTimeRecovery = pointInTimeRecovery;
+    }
+
+    /**
+     * @return the capacity mode, PROVISIONED if only capacity units are given, or null for the account default
+     */
+    public String getEffectiveCapacityMode() {
+        if (capacityMode != null) {
+            return capacityMode.trim().toUpperCase();
+        }
+        return readCapacityUnits != null || writeCapacityUnits != null ? PROVISIONED : null;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        if (!(database instanceof KeyspaceDatabase)) {
+            return errors;
+        }
+        validateCapacity(errors, getEffectiveCapacityMode(), readCapacityUnits, writeCapacityUnits);
+        if (defaultTimeToLive != null && defaultTimeToLive < 0) {
+            errors.addError("defaultTimeToLive can't be negative");
+        }
+        return errors;
+    }
+
+    /**
+     * Checks the capacity mode is known and capacity units are given with, and only with, provisioned capacity.
+     */
+    static void validateCapacity(ValidationErrors errors, String mode, Integer readCapacityUnits, Integer writeCapacityUnits) {
+        if (mode != null && !mode.equals(PROVISIONED) && !mode.equals(PAY_PER_REQUEST)) {
+            errors.addError("capacityMode must be " + PROVISIONED + " or " + PAY_PER_REQUEST);
+        }
+        if (PROVISIONED.equals(mode) && (readCapacityUnits == null || writeCapacityUnits == null)) {
+            errors.addError("readCapacityUnits and writeCapacityUnits are required with " + PROVISIONED + " capacity");
+        }
+        if (PAY_PER_REQUEST.equals(mode) && (readCapacityUnits != null || writeCapacityUnits != null)) {
+            errors.addError("readCapacityUnits and writeCapacityUnits can't be set with " + PAY_PER_REQUEST + " capacity");
+        }
+        if ((readCapacityUnits != null && readCapacityUnits < 1) || (writeCapacityUnits != null && writeCapacityUnits < 1)) {
+            errors.addError("readCapacityUnits and writeCapacityUnits must be at least 1");
+        }
+    }
+
+    @Override
+    protected CreateTableStatement generateCreateTableStatement() {
+        CreateTableStatementKeyspace statement = new CreateTableStatementKeyspace(getCatalogName(), getSchemaName(),
+                getTableName(), getRemarks(), getTableType());
+        statement.setCapacityMode(getEffectiveCapacityMode());
+        statement.setReadCapacityUnits(readCapacityUnits);
+        statement.setWriteCapacityUnits(writeCapacityUnits);
+        statement.setDefaultTimeToLive(defaultTimeToLive);
+        statement.setPointInTimeRecovery(pointInTimeRecovery);
+        return statement;
+    }
+}
@@ -0,0 +1,54 @@
+package liquibase.ext.keyspace.change;
+
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.core.DeleteDataChange;
+import liquibase.database.Database;
+import liquibase.ext.keyspace.data.KeyspaceRangeModifier;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.statement.RangeModifyDataStatement;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.CommentStatement;
+import liquibase.statement.core.DeleteStatement;
+import liquibase.util.SqlUtil;
+
+/**
+ * delete for AWS Keyspace which also deletes rows by a where clause that doesn't name the full primary key.
+ * <p>
+ * Cassandra only deletes rows by their primary key. Such a where clause is run by {@link KeyspaceRangeModifier}, which
+ * scans the table for the matching rows and deletes them one by one. A delete without a where clause is a TRUNCATE,
+ * one by primary key the core behaviour. When SQL is only written out, e.g. by update-sql, the scan is only noted as a
+ * comment.
+ */
+@DatabaseChange(name = "delete",
+        description = "Deletes data from an existing table",
+        priority = ChangeMetaData.PRIORITY_DATABASE, appliesTo = "table")
+public class DeleteDataChangeKeyspace extends DeleteDataChange {
+
+    @Override
+    public boolean generateStatementsVolatile(Database database) {
+        // they depend on the primary key of the table
+        return database instanceof KeyspaceDatabase || super.generateStatementsVolatile(database);
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        SqlStatement[] statements = super.generateStatements(database);
+        if (!(database instanceof KeyspaceDatabase) || getWhere() == null || !(statements[0] instanceof DeleteStatement)) {
+            return statements;
+        }
+        KeyspaceDatabase keyspaceDatabase = (KeyspaceDatabase) database;
+        DeleteStatement statement = (DeleteStatement) statements[0];
+        String where = SqlUtil.replacePredicatePlaceholders(database, statement.getWhere(), statement.getWhereColumnNames(),
+                statement.getWhereParameters());
+        if (KeyspaceRangeModifier.isKeyed(where, keyspaceDatabase.getConnectionProfile().getPrimaryKeyColumns(getTableName()))) {
+            return statements;
+        }
+        if (!keyspaceDatabase.updatesDatabase()) {
+            return new SqlStatement[]{new CommentStatement("delete scans " + getTableName() + " for the rows matching "
+                    + where + " when the changeset is deployed")};
+        }
+        return new SqlStatement[]{new RangeModifyDataStatement(new KeyspaceRangeModifier(keyspaceDatabase, getTableName(), where,
+                "DELETE FROM " + database.getDefaultCatalogName() + "." + getTableName()))};
+    }
+}
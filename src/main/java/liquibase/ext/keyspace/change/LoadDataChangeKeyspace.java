@@ -0,0 +1,190 @@
+package liquibase.ext.keyspace.change;
+
+import liquibase.Scope;
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.core.LoadDataChange;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.executor.ExecutorService;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.data.KeyspaceBatchWriter;
+import liquibase.ext.keyspace.data.TokenBucket;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.sqlgenerator.InsertSetGeneratorKeyspace;
+import liquibase.ext.keyspace.statement.StreamingLoadDataStatement;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.InsertSetStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.util.csv.CSVReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * loadData for AWS Keyspace which streams the CSV file instead of reading it into memory as a whole.
+ * <p>
+ * The file is read in chunks of {@link KeyspaceConfiguration#LOAD_DATA_CHUNK_SIZE} rows. Each chunk is converted by the
+ * core loadData logic and queued as CQL batches, up to {@link KeyspaceConfiguration#LOAD_DATA_MAX_IN_FLIGHT} of them,
+ * while the next chunk is read. The batches are sent one at a time in file order, throttled to
+ * {@link KeyspaceConfiguration#LOAD_DATA_WRITE_CAPACITY} write capacity units per second, so a primary key repeated in
+ * the file keeps the values of its last row. When SQL is only written out, e.g. by update-sql, the core behaviour is
+ * used.
+ */
+@DatabaseChange(name = "loadData",
+        description = "Loads data from a CSV file into an existing table",
+        priority = ChangeMetaData.PRIORITY_DATABASE, appliesTo = "table",
+        since = "1.7")
+public class LoadDataChangeKeyspace extends LoadDataChange {
+
+    private ChunkReader chunkReader;
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        if (chunkReader != null || !(database instanceof KeyspaceDatabase) || !((KeyspaceDatabase) database).updatesDatabase()) {
+            return super.generateStatements(database);
+        }
+        return new SqlStatement[]{new StreamingLoadDataStatement(this, (KeyspaceDatabase) database)};
+    }
+
+    @Override
+    public CSVReader getCSVReader() throws IOException, LiquibaseException {
+        if (chunkReader != null) {
+            return chunkReader;
+        }
+        return super.getCSVReader();
+    }
+
+    /**
+     * Streams the CSV file into the table.
+     */
+    public void load(KeyspaceDatabase database) throws DatabaseException {
+        int writeCapacity = KeyspaceConfiguration.LOAD_DATA_WRITE_CAPACITY.getCurrentValue();
+        int writeUnitsPerRow = KeyspaceConfiguration.LOGGED_BATCHES.getCurrentValue() ? 2 : 1;
+        long rows = 0;
+        CSVReader csvReader = null;
+        try (KeyspaceBatchWriter writer = new KeyspaceBatchWriter(
+                database.getStatementCache(), KeyspaceConfiguration.LOAD_DATA_MAX_IN_FLIGHT.getCurrentValue(),
+                writeCapacity > 0 ? new TokenBucket(writeCapacity) : null, database.getRetryPolicy())) {
+            csvReader = super.getCSVReader();
+            if (csvReader == null) {
+                throw new UnexpectedLiquibaseException("Unable to read file " + this.getFile());
+            }
+            String[] headers = csvReader.readNext();
+            if (headers == null) {
+                throw new UnexpectedLiquibaseException("Data file " + getFile() + " was empty");
+            }
+
+            ChunkReader chunk = new ChunkReader(csvReader, headers, KeyspaceConfiguration.LOAD_DATA_CHUNK_SIZE.getCurrentValue());
+            while (chunk.nextChunk()) {
+                SqlStatement[] statements;
+                chunkReader = chunk;
+                try {
+                    statements = database.batchInserts(super.generateStatements(database));
+                } finally {
+                    chunkReader = null;
+                }
+                for (SqlStatement statement : statements) {
+                    if (statement instanceof InsertSetStatement || statement instanceof InsertStatement) {
+                        int remaining = statement instanceof InsertSetStatement
+                                ? ((InsertSetStatement) statement).getStatements().size() : 1;
+                        rows += remaining;
+                        for (Sql sql : SqlGeneratorFactory.getInstance().generateSql(statement, database)) {
+                            int batchRows = Math.min(remaining, InsertSetGeneratorKeyspace.getBatchSize());
+                            remaining -= batchRows;
+                            writer.submit(sql.toSql(), Math.max(batchRows, sql.toSql().length() / 1024 + 1) * writeUnitsPerRow);
+                        }
+                    } else {
+                        // e.g. prepared statements for blob columns, keep them in order with what was sent so far
+                        writer.flush();
+                        Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database).execute(statement);
+                    }
+                }
+            }
+            writer.flush();
+            Scope.getCurrentScope().getLog(getClass()).info(String.format("Loaded %d rows from %s into %s in %d batches",
+                    rows, getFile(), getTableName(), writer.getWritten()));
+        } catch (DatabaseException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DatabaseException("Could not load " + getFile() + ": " + e.getMessage(), e);
+        } finally {
+            close(csvReader);
+        }
+    }
+
+    /**
+     * Closes the reader of the file outside of try-with-resources, {@link CSVReader#close()} is declared to throw any
+     * exception, including InterruptedException.
+     */
+    private void close(CSVReader csvReader) {
+        if (csvReader == null) {
+            return;
+        }
+        try {
+            csvReader.close();
+        } catch (Exception e) {
+            Scope.getCurrentScope().getLog(getClass()).fine("Could not close " + getFile(), e);
+        }
+    }
+
+    /**
+     * Presents the header plus the next chunk of rows of the underlying reader as a complete CSV file, so the core
+     * loadData logic can convert one chunk at a time.
+     */
+    static class ChunkReader extends CSVReader {
+
+        private final CSVReader delegate;
+        private final String[] headers;
+        private final int chunkSize;
+
+        private String[] nextRow;
+        private boolean headersRead;
+        private int rowsRead;
+
+        ChunkReader(CSVReader delegate, String[] headers, int chunkSize) {
+            super(new StringReader(""));
+            this.delegate = delegate;
+            this.headers = headers;
+            this.chunkSize = Math.max(1, chunkSize);
+        }
+
+        /**
+         * @return false if the underlying reader has no rows left
+         */
+        boolean nextChunk() throws IOException {
+            if (nextRow == null) {
+                nextRow = delegate.readNext();
+            }
+            headersRead = false;
+            rowsRead = 0;
+            return nextRow != null;
+        }
+
+        @Override
+        public String[] readNext() throws IOException {
+            if (!headersRead) {
+                headersRead = true;
+                return headers;
+            }
+            if (rowsRead >= chunkSize) {
+                return null;
+            }
+            String[] row = nextRow != null ? nextRow : delegate.readNext();
+            nextRow = null;
+            if (row != null) {
+                rowsRead++;
+            }
+            return row;
+        }
+
+        @Override
+        public void close() {
+            // the underlying reader is closed once the whole file is read
+        }
+    }
+}
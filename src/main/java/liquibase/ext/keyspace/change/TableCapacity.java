@@ -0,0 +1,142 @@
+package liquibase.ext.keyspace.change;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.sqlgenerator.CreateTableGeneratorKeyspace;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The capacity mode and provisioned throughput of a table.
+ * <p>
+ * The capacity a table had before an {@link UpdateTableCapacityChange} is kept in a side table of DATABASECHANGELOG,
+ * see {@link #getHistoryTableName(Database)}, keyed by table and changeset, so rolling the change back restores it.
+ */
+public class TableCapacity {
+
+    private final String capacityMode;
+    private final Integer readCapacityUnits;
+    private final Integer writeCapacityUnits;
+
+    public TableCapacity(String capacityMode, Integer readCapacityUnits, Integer writeCapacityUnits) {
+        this.capacityMode = capacityMode;
+        this.readCapacityUnits = readCapacityUnits;
+        this.writeCapacityUnits = writeCapacityUnits;
+    }
+
+    public String getCapacityMode() {
+        return capacityMode;
+    }
+
+    public Integer getReadCapacityUnits() {
+        return readCapacityUnits;
+    }
+
+    public Integer getWriteCapacityUnits() {
+        return writeCapacityUnits;
+    }
+
+    /**
+     * @return the ALTER TABLE setting this capacity on the given table
+     */
+    public String getAlterTableCql(String keyspaceName, String tableName) {
+        return "ALTER TABLE " + keyspaceName + "." + tableName + " WITH CUSTOM_PROPERTIES = {"
+                + CreateTableGeneratorKeyspace.getCapacityModeProperty(capacityMode, readCapacityUnits, writeCapacityUnits) + "}";
+    }
+
+    @Override
+    public String toString() {
+        return CreateTableChangeKeyspace.PROVISIONED.equals(capacityMode)
+                ? capacityMode + " " + readCapacityUnits + " RCU / " + writeCapacityUnits + " WCU" : String.valueOf(capacityMode);
+    }
+
+    /**
+     * @return the current capacity of the table, or null if it can't be read, e.g. from a Cassandra without
+     * system_schema_mcs
+     */
+    public static TableCapacity current(KeyspaceDatabase database, String tableName) throws DatabaseException {
+        if (!database.getConnectionProfile().hasSystemSchemaMcs()) {
+            return null;
+        }
+        List<Object> rows = database.getStatementCache().query(
+                "SELECT custom_properties FROM system_schema_mcs.tables WHERE keyspace_name = ? AND table_name = ?",
+                rs -> rs.getObject("custom_properties"), database.getDefaultCatalogName(), tableName.toLowerCase());
+        if (rows.isEmpty() || !(rows.get(0) instanceof Map)) {
+            return null;
+        }
+        Object capacityMode = ((Map<?, ?>) rows.get(0)).get("capacity_mode");
+        if (!(capacityMode instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> properties = (Map<?, ?>) capacityMode;
+        String mode = String.valueOf(properties.get("throughput_mode")).toUpperCase();
+        if (!CreateTableChangeKeyspace.PROVISIONED.equals(mode)) {
+            return new TableCapacity(mode, null, null);
+        }
+        return new TableCapacity(mode, toInteger(properties.get("read_capacity_units")), toInteger(properties.get("write_capacity_units")));
+    }
+
+    public static String getHistoryTableName(Database database) {
+        return database.getDatabaseChangeLogTableName().toLowerCase() + "_capacity";
+    }
+
+    /**
+     * Creates the history table if there is none yet.
+     */
+    public static void createHistoryTableIfNeeded(KeyspaceDatabase database) throws DatabaseException {
+        database.createTableIfNeeded(getHistoryTableName(database), "TABLE_NAME TEXT, CHANGESET TEXT, CAPACITY_MODE TEXT, "
+                + "READ_CAPACITY_UNITS INT, WRITE_CAPACITY_UNITS INT, PRIMARY KEY (TABLE_NAME, CHANGESET)");
+    }
+
+    /**
+     * @return the INSERT recording this capacity as the one the table had before the given changeset
+     */
+    public String getRecordCql(Database database, String tableName, String changeSet) {
+        return "INSERT INTO " + database.getDefaultCatalogName() + "." + getHistoryTableName(database)
+                + " (TABLE_NAME, CHANGESET, CAPACITY_MODE, READ_CAPACITY_UNITS, WRITE_CAPACITY_UNITS) VALUES ("
+                + quote(tableName.toLowerCase()) + ", " + quote(changeSet) + ", " + quote(capacityMode) + ", "
+                + readCapacityUnits + ", " + writeCapacityUnits + ")";
+    }
+
+    /**
+     * @return the DELETE of the capacity recorded for the given changeset
+     */
+    public static String getForgetCql(Database database, String tableName, String changeSet) {
+        return "DELETE FROM " + database.getDefaultCatalogName() + "." + getHistoryTableName(database)
+                + " WHERE TABLE_NAME = " + quote(tableName.toLowerCase()) + " AND CHANGESET = " + quote(changeSet);
+    }
+
+    /**
+     * @return the capacity the table had before the given changeset, or null if none was recorded
+     */
+    public static TableCapacity recorded(KeyspaceDatabase database, String tableName, String changeSet) throws DatabaseException {
+        List<TableCapacity> rows;
+        try {
+            rows = database.getStatementCache().query("SELECT CAPACITY_MODE, READ_CAPACITY_UNITS, WRITE_CAPACITY_UNITS FROM "
+                            + database.getDefaultCatalogName() + "." + getHistoryTableName(database)
+                            + " WHERE TABLE_NAME = ? AND CHANGESET = ?",
+                    rs -> new TableCapacity(rs.getString("CAPACITY_MODE"), toInteger(rs.getObject("READ_CAPACITY_UNITS")),
+                            toInteger(rs.getObject("WRITE_CAPACITY_UNITS"))),
+                    tableName.toLowerCase(), changeSet);
+        } catch (DatabaseException e) {
+            // no history table, nothing was ever recorded
+            Scope.getCurrentScope().getLog(TableCapacity.class).fine("Could not read " + getHistoryTableName(database), e);
+            return null;
+        }
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private static Integer toInteger(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString().trim());
+    }
+
+    private static String quote(String value) {
+        return value == null ? "null" : "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,59 @@
+package liquibase.ext.keyspace.change;
+
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.core.UpdateDataChange;
+import liquibase.database.Database;
+import liquibase.ext.keyspace.data.KeyspaceRangeModifier;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.statement.RangeModifyDataStatement;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.CommentStatement;
+import liquibase.statement.core.UpdateStatement;
+import liquibase.util.SqlUtil;
+
+/**
+ * update for AWS Keyspace which also updates rows by a where clause that doesn't name the full primary key, or by no
+ * where clause at all.
+ * <p>
+ * Cassandra only updates rows by their primary key. Any other where clause is run by {@link KeyspaceRangeModifier},
+ * which scans the table for the matching rows and updates them one by one. When SQL is only written out, e.g. by
+ * update-sql, the scan is only noted as a comment.
+ */
+@DatabaseChange(name = "update",
+        description = "Updates data in an existing table",
+        priority = ChangeMetaData.PRIORITY_DATABASE, appliesTo = "table")
+public class UpdateDataChangeKeyspace extends UpdateDataChange {
+
+    @Override
+    public boolean generateStatementsVolatile(Database database) {
+        // they depend on the primary key of the table
+        return database instanceof KeyspaceDatabase || super.generateStatementsVolatile(database);
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        SqlStatement[] statements = super.generateStatements(database);
+        if (!(database instanceof KeyspaceDatabase) || !(statements[0] instanceof UpdateStatement)) {
+            return statements;
+        }
+        KeyspaceDatabase keyspaceDatabase = (KeyspaceDatabase) database;
+        UpdateStatement statement = (UpdateStatement) statements[0];
+        String where = statement.getWhereClause() == null ? null : SqlUtil.replacePredicatePlaceholders(database,
+                statement.getWhereClause(), statement.getWhereColumnNames(), statement.getWhereParameters());
+        if (KeyspaceRangeModifier.isKeyed(where, keyspaceDatabase.getConnectionProfile().getPrimaryKeyColumns(getTableName()))) {
+            return statements;
+        }
+        if (!keyspaceDatabase.updatesDatabase()) {
+            return new SqlStatement[]{new CommentStatement("update scans " + getTableName() + " for the rows matching "
+                    + (where == null ? "no where clause" : where) + " when the changeset is deployed")};
+        }
+        // the core UPDATE without a where clause, the primary key of every row found is appended to it
+        UpdateStatement set = new UpdateStatement(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName());
+        statement.getNewColumnValues().forEach(set::addNewColumnValue);
+        String modification = SqlGeneratorFactory.getInstance().generateSql(set, database)[0].toSql();
+        return new SqlStatement[]{new RangeModifyDataStatement(new KeyspaceRangeModifier(keyspaceDatabase, getTableName(), where,
+                modification))};
+    }
+}
@@ -0,0 +1,159 @@
+package liquibase.ext.keyspace.change;
+
+import liquibase.Scope;
+import liquibase.change.AbstractChange;
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.RollbackImpossibleException;
+import liquibase.exception.ValidationErrors;
+import liquibase.executor.ExecutorService;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.statement.RecordTableCapacityStatement;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.CommentStatement;
+import liquibase.statement.core.RawSqlStatement;
+
+/**
+ * Switches the capacity mode or the provisioned throughput of an AWS Keyspace table, e.g. to raise it before a large
+ * loadData and lower it again afterwards. The next change only runs once the table is ACTIVE again.
+ * <p>
+ * The capacity the table had before is recorded when the change runs, see {@link TableCapacity}, and restored when
+ * the change is rolled back. When SQL is only written out, e.g. by update-sql, only the ALTER TABLE is.
+ */
+@DatabaseChange(name = "updateTableCapacity",
+        description = "Changes the capacity mode or provisioned throughput of a table",
+        priority = ChangeMetaData.PRIORITY_DEFAULT, appliesTo = "table")
+public class UpdateTableCapacityChange extends AbstractChange {
+
+    private String tableName;
+    private String capacityMode;
+    private Integer readCapacityUnits;
+    private Integer writeCapacityUnits;
+
+    @DatabaseChangeProperty(description = "Name of the table")
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @DatabaseChangeProperty(description = "PROVISIONED or PAY_PER_REQUEST. PROVISIONED if capacity units are given")
+    public String getCapacityMode() {
+        return capacityMode;
+    }
+
+    public void setCapacityMode(String capacityMode) {
+        this.capacityMode = capacityMode;
+    }
+
+    @DatabaseChangeProperty(description = "Provisioned read capacity units")
+    public Integer getReadCapacityUnits() {
+        return readCapacityUnits;
+    }
+
+    public void setReadCapacityUnits(Integer readCapacityUnits) {
+        this.readCapacityUnits = readCapacityUnits;
+    }
+
+    @DatabaseChangeProperty(description = "Provisioned write capacity units")
+    public Integer getWriteCapacityUnits() {
+        return writeCapacityUnits;
+    }
+
+    public void setWriteCapacityUnits(Integer writeCapacityUnits) {
+        this.writeCapacityUnits = writeCapacityUnits;
+    }
+
+    /**
+     * @return the capacity the table is switched to
+     */
+    public TableCapacity getCapacity() {
+        String mode = capacityMode != null ? capacityMode.trim().toUpperCase()
+                : readCapacityUnits != null || writeCapacityUnits != null ? CreateTableChangeKeyspace.PROVISIONED : null;
+        return new TableCapacity(mode, readCapacityUnits, writeCapacityUnits);
+    }
+
+    @Override
+    public boolean supports(Database database) {
+        return database instanceof KeyspaceDatabase;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        errors.checkRequiredField("tableName", tableName);
+        TableCapacity capacity = getCapacity();
+        if (capacity.getCapacityMode() == null) {
+            errors.addError("capacityMode or capacity units are required");
+        }
+        CreateTableChangeKeyspace.validateCapacity(errors, capacity.getCapacityMode(), readCapacityUnits, writeCapacityUnits);
+        return errors;
+    }
+
+    @Override
+    public boolean generateRollbackStatementsVolatile(Database database) {
+        // they depend on the recorded capacity
+        return true;
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        SqlStatement alterTable = new RawSqlStatement(getCapacity().getAlterTableCql(database.getDefaultCatalogName(), tableName));
+        if (!((KeyspaceDatabase) database).updatesDatabase()) {
+            return new SqlStatement[]{new CommentStatement("updateTableCapacity records the capacity of " + tableName
+                    + " when the changeset is deployed"), alterTable};
+        }
+        return new SqlStatement[]{new RecordTableCapacityStatement(this, (KeyspaceDatabase) database), alterTable};
+    }
+
+    /**
+     * Records the capacity the table has now, so rolling the change back restores it.
+     */
+    public void recordCurrentCapacity(KeyspaceDatabase database) throws DatabaseException {
+        TableCapacity previous = TableCapacity.current(database, tableName);
+        if (previous == null) {
+            Scope.getCurrentScope().getLog(getClass()).warning("Could not read the capacity of " + getTableName()
+                    + ", rolling back " + (getChangeSet() == null ? "the change" : getChangeSetKey()) + " won't be possible");
+            return;
+        }
+        TableCapacity.createHistoryTableIfNeeded(database);
+        Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database)
+                .execute(new RawSqlStatement(previous.getRecordCql(database, tableName, getChangeSetKey())));
+    }
+
+    @Override
+    public boolean supportsRollback(Database database) {
+        return database instanceof KeyspaceDatabase;
+    }
+
+    @Override
+    public SqlStatement[] generateRollbackStatements(Database database) throws RollbackImpossibleException {
+        TableCapacity previous;
+        try {
+            previous = TableCapacity.recorded((KeyspaceDatabase) database, tableName, getChangeSetKey());
+        } catch (DatabaseException e) {
+            throw new RollbackImpossibleException(e.getMessage(), e);
+        }
+        if (previous == null) {
+            throw new RollbackImpossibleException("No previous capacity of " + tableName + " was recorded by " + getChangeSetKey());
+        }
+        return new SqlStatement[]{
+                new RawSqlStatement(previous.getAlterTableCql(database.getDefaultCatalogName(), tableName)),
+                new RawSqlStatement(TableCapacity.getForgetCql(database, tableName, getChangeSetKey()))
+        };
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Capacity of " + tableName + " set to " + getCapacity();
+    }
+
+    private String getChangeSetKey() {
+        return getChangeSet() == null ? "" : getChangeSet().toString(false);
+    }
+}
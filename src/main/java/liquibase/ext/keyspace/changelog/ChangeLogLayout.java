@@ -0,0 +1,96 @@
+package liquibase.ext.keyspace.changelog;
+
+import liquibase.database.Database;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+
+import java.util.List;
+
+/**
+ * The ways DATABASECHANGELOG can be laid out in a keyspace.
+ */
+public enum ChangeLogLayout {
+
+    /**
+     * One partition per changeset, keyed by ID, AUTHOR and FILENAME. Finding the latest changesets needs a full scan.
+     */
+    CLASSIC,
+
+    /**
+     * Rows clustered by ORDEREXECUTED, newest first, in partitions of {@link #BUCKET_SIZE} changesets each. The latest
+     * changesets are the first rows of the last bucket. DESCRIPTION and COMMENTS are kept in a side table, see
+     * {@link #getDetailsTableName(Database)}.
+     */
+    TIME_ORDERED;
+
+    /**
+     * Number of consecutive ORDEREXECUTED values stored in one bucket. Changing it breaks existing tables.
+     */
+    public static final int BUCKET_SIZE = 1000;
+
+    /**
+     * @return the layout set by {@link KeyspaceConfiguration#CHANGELOG_LAYOUT}
+     */
+    public static ChangeLogLayout configured() {
+        String value = KeyspaceConfiguration.CHANGELOG_LAYOUT.getCurrentValue();
+        if (value == null || value.trim().equalsIgnoreCase("classic")) {
+            return CLASSIC;
+        }
+        if (value.trim().replace("_", "").equalsIgnoreCase("timeOrdered")) {
+            return TIME_ORDERED;
+        }
+        throw new IllegalArgumentException("Unknown " + KeyspaceConfiguration.CHANGELOG_LAYOUT.getKey() + " '" + value
+                + "', use 'classic' or 'timeOrdered'");
+    }
+
+    /**
+     * @return the layout of the existing DATABASECHANGELOG, or the configured layout if there is no table yet
+     */
+    public static ChangeLogLayout of(KeyspaceDatabase database) {
+        List<String> partitionKey = database.getConnectionProfile().getPartitionKeyColumns(
+                database.getDatabaseChangeLogTableName());
+        if (partitionKey.isEmpty()) {
+            return configured();
+        }
+        return partitionKey.contains("bucket") ? TIME_ORDERED : CLASSIC;
+    }
+
+    public static int bucketOf(Integer orderExecuted) {
+        // rows of upgraded tables may carry -1
+        return orderExecuted == null ? 0 : Math.max(0, orderExecuted) / BUCKET_SIZE;
+    }
+
+    /**
+     * @return true if a {@link #TIME_ORDERED} row keeps the given description itself. Rollback to a tag recognizes
+     * tag changesets by their description, so it must be readable without the side table.
+     */
+    public static boolean isKeptInRow(String description) {
+        return "tagDatabase".equals(description);
+    }
+
+    public static String getDetailsTableName(Database database) {
+        return database.getDatabaseChangeLogTableName().toLowerCase() + "_details";
+    }
+
+    /**
+     * @return the CQL creating DATABASECHANGELOG in this layout under the given name
+     */
+    public String getCreateTableCql(Database database, String tableName) {
+        String table = database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), tableName);
+        if (this == CLASSIC) {
+            return "CREATE TABLE IF NOT EXISTS " + table +
+                    "( ID TEXT, AUTHOR TEXT, FILENAME TEXT, DATEEXECUTED timestamp, ORDEREXECUTED INT, EXECTYPE TEXT, MD5SUM TEXT, DESCRIPTION TEXT, COMMENTS TEXT, TAG TEXT, LIQUIBASE TEXT, CONTEXTS TEXT, LABELS TEXT, DEPLOYMENT_ID TEXT,PRIMARY KEY (ID, AUTHOR, FILENAME))";
+        }
+        // DESCRIPTION and COMMENTS stay in the schema for the column checks of the history service, but are only
+        // written to the side table
+        return "CREATE TABLE IF NOT EXISTS " + table +
+                "( BUCKET INT, ORDEREXECUTED INT, ID TEXT, AUTHOR TEXT, FILENAME TEXT, DATEEXECUTED timestamp, EXECTYPE TEXT, MD5SUM TEXT, DESCRIPTION TEXT, COMMENTS TEXT, TAG TEXT, LIQUIBASE TEXT, CONTEXTS TEXT, LABELS TEXT, DEPLOYMENT_ID TEXT," +
+                "PRIMARY KEY ((BUCKET), ORDEREXECUTED, FILENAME, ID, AUTHOR)) WITH CLUSTERING ORDER BY (ORDEREXECUTED DESC, FILENAME ASC, ID ASC, AUTHOR ASC)";
+    }
+
+    public static String getCreateDetailsTableCql(Database database) {
+        return "CREATE TABLE IF NOT EXISTS " + database.escapeTableName(database.getLiquibaseCatalogName(),
+                database.getLiquibaseSchemaName(), getDetailsTableName(database)) +
+                "( ID TEXT, AUTHOR TEXT, FILENAME TEXT, DESCRIPTION TEXT, COMMENTS TEXT, PRIMARY KEY (ID, AUTHOR, FILENAME))";
+    }
+}
@@ -0,0 +1,168 @@
+package liquibase.ext.keyspace.changelog;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.ExecutorService;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.database.TableReadinessBarrier;
+import liquibase.statement.core.RawSqlStatement;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Moves a {@link ChangeLogLayout#CLASSIC} DATABASECHANGELOG to the {@link ChangeLogLayout#TIME_ORDERED} layout.
+ * <p>
+ * Cassandra can't change the primary key of a table nor rename one, so the rows are first copied to a staging table
+ * in the new layout, then DATABASECHANGELOG is dropped, created again in the new layout and filled from the staging
+ * table, which is dropped last. Rows are written while they are read, page by page, so the history is never held in
+ * memory as a whole. A table is only dropped after the rows read back from its copy have been counted. If the migration
+ * is interrupted, it starts over while DATABASECHANGELOG is still there and picks up again from the staging table
+ * otherwise. It must only run while the change log lock is held.
+ */
+public class ChangeLogLayoutMigrator {
+
+    private final KeyspaceDatabase database;
+
+    public ChangeLogLayoutMigrator(KeyspaceDatabase database) {
+        this.database = database;
+    }
+
+    public String getStagingTableName() {
+        return database.getDatabaseChangeLogTableName().toLowerCase() + "_migration";
+    }
+
+    /**
+     * Migrates DATABASECHANGELOG if {@link ChangeLogLayout#TIME_ORDERED} is configured and the table, or an
+     * interrupted migration, is still in the classic layout.
+     *
+     * @return true if anything was migrated
+     */
+    public boolean migrateIfNeeded() throws DatabaseException {
+        if (ChangeLogLayout.configured() != ChangeLogLayout.TIME_ORDERED) {
+            return false;
+        }
+        String changeLogTable = database.getDatabaseChangeLogTableName().toLowerCase();
+        String stagingTable = getStagingTableName();
+        boolean staged = tableExists(stagingTable);
+        boolean classic = tableExists(changeLogTable) && ChangeLogLayout.of(database) == ChangeLogLayout.CLASSIC;
+        if (!classic && !staged) {
+            return false;
+        }
+
+        if (classic) {
+            log("Migrating " + changeLogTable + " to the time ordered layout");
+            createTable(ChangeLogLayout.TIME_ORDERED.getCreateTableCql(database, stagingTable), stagingTable);
+            if (staged) {
+                // left behind by an interrupted run, DATABASECHANGELOG is still complete
+                execute("TRUNCATE " + database.getDefaultCatalogName() + "." + stagingTable);
+            }
+            createTable(ChangeLogLayout.getCreateDetailsTableCql(database), ChangeLogLayout.getDetailsTableName(database));
+            int rows = copy(changeLogTable, stagingTable, true);
+            verify(stagingTable, rows);
+            log("Staged " + rows + " rows in " + stagingTable);
+            dropTable(changeLogTable);
+        } else {
+            log("Resuming migration of " + changeLogTable + " from " + stagingTable);
+        }
+
+        createTable(ChangeLogLayout.TIME_ORDERED.getCreateTableCql(database, changeLogTable), changeLogTable);
+        int rows = copy(stagingTable, changeLogTable, false);
+        verify(changeLogTable, rows);
+        dropTable(stagingTable);
+        log("Migrated " + rows + " rows of " + changeLogTable + " to the time ordered layout");
+        return true;
+    }
+
+    /**
+     * Copies all rows, writing DESCRIPTION and COMMENTS of classic rows to the side table.
+     */
+    private int copy(String fromTable, String toTable, boolean fromClassic) throws DatabaseException {
+        KeyspaceStatementCache statementCache = database.getStatementCache();
+        String keyspace = database.getDefaultCatalogName();
+        String insert = "INSERT INTO " + keyspace + "." + toTable + " (BUCKET, ORDEREXECUTED, FILENAME, ID, AUTHOR, " +
+                "DATEEXECUTED, EXECTYPE, MD5SUM, TAG, LIQUIBASE, CONTEXTS, LABELS, DEPLOYMENT_ID, DESCRIPTION) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String insertDetails = "INSERT INTO " + keyspace + "." + ChangeLogLayout.getDetailsTableName(database) +
+                " (FILENAME, ID, AUTHOR, DESCRIPTION, COMMENTS) VALUES (?, ?, ?, ?, ?)";
+        int[] rows = new int[1];
+        new KeyspaceHistoryReader(database).read(fromTable, KeyspaceHistoryReader.ALL_COLUMNS, () -> rows[0] = 0, rs -> {
+            Map<String, Object> row = new HashMap<>();
+            for (String column : KeyspaceHistoryReader.ALL_COLUMNS) {
+                row.put(column, rs.getString(column));
+            }
+            row.put("ORDEREXECUTED", getInteger(rs, "ORDEREXECUTED"));
+            row.put("DATEEXECUTED", rs.getTimestamp("DATEEXECUTED"));
+            return row;
+        }, row -> {
+            Integer orderExecuted = (Integer) row.get("ORDEREXECUTED");
+            String description = (String) row.get("DESCRIPTION");
+            if (fromClassic) {
+                statementCache.update(insertDetails, row.get("FILENAME"), row.get("ID"), row.get("AUTHOR"), description,
+                        row.get("COMMENTS"));
+            }
+            // the read starts over if the retry policy allows it, the inserts are simply repeated then
+            statementCache.update(insert, ChangeLogLayout.bucketOf(orderExecuted), orderExecuted == null ? -1 : orderExecuted,
+                    row.get("FILENAME"), row.get("ID"), row.get("AUTHOR"), row.get("DATEEXECUTED"), row.get("EXECTYPE"),
+                    row.get("MD5SUM"), row.get("TAG"), row.get("LIQUIBASE"), row.get("CONTEXTS"), row.get("LABELS"),
+                    row.get("DEPLOYMENT_ID"), ChangeLogLayout.isKeptInRow(description) ? description : null);
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    /**
+     * Reads the copied rows back before the table they were copied from is dropped.
+     */
+    private void verify(String tableName, int expectedRows) throws DatabaseException {
+        int[] rows = new int[1];
+        new KeyspaceHistoryReader(database).read(tableName, KeyspaceHistoryReader.KEY_COLUMNS, () -> rows[0] = 0,
+                rs -> rows[0]++);
+        if (rows[0] != expectedRows) {
+            throw new DatabaseException("Copied " + expectedRows + " rows to " + tableName + " but found " + rows[0]
+                    + ", stopping the migration before anything is dropped");
+        }
+    }
+
+    private boolean tableExists(String tableName) throws DatabaseException {
+        return !database.getStatementCache().query(
+                "SELECT table_name FROM system_schema.tables WHERE keyspace_name = ? AND table_name = ?",
+                rs -> rs.getString("table_name"), database.getDefaultCatalogName(), tableName).isEmpty();
+    }
+
+    private void createTable(String cql, String tableName) throws DatabaseException {
+        execute(cql, tableName, TableReadinessBarrier.PendingState.CREATING);
+    }
+
+    private void dropTable(String tableName) throws DatabaseException {
+        execute("DROP TABLE IF EXISTS " + database.getDefaultCatalogName() + "." + tableName, tableName,
+                TableReadinessBarrier.PendingState.DELETING);
+    }
+
+    private void execute(String cql) throws DatabaseException {
+        Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database)
+                .execute(new RawSqlStatement(cql));
+    }
+
+    private void execute(String cql, String tableName, TableReadinessBarrier.PendingState state) throws DatabaseException {
+        execute(cql);
+        TableReadinessBarrier barrier = database.getTableReadinessBarrier();
+        barrier.register(tableName, state);
+        barrier.await(Collections.singleton(tableName));
+        database.getConnectionProfile().invalidatePartitionKey(tableName);
+        database.getConnectionProfile().invalidateTrackingTables();
+    }
+
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private void log(String message) {
+        Scope.getCurrentScope().getLog(getClass()).info(message);
+    }
+}
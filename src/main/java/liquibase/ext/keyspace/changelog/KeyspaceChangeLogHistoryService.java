@@ -1,24 +1,61 @@
 package liquibase.ext.keyspace.changelog;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
 
 import liquibase.Scope;
+import liquibase.changelog.ChangeLogHistoryService;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.RanChangeSet;
 import liquibase.changelog.StandardChangeLogHistoryService;
 import liquibase.database.Database;
 import liquibase.exception.DatabaseException;
 import liquibase.executor.ExecutorService;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceConnectionProfile;
 import liquibase.ext.keyspace.database.KeyspaceDatabase;
-import liquibase.statement.core.RawSqlStatement;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.database.TableReadinessBarrier;
+import liquibase.ext.keyspace.lockservice.LockScope;
 
+/**
+ * DATABASECHANGELOG is read once per lock session. Ran changesets are then looked up in an index keyed by file name,
+ * id and author, and the next ORDEREXECUTED is counted up from the highest one read, both kept up to date as
+ * changesets are marked ran. Without this every changeset costs a full table scan.
+ * <p>
+ * The table is read by {@link KeyspaceHistoryReader}, page by page and without the columns no command needs. Its
+ * layout is set by {@link KeyspaceConfiguration#CHANGELOG_LAYOUT}, an existing table is migrated by
+ * {@link ChangeLogLayoutMigrator} when the service is initialized. Rows of changesets marked ran go through
+ * {@link KeyspaceHistoryWriter}, which may hold them back to write them in batches.
+ * <p>
+ * With a {@link LockScope} only the rows of the scope are ran changesets, the rows of other scopes are deployed by
+ * someone else. As deployments of other scopes run at the same time, ORDEREXECUTED is then not counted up from the
+ * rows read but taken in blocks from a counter in a side table, so no two changesets get the same one.
+ */
 public class KeyspaceChangeLogHistoryService extends StandardChangeLogHistoryService {
 
+    private static final int ORDER_EXECUTED_BLOCK = 100;
+    private static final int MAX_RESERVE_ATTEMPTS = 20;
+    private static final String ORDER_EXECUTED = "orderexecuted";
+
+    private List<RanChangeSet> ranChangeSets;
+    private Map<List<String>, RanChangeSet> ranChangeSetIndex;
+    private int lastOrderExecuted;
+    private int reservedOrderExecuted;
+    private boolean counterTableCreated;
+    private KeyspaceHistoryWriter historyWriter;
+
+    /**
+     * Writes the buffered history rows of the given database, if its history service buffers any.
+     */
+    public static void flushHistory(Database database) throws DatabaseException {
+        ChangeLogHistoryService historyService = ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database);
+        if (historyService instanceof KeyspaceChangeLogHistoryService) {
+            ((KeyspaceChangeLogHistoryService) historyService).getHistoryWriter().flush();
+        }
+    }
+
     @Override
     public int getPriority() {
         return PRIORITY_DATABASE;
@@ -31,75 +68,223 @@ public class KeyspaceChangeLogHistoryService extends StandardChangeLogHistorySer
 
     @Override
     public boolean hasDatabaseChangeLogTable() {
-        return ((KeyspaceDatabase)getDatabase()).hasDatabaseChangeLogLockTable();
+        return ((KeyspaceDatabase)getDatabase()).getConnectionProfile().hasDatabaseChangeLogTable();
+    }
+
+
+    /**
+     * @return the buffer the rows of changesets marked ran are written through
+     */
+    public synchronized KeyspaceHistoryWriter getHistoryWriter() {
+        if (historyWriter == null) {
+            historyWriter = new KeyspaceHistoryWriter(((KeyspaceDatabase) getDatabase())::getStatementCache);
+        }
+        return historyWriter;
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        ranChangeSets = null;
+        ranChangeSetIndex = null;
+        reservedOrderExecuted = 0;
+        counterTableCreated = false;
+    }
 
     @Override
-    public int getNextSequenceValue() {
-        int next = 0;
-        try {
-            Statement statement = ((KeyspaceDatabase) getDatabase()).getStatement();
-            ResultSet rs = statement.executeQuery("SELECT ID, AUTHOR, ORDEREXECUTED FROM " +
-                    getDatabase().getDefaultCatalogName() + ".DATABASECHANGELOG");
-            while (rs.next()) {
-                int order = rs.getInt("ORDEREXECUTED");
-                next = Math.max(order, next);
+    public List<RanChangeSet> getRanChangeSets() throws DatabaseException {
+        if (ranChangeSets == null) {
+            List<RanChangeSet> ranChangeSetList = new ArrayList<>();
+            if (hasDatabaseChangeLogTable()) {
+                getHistoryWriter().flush();
+                Scope.getCurrentScope().getLog(getClass()).info("Reading from " + getDatabase().getDefaultCatalogName()
+                        + "." + getDatabaseChangeLogTableName());
+                ranChangeSetList = new KeyspaceHistoryReader((KeyspaceDatabase) getDatabase()).readRanChangeSets(
+                        KeyspaceConfiguration.HISTORY_ALL_COLUMNS.getCurrentValue()
+                                ? KeyspaceHistoryReader.ALL_COLUMNS : KeyspaceHistoryReader.COMPACT_COLUMNS);
+            }
+            Map<List<String>, RanChangeSet> index = new HashMap<>();
+            List<RanChangeSet> inScope = new ArrayList<>();
+            String scope = LockScope.current();
+            int last = 0;
+            for (RanChangeSet ranChangeSet : ranChangeSetList) {
+                // ORDEREXECUTED keeps counting over all scopes
+                if (ranChangeSet.getOrderExecuted() != null) {
+                    last = Math.max(last, ranChangeSet.getOrderExecuted());
+                }
+                if (LockScope.contains(scope, ranChangeSet.getChangeLog())) {
+                    inScope.add(ranChangeSet);
+                    index.put(key(ranChangeSet.getChangeLog(), ranChangeSet.getId(), ranChangeSet.getAuthor()), ranChangeSet);
+                }
             }
-            statement.close();
+            ranChangeSets = inScope;
+            ranChangeSetIndex = index;
+            lastOrderExecuted = last;
+        }
+        return Collections.unmodifiableList(ranChangeSets);
+    }
 
-        } catch (SQLException | DatabaseException e) {
-            e.printStackTrace();
+    @Override
+    public RanChangeSet getRanChangeSet(ChangeSet changeSet) throws DatabaseException {
+        if (!hasDatabaseChangeLogTable()) {
+            return null;
         }
-        return next + 1;
+        getRanChangeSets();
+        return ranChangeSetIndex.get(key(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()));
     }
 
     @Override
-    public void init() throws DatabaseException {
-        super.init();
+    public void setExecType(ChangeSet changeSet, ChangeSet.ExecType execType) throws DatabaseException {
+        // the list of super is never loaded, so it only writes the row
+        super.setExecType(changeSet, execType);
+        if (ranChangeSets != null) {
+            RanChangeSet ranChangeSet = new RanChangeSet(changeSet, execType, null, null);
+            if (!execType.equals(ChangeSet.ExecType.FAILED) && !execType.equals(ChangeSet.ExecType.SKIPPED)) {
+                ranChangeSet.setOrderExecuted(lastOrderExecuted);
+            }
+            ranChangeSets.add(ranChangeSet);
+            ranChangeSetIndex.put(key(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()), ranChangeSet);
+        }
+    }
 
-        // table creation in AWS Keyspaces is not immediate like other Cassandras
-        // https://docs.aws.amazon.com/keyspaces/latest/devguide/working-with-tables.html#tables-create
-        // let's see if the DATABASECHANGELOG table is active before doing stuff
-        //TODO improve this AWS check when we find out better way
-        if (getDatabase().getConnection().getURL().toLowerCase().contains("amazonaws")) {
-            int DBCL_GET_TABLE_ACTIVE_ATTEMPS = 10;
-            while (DBCL_GET_TABLE_ACTIVE_ATTEMPS >= 0) {
-
-                try {
-                    Statement statement = ((KeyspaceDatabase) getDatabase()).getStatement();
-                    ResultSet rs = statement.executeQuery("SELECT keyspace_name, table_name, status FROM " +
-                            "system_schema_mcs.tables WHERE keyspace_name = '" + getDatabase().getDefaultCatalogName() +
-                            "' AND table_name = 'databasechangelog'");
-                    while (rs.next()) {
-                        String status = rs.getString("status");
-                        if (status.equals("ACTIVE")) {
-                            return;
-                        } else if (status.equals("CREATING")) {
-                            DBCL_GET_TABLE_ACTIVE_ATTEMPS--;
-                            int timeout = 3;
-                            Scope.getCurrentScope().getLog(this.getClass()).info("DATABASECHANGELOG table in CREATING state. Checking again in " + timeout + " seconds.");
-                            TimeUnit.SECONDS.sleep(3);
-                        } else {
-                            Scope.getCurrentScope().getLog(this.getClass()).severe(String.format("DATABASECHANGELOG table in %s state. ", status));
-                            // something went very wrong, are we having issues with another Cassandra platform...?
-                            return;
-                        }
-
-                    }
-                } catch ( InterruptedException | SQLException e) {
-                    throw new DatabaseException(e);
-                }
+    @Override
+    public void removeFromHistory(ChangeSet changeSet) throws DatabaseException {
+        super.removeFromHistory(changeSet);
+        if (ranChangeSets != null) {
+            ranChangeSets.remove(new RanChangeSet(changeSet));
+            ranChangeSetIndex.remove(key(changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()));
+        }
+    }
+
+    @Override
+    public void tag(String tagString) throws DatabaseException {
+        super.tag(tagString);
+        if (ranChangeSets != null && !ranChangeSets.isEmpty()) {
+            ranChangeSets.get(ranChangeSets.size() - 1).setTag(tagString);
+        }
+    }
+
+    @Override
+    public int getNextSequenceValue() throws DatabaseException {
+        if (ranChangeSetIndex == null) {
+            if (getDatabase().getConnection() == null) {
+                ranChangeSetIndex = new HashMap<>();
+                lastOrderExecuted = 0;
+            } else {
+                getRanChangeSets();
+            }
+        }
+        if (lastOrderExecuted + 1 >= reservedOrderExecuted && LockScope.current() != null && getDatabase().getConnection() != null
+                && Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", getDatabase()).updatesDatabase()) {
+            reserveOrderExecuted();
+        }
+        return ++lastOrderExecuted;
+    }
+
+    /**
+     * @return the side table holding the next ORDEREXECUTED free for scoped deployments
+     */
+    public static String getCounterTableName(Database database) {
+        return database.getDatabaseChangeLogTableName().toLowerCase() + "_counter";
+    }
+
+    /**
+     * Takes the next block of ORDEREXECUTED values from the counter in {@link #getCounterTableName(Database)}, by a
+     * conditional write on the value read. The block starts above the highest value read from DATABASECHANGELOG as
+     * well, which global deployments count up from. Values of a block which are not used are skipped.
+     */
+    private void reserveOrderExecuted() throws DatabaseException {
+        KeyspaceDatabase database = (KeyspaceDatabase) getDatabase();
+        if (!counterTableCreated) {
+            database.createTableIfNeeded(getCounterTableName(database), "NAME TEXT PRIMARY KEY, NEXT_VALUE INT");
+            counterTableCreated = true;
+        }
+        String counterTable = database.getDefaultCatalogName() + "." + getCounterTableName(database);
+        Integer counter = null;
+        boolean counterExists = false;
+        for (int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++) {
+            int first = Math.max(lastOrderExecuted + 1, counter == null ? 0 : counter);
+            Map<String, Object> result;
+            if (counterExists) {
+                result = database.getStatementCache().conditionalUpdate("UPDATE " + counterTable +
+                        " SET NEXT_VALUE = ? WHERE NAME = ? IF NEXT_VALUE = ?", first + ORDER_EXECUTED_BLOCK, ORDER_EXECUTED, counter);
+            } else {
+                result = database.getStatementCache().conditionalUpdate("INSERT INTO " + counterTable +
+                        " (NAME, NEXT_VALUE) VALUES (?, ?) IF NOT EXISTS", ORDER_EXECUTED, first + ORDER_EXECUTED_BLOCK);
+            }
+            if (KeyspaceStatementCache.isApplied(result)) {
+                lastOrderExecuted = first - 1;
+                reservedOrderExecuted = first + ORDER_EXECUTED_BLOCK;
+                return;
+            }
+            // another scope took a block in between
+            Object current = result.get("next_value");
+            counter = current == null ? null : ((Number) current).intValue();
+            counterExists = true;
+        }
+        throw new DatabaseException("Could not reserve ORDEREXECUTED values in " + counterTable + " after "
+                + MAX_RESERVE_ATTEMPTS + " attempts");
+    }
+
+    private static List<String> key(String fileName, String id, String author) {
+        // same matching as RanChangeSet.isSameAs
+        return Arrays.asList(DatabaseChangeLog.normalizePath(fileName).toLowerCase(), id.toLowerCase(), author.toLowerCase());
+    }
 
+    @Override
+    public void init() throws DatabaseException {
+        KeyspaceDatabase database = (KeyspaceDatabase) getDatabase();
+        KeyspaceConnectionProfile profile = database.getConnectionProfile();
+        // usually the lock service created it already, together with the lock table
+        boolean hadTable = profile.hasDatabaseChangeLogTable();
+        super.init();
+        List<String> trackingTables = new ArrayList<>();
+        if (!hadTable) {
+            // table creation in AWS Keyspaces is not immediate like other Cassandras
+            // https://docs.aws.amazon.com/keyspaces/latest/devguide/working-with-tables.html#tables-create
+            profile.invalidateTrackingTables();
+            profile.invalidatePartitionKey(getDatabaseChangeLogTableName());
+            trackingTables.add(getDatabaseChangeLogTableName());
+            if (ChangeLogLayout.of(database) == ChangeLogLayout.TIME_ORDERED) {
+                // created together with DATABASECHANGELOG
+                trackingTables.add(ChangeLogLayout.getDetailsTableName(database));
             }
+            for (String tableName : trackingTables) {
+                database.getTableReadinessBarrier().register(tableName, TableReadinessBarrier.PendingState.CREATING);
+            }
+        }
+        database.getTableReadinessBarrier().await(trackingTables);
+
+        if (new ChangeLogLayoutMigrator(database).migrateIfNeeded()) {
+            ranChangeSets = null;
+            ranChangeSetIndex = null;
         }
     }
 
     @Override
     public List<Map<String, ?>> queryDatabaseChangeLogTable(Database database) throws DatabaseException {
-        RawSqlStatement select = new RawSqlStatement("SELECT * FROM " + database.getDefaultCatalogName() +
-                ".DATABASECHANGELOG");
-        final List<Map<String, ?>> returnList = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database).queryForList(select);
+        // kept for callers which want the raw rows, ran changesets are read without going through these maps
+        getHistoryWriter().flush();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        KeyspaceHistoryReader reader = new KeyspaceHistoryReader((KeyspaceDatabase) database);
+        reader.read(KeyspaceHistoryReader.ALL_COLUMNS, rows::clear, rs -> {
+            Map<String, Object> row = new HashMap<>();
+            for (String column : KeyspaceHistoryReader.ALL_COLUMNS) {
+                row.put(column, rs.getObject(column));
+            }
+            rows.add(row);
+        });
+        if (ChangeLogLayout.of((KeyspaceDatabase) database) == ChangeLogLayout.TIME_ORDERED) {
+            Map<List<String>, String[]> details = reader.readDetails();
+            for (Map<String, Object> row : rows) {
+                String[] detail = details.get(Arrays.asList((String) row.get("FILENAME"), (String) row.get("ID"), (String) row.get("AUTHOR")));
+                if (detail != null) {
+                    row.put("DESCRIPTION", detail[0]);
+                    row.put("COMMENTS", detail[1]);
+                }
+            }
+        }
+        List<Map<String, ?>> returnList = new ArrayList<>(rows);
         returnList.sort(Comparator.comparing((Map<String, ?> o) -> (Date) o.get("DATEEXECUTED")).thenComparingInt(o -> (Integer) o.get("ORDEREXECUTED")));
         return returnList;
     }
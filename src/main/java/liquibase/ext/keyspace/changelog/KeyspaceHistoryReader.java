@@ -0,0 +1,248 @@
+package liquibase.ext.keyspace.changelog;
+
+import liquibase.ContextExpression;
+import liquibase.Labels;
+import liquibase.Scope;
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.RanChangeSet;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Reads DATABASECHANGELOG page by page, selecting only the given columns and turning every row straight into a
+ * {@link RanChangeSet} instead of a map of all columns.
+ * <p>
+ * Values repeated on many rows, like file names, authors, contexts and labels, are shared between the records.
+ */
+public class KeyspaceHistoryReader {
+
+    /**
+     * Everything needed to decide which changesets to run, roll back or report as ran.
+     */
+    public static final List<String> COMPACT_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "FILENAME", "ID", "AUTHOR", "MD5SUM", "DATEEXECUTED", "ORDEREXECUTED", "EXECTYPE", "TAG", "DESCRIPTION",
+            "CONTEXTS", "LABELS", "DEPLOYMENT_ID"));
+
+    /**
+     * Enough to address a row of a {@link ChangeLogLayout#TIME_ORDERED} table.
+     */
+    public static final List<String> KEY_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "FILENAME", "ID", "AUTHOR", "ORDEREXECUTED"));
+
+    public static final List<String> ALL_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "FILENAME", "ID", "AUTHOR", "MD5SUM", "DATEEXECUTED", "ORDEREXECUTED", "EXECTYPE", "TAG", "DESCRIPTION",
+            "CONTEXTS", "LABELS", "DEPLOYMENT_ID", "COMMENTS", "LIQUIBASE"));
+
+    /**
+     * Receives the rows of the table one at a time, while the connection is held.
+     */
+    public interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Receives the rows of the table one at a time after they were read, see
+     * {@link #read(String, List, Runnable, KeyspaceStatementCache.RowReader, RowConsumer)}.
+     */
+    public interface RowConsumer<T> {
+        void accept(T row) throws DatabaseException;
+    }
+
+    private final KeyspaceDatabase database;
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<String, ContextExpression> contexts = new HashMap<>();
+    private final Map<String, Labels> labels = new HashMap<>();
+
+    public KeyspaceHistoryReader(KeyspaceDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * @return the ran changesets, ordered by DATEEXECUTED and ORDEREXECUTED
+     */
+    public List<RanChangeSet> readRanChangeSets(List<String> columns) throws DatabaseException {
+        Set<String> selected = new HashSet<>(columns);
+        List<RanChangeSet> ranChangeSets = new ArrayList<>();
+        read(columns, () -> ranChangeSets.clear(), rs -> ranChangeSets.add(toRanChangeSet(rs, selected)));
+        if (ChangeLogLayout.of(database) == ChangeLogLayout.TIME_ORDERED
+                && (selected.contains("DESCRIPTION") || selected.contains("COMMENTS"))) {
+            // the rows only keep the descriptions of tags, see ChangeLogLayout.isKeptInRow
+            Map<List<String>, String[]> details = readDetails();
+            for (RanChangeSet ranChangeSet : ranChangeSets) {
+                String[] row = details.get(Arrays.asList(ranChangeSet.getStoredChangeLog(), ranChangeSet.getId(), ranChangeSet.getAuthor()));
+                if (row != null) {
+                    if (selected.contains("DESCRIPTION")) {
+                        ranChangeSet.setDescription(intern(row[0]));
+                    }
+                    if (selected.contains("COMMENTS")) {
+                        ranChangeSet.setComments(row[1]);
+                    }
+                }
+            }
+        }
+        ranChangeSets.sort(Comparator.comparing(RanChangeSet::getDateExecuted, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(RanChangeSet::getOrderExecuted, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return ranChangeSets;
+    }
+
+    /**
+     * Reads the most recently executed changesets of a {@link ChangeLogLayout#TIME_ORDERED} table, newest first,
+     * starting at the first row of the last bucket. Only as many rows as asked for are read.
+     */
+    public List<RanChangeSet> readLatest(List<String> columns, int count) throws DatabaseException {
+        Set<String> selected = new HashSet<>(columns);
+        KeyspaceStatementCache statementCache = database.getStatementCache();
+        String cql = "SELECT " + String.join(", ", columns) + " FROM " + getTableName(database.getDatabaseChangeLogTableName())
+                + " WHERE BUCKET = ? LIMIT " + count;
+        List<RanChangeSet> latest = new ArrayList<>();
+        for (int bucket = getLastBucket(); bucket >= 0 && latest.size() < count; bucket--) {
+            for (RanChangeSet ranChangeSet : statementCache.query(cql, rs -> toRanChangeSet(rs, selected), bucket)) {
+                if (latest.size() < count) {
+                    latest.add(ranChangeSet);
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Streams the given columns of every row to the handler, fetching {@link KeyspaceConfiguration#HISTORY_FETCH_SIZE}
+     * rows per page. If the read is retried, onRestart is called before the rows are handed out again.
+     */
+    public void read(List<String> columns, Runnable onRestart, RowHandler handler) throws DatabaseException {
+        read(database.getDatabaseChangeLogTableName(), columns, onRestart, handler);
+    }
+
+    /**
+     * Like {@link #read(List, Runnable, RowHandler)}, from another table of the keyspace. The handler runs while the
+     * connection is held, so it must not wait for anything, e.g. use the database.
+     */
+    public void read(String tableName, List<String> columns, Runnable onRestart, RowHandler handler) throws DatabaseException {
+        read(tableName, columns, onRestart, rs -> {
+            handler.handle(rs);
+            return null;
+        }, row -> {
+        });
+    }
+
+    /**
+     * Streams the given columns of every row of a table of the keyspace, fetching
+     * {@link KeyspaceConfiguration#HISTORY_FETCH_SIZE} rows per page. The connection is taken a page at a time, see
+     * {@link KeyspaceStatementCache#withConnection}, while the rows of the page are read. They are handed to the
+     * consumer after it is released again, so the consumer may use the database. If the read is retried, onRestart is
+     * called before the rows are handed out again.
+     */
+    public <T> void read(String tableName, List<String> columns, Runnable onRestart, KeyspaceStatementCache.RowReader<T> reader,
+                         RowConsumer<T> consumer) throws DatabaseException {
+        String cql = "SELECT " + String.join(", ", columns) + " FROM " + getTableName(tableName);
+        Scope.getCurrentScope().getLog(getClass()).fine("Reading history: " + cql);
+        KeyspaceStatementCache statementCache = database.getStatementCache();
+        int fetchSize = Math.max(1, KeyspaceConfiguration.HISTORY_FETCH_SIZE.getCurrentValue());
+        database.getRetryPolicy().execute(cql, () -> {
+            onRestart.run();
+            try (Statement statement = statementCache.createStatement();
+                 ResultSet rs = statementCache.withConnection(connection -> {
+                     statement.setFetchSize(fetchSize);
+                     return statement.executeQuery(cql);
+                 })) {
+                List<T> page;
+                do {
+                    page = statementCache.withConnection(connection -> readPage(rs, fetchSize, reader));
+                    for (T row : page) {
+                        consumer.accept(row);
+                    }
+                } while (page.size() == fetchSize);
+            }
+            return null;
+        });
+    }
+
+    private static <T> List<T> readPage(ResultSet rs, int fetchSize, KeyspaceStatementCache.RowReader<T> reader) throws SQLException {
+        List<T> page = new ArrayList<>(fetchSize);
+        while (page.size() < fetchSize && rs.next()) {
+            page.add(reader.read(rs));
+        }
+        return page;
+    }
+
+    /**
+     * @return DESCRIPTION and COMMENTS of the side table of a {@link ChangeLogLayout#TIME_ORDERED} table, keyed by
+     * stored file name, id and author
+     */
+    Map<List<String>, String[]> readDetails() throws DatabaseException {
+        Map<List<String>, String[]> details = new HashMap<>();
+        read(ChangeLogLayout.getDetailsTableName(database), Arrays.asList("FILENAME", "ID", "AUTHOR", "DESCRIPTION", "COMMENTS"),
+                details::clear, rs -> details.put(Arrays.asList(rs.getString("FILENAME"), rs.getString("ID"), rs.getString("AUTHOR")),
+                        new String[]{rs.getString("DESCRIPTION"), rs.getString("COMMENTS")}));
+        return details;
+    }
+
+    /**
+     * @return the highest bucket holding rows. Buckets can be empty in between, e.g. when the ORDEREXECUTED values
+     * reserved by a scoped deployment weren't used, so all partition keys are read instead of probing bucket by bucket.
+     */
+    private int getLastBucket() throws DatabaseException {
+        String cql = "SELECT DISTINCT BUCKET FROM " + getTableName(database.getDatabaseChangeLogTableName());
+        int bucket = 0;
+        for (int found : database.getStatementCache().query(cql, rs -> rs.getInt("BUCKET"))) {
+            bucket = Math.max(bucket, found);
+        }
+        return bucket;
+    }
+
+    private RanChangeSet toRanChangeSet(ResultSet rs, Set<String> selected) throws SQLException {
+        String storedFileName = intern(rs.getString("FILENAME"));
+        String md5sum = selected.contains("MD5SUM") ? rs.getString("MD5SUM") : null;
+        if (md5sum != null && !md5sum.startsWith(CheckSum.getCurrentVersion() + ":")) {
+            // checksums of an older version are recomputed, like the standard history service does
+            md5sum = null;
+        }
+        String execType = selected.contains("EXECTYPE") ? rs.getString("EXECTYPE") : null;
+        RanChangeSet ranChangeSet = new RanChangeSet(intern(DatabaseChangeLog.normalizePath(storedFileName)),
+                rs.getString("ID"), intern(rs.getString("AUTHOR")), CheckSum.parse(md5sum),
+                selected.contains("DATEEXECUTED") ? rs.getTimestamp("DATEEXECUTED") : null,
+                selected.contains("TAG") ? rs.getString("TAG") : null,
+                execType == null ? null : ChangeSet.ExecType.valueOf(execType),
+                selected.contains("DESCRIPTION") ? intern(rs.getString("DESCRIPTION")) : null,
+                selected.contains("COMMENTS") ? rs.getString("COMMENTS") : null,
+                contextExpression(selected.contains("CONTEXTS") ? rs.getString("CONTEXTS") : null),
+                labels(selected.contains("LABELS") ? rs.getString("LABELS") : null),
+                selected.contains("DEPLOYMENT_ID") ? intern(rs.getString("DEPLOYMENT_ID")) : null, storedFileName);
+        ranChangeSet.setOrderExecuted(rs.getInt("ORDEREXECUTED"));
+        if (selected.contains("LIQUIBASE")) {
+            ranChangeSet.setLiquibaseVersion(intern(rs.getString("LIQUIBASE")));
+        }
+        return ranChangeSet;
+    }
+
+    private String getTableName(String tableName) {
+        return database.getDefaultCatalogName() + "." + tableName;
+    }
+
+    private ContextExpression contextExpression(String value) {
+        String key = value == null ? "" : value;
+        return contexts.computeIfAbsent(key, ContextExpression::new);
+    }
+
+    private Labels labels(String value) {
+        String key = value == null ? "" : value;
+        return labels.computeIfAbsent(key, Labels::new);
+    }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = strings.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+}
@@ -0,0 +1,138 @@
+package liquibase.ext.keyspace.changelog;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.sqlgenerator.InsertSetGeneratorKeyspace;
+import liquibase.listener.SqlListener;
+import liquibase.sql.SqlConfiguration;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Buffers the DATABASECHANGELOG writes of changesets marked ran and sends them as CQL batches once
+ * {@link KeyspaceConfiguration#HISTORY_FLUSH_INTERVAL} changesets are buffered.
+ * <p>
+ * Writes are grouped by partition, so a batch mostly touches a single partition, and a batch never holds two writes
+ * of the same row, as writes of one batch share a timestamp and would not be applied in order. Buffered writes must be
+ * flushed before the history is read or written otherwise, before the lock is released and before an error is
+ * reported, everything not flushed by then is lost.
+ */
+public class KeyspaceHistoryWriter {
+
+    private static class Write {
+        private final String cql;
+        private final List<Object> partition;
+        private final List<Object> key;
+        private final Object[] parameters;
+
+        private Write(String cql, List<Object> partition, List<Object> key, Object[] parameters) {
+            this.cql = cql;
+            this.partition = partition;
+            this.key = key;
+            this.parameters = parameters;
+        }
+    }
+
+    private final Supplier<KeyspaceStatementCache> statementCache;
+    private final List<Write> writes = new ArrayList<>();
+    private int changeSets;
+
+    /**
+     * @param statementCache the statement cache of the current connection, see {@link KeyspaceDatabase#getStatementCache()}
+     */
+    public KeyspaceHistoryWriter(Supplier<KeyspaceStatementCache> statementCache) {
+        this.statementCache = statementCache;
+    }
+
+    /**
+     * Buffers a write.
+     *
+     * @param partition the table and partition key values of the written row
+     * @param key       the table and primary key values of the written row
+     */
+    public synchronized void add(String cql, List<Object> partition, List<Object> key, Object... parameters) {
+        writes.add(new Write(cql, partition, key, parameters));
+    }
+
+    /**
+     * Counts a changeset whose writes have all been added, flushing if enough are buffered.
+     */
+    public synchronized void changeSetAdded() throws DatabaseException {
+        changeSets++;
+        if (changeSets >= Math.max(1, KeyspaceConfiguration.HISTORY_FLUSH_INTERVAL.getCurrentValue())) {
+            flush();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return writes.isEmpty();
+    }
+
+    /**
+     * Sends all buffered writes. Writes which could not be sent stay buffered.
+     */
+    public synchronized void flush() throws DatabaseException {
+        changeSets = 0;
+        if (writes.isEmpty()) {
+            return;
+        }
+        Map<List<Object>, List<Write>> partitions = new LinkedHashMap<>();
+        for (Write write : writes) {
+            partitions.computeIfAbsent(write.partition, k -> new ArrayList<>()).add(write);
+        }
+        List<Write> ordered = new ArrayList<>();
+        for (List<Write> partition : partitions.values()) {
+            ordered.addAll(partition);
+        }
+
+        int batchSize = InsertSetGeneratorKeyspace.getBatchSize();
+        List<Write> batch = new ArrayList<>();
+        Set<List<Object>> keys = new HashSet<>();
+        Set<Write> sent = Collections.newSetFromMap(new IdentityHashMap<>());
+        int batches = 0;
+        try {
+            for (Write write : ordered) {
+                if (batch.size() >= batchSize || !keys.add(write.key)) {
+                    send(batch, sent);
+                    batches++;
+                    keys.clear();
+                    keys.add(write.key);
+                }
+                batch.add(write);
+            }
+            send(batch, sent);
+            batches++;
+        } finally {
+            writes.removeIf(sent::contains);
+        }
+        Scope.getCurrentScope().getLog(getClass()).fine("Flushed " + ordered.size() + " history writes in " + batches + " batches");
+    }
+
+    private void send(List<Write> batch, Set<Write> sent) throws DatabaseException {
+        String cql;
+        List<Object> parameters = new ArrayList<>();
+        if (batch.size() == 1) {
+            cql = batch.get(0).cql;
+            parameters.addAll(Arrays.asList(batch.get(0).parameters));
+        } else {
+            StringBuilder batchCql = new StringBuilder(KeyspaceConfiguration.LOGGED_BATCHES.getCurrentValue()
+                    ? "BEGIN BATCH\n" : "BEGIN UNLOGGED BATCH\n");
+            for (Write write : batch) {
+                batchCql.append(write.cql).append(";\n");
+                parameters.addAll(Arrays.asList(write.parameters));
+            }
+            cql = batchCql.append("APPLY BATCH").toString();
+        }
+        for (SqlListener listener : Scope.getCurrentScope().getListeners(SqlListener.class)) {
+            listener.writeSqlWillRun(cql);
+        }
+        Scope.getCurrentScope().getLog(getClass()).log(SqlConfiguration.SHOW_AT_LOG_LEVEL.getCurrentValue(), cql, null);
+        statementCache.get().update(cql, parameters.toArray());
+        sent.addAll(batch);
+        batch.clear();
+    }
+}
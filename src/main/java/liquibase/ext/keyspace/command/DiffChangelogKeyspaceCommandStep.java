@@ -0,0 +1,86 @@
+package liquibase.ext.keyspace.command;
+
+import liquibase.Scope;
+import liquibase.command.*;
+import liquibase.command.providers.ReferenceDatabase;
+import liquibase.database.Database;
+import liquibase.exception.CommandValidationException;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.diff.KeyspaceStreamingDiff;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The keyspaceDiffChangelog command, a diffChangelog for keyspaces too large to snapshot in full. Compares the
+ * reference keyspace with the target one table at a time with {@link KeyspaceStreamingDiff} and streams the
+ * differences to a formatted SQL changelog.
+ */
+public class DiffChangelogKeyspaceCommandStep extends AbstractCommandStep {
+
+    public static final String[] COMMAND_NAME = {"keyspaceDiffChangelog"};
+
+    public static final CommandArgumentDefinition<String> CHANGELOG_FILE_ARG;
+    public static final CommandArgumentDefinition<String> AUTHOR_ARG;
+
+    public static final CommandResultDefinition<Integer> CHANGESET_COUNT;
+
+    static {
+        CommandBuilder builder = new CommandBuilder(COMMAND_NAME);
+        CHANGELOG_FILE_ARG = builder.argument(CommonArgumentNames.CHANGELOG_FILE, String.class)
+                .description("Formatted SQL changelog file to write the differences to").required().build();
+        AUTHOR_ARG = builder.argument("author", String.class)
+                .description("Author of the generated changesets").defaultValue("liquibase").build();
+        CHANGESET_COUNT = builder.result("changeSetCount", Integer.class)
+                .description("Number of changesets written").build();
+    }
+
+    @Override
+    public String[][] defineCommandNames() {
+        return new String[][]{COMMAND_NAME};
+    }
+
+    @Override
+    public List<Class<?>> requiredDependencies() {
+        return Arrays.asList(Database.class, ReferenceDatabase.class);
+    }
+
+    @Override
+    public void adjustCommandDefinition(CommandDefinition commandDefinition) {
+        commandDefinition.setShortDescription("Compare two keyspaces table by table and stream the changesets to a changelog file");
+    }
+
+    @Override
+    public void validate(CommandScope commandScope) throws CommandValidationException {
+        super.validate(commandScope);
+        if (!(commandScope.getDependency(Database.class) instanceof KeyspaceDatabase)
+                || !(commandScope.getDependency(ReferenceDatabase.class) instanceof KeyspaceDatabase)) {
+            throw new CommandValidationException("keyspaceDiffChangelog only compares AWS Keyspaces databases");
+        }
+    }
+
+    @Override
+    public void run(CommandResultsBuilder resultsBuilder) throws Exception {
+        CommandScope commandScope = resultsBuilder.getCommandScope();
+        KeyspaceDatabase database = (KeyspaceDatabase) commandScope.getDependency(Database.class);
+        KeyspaceDatabase referenceDatabase = (KeyspaceDatabase) commandScope.getDependency(ReferenceDatabase.class);
+        Path changelogFile = Paths.get(commandScope.getArgumentValue(CHANGELOG_FILE_ARG));
+        if (changelogFile.getParent() != null) {
+            Files.createDirectories(changelogFile.getParent());
+        }
+
+        KeyspaceStreamingDiff diff = new KeyspaceStreamingDiff(KeyspaceStreamingDiff.source(referenceDatabase),
+                KeyspaceStreamingDiff.source(database), commandScope.getArgumentValue(AUTHOR_ARG));
+        int changeSetCount;
+        try (Writer writer = Files.newBufferedWriter(changelogFile, StandardCharsets.UTF_8)) {
+            changeSetCount = diff.write(writer);
+        }
+        Scope.getCurrentScope().getLog(getClass()).info("Wrote " + changeSetCount + " changesets to " + changelogFile);
+        resultsBuilder.addResult(CHANGESET_COUNT, changeSetCount);
+    }
+}
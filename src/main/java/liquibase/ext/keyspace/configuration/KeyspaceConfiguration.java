@@ -0,0 +1,213 @@
+package liquibase.ext.keyspace.configuration;
+
+import liquibase.configuration.AutoloadedConfigurations;
+import liquibase.configuration.ConfigurationDefinition;
+
+/**
+ * Configuration container for AWS Keyspace specific properties.
+ */
+public class KeyspaceConfiguration implements AutoloadedConfigurations {
+
+    public static final ConfigurationDefinition<Long> TABLE_READINESS_TIMEOUT;
+    public static final ConfigurationDefinition<Boolean> PARALLEL_DDL;
+    public static final ConfigurationDefinition<Integer> MAX_CONCURRENT_DDL;
+    public static final ConfigurationDefinition<Integer> BATCH_SIZE;
+    public static final ConfigurationDefinition<Boolean> LOGGED_BATCHES;
+    public static final ConfigurationDefinition<Integer> LOAD_DATA_CHUNK_SIZE;
+    public static final ConfigurationDefinition<Integer> LOAD_DATA_MAX_IN_FLIGHT;
+    public static final ConfigurationDefinition<Integer> LOAD_DATA_WRITE_CAPACITY;
+    public static final ConfigurationDefinition<Integer> RETRY_MAX_ATTEMPTS;
+    public static final ConfigurationDefinition<Long> RETRY_INITIAL_BACKOFF;
+    public static final ConfigurationDefinition<Long> RETRY_MAX_BACKOFF;
+    public static final ConfigurationDefinition<Integer> CIRCUIT_BREAKER_THRESHOLD;
+    public static final ConfigurationDefinition<Long> CIRCUIT_BREAKER_COOLDOWN;
+    public static final ConfigurationDefinition<Boolean> CLIENT_SIDE_TIMESTAMPS;
+    public static final ConfigurationDefinition<Integer> HISTORY_FETCH_SIZE;
+    public static final ConfigurationDefinition<Boolean> HISTORY_ALL_COLUMNS;
+    public static final ConfigurationDefinition<String> CHANGELOG_LAYOUT;
+    public static final ConfigurationDefinition<Integer> HISTORY_FLUSH_INTERVAL;
+    public static final ConfigurationDefinition<Integer> LOCK_LEASE_DURATION;
+    public static final ConfigurationDefinition<String> LOCK_SCOPE;
+    public static final ConfigurationDefinition<String> SNAPSHOT_CACHE_DIRECTORY;
+    public static final ConfigurationDefinition<Long> SNAPSHOT_CACHE_MAX_AGE;
+    public static final ConfigurationDefinition<Integer> SNAPSHOT_PARALLELISM;
+    public static final ConfigurationDefinition<Integer> COPY_TABLE_DATA_TOKEN_RANGES;
+    public static final ConfigurationDefinition<Integer> COPY_TABLE_DATA_PARALLELISM;
+    public static final ConfigurationDefinition<Integer> COPY_TABLE_DATA_WRITE_CAPACITY;
+    public static final ConfigurationDefinition<Integer> MODIFY_DATA_TOKEN_RANGES;
+    public static final ConfigurationDefinition<Integer> MODIFY_DATA_PARALLELISM;
+    public static final ConfigurationDefinition<Integer> MODIFY_DATA_WRITE_CAPACITY;
+
+    static {
+        ConfigurationDefinition.Builder builder = new ConfigurationDefinition.Builder("liquibase.keyspace");
+
+        TABLE_READINESS_TIMEOUT = builder.define("tableReadinessTimeout", Long.class)
+                .setDescription("Number of seconds to wait for tables in CREATING, UPDATING or DELETING state " +
+                        "to settle before the change waiting for them fails")
+                .setDefaultValue(150L)
+                .build();
+
+        PARALLEL_DDL = builder.define("parallelDdl", Boolean.class)
+                .setDescription("If true, the CQL of sql changes is parsed for the tables it touches, so DDL in " +
+                        "independent changesets settles concurrently instead of waiting on every pending table")
+                .setDefaultValue(false)
+                .build();
+
+        MAX_CONCURRENT_DDL = builder.define("maxConcurrentDdl", Integer.class)
+                .setDescription("Maximum number of tables which may be in CREATING, UPDATING or DELETING state at " +
+                        "once. Should not exceed the concurrent DDL quota of the account")
+                .setDefaultValue(50)
+                .build();
+
+        BATCH_SIZE = builder.define("batchSize", Integer.class)
+                .setDescription("Maximum number of inserted rows sent in a single CQL BATCH. AWS Keyspace does " +
+                        "not accept more than 30")
+                .setDefaultValue(30)
+                .build();
+
+        LOGGED_BATCHES = builder.define("loggedBatches", Boolean.class)
+                .setDescription("If true, inserted rows are sent in LOGGED instead of UNLOGGED batches")
+                .setDefaultValue(false)
+                .build();
+
+        LOAD_DATA_CHUNK_SIZE = builder.define("loadDataChunkSize", Integer.class)
+                .setDescription("Number of CSV rows loadData reads into memory at once")
+                .setDefaultValue(1000)
+                .build();
+
+        LOAD_DATA_MAX_IN_FLIGHT = builder.define("loadDataMaxInFlight", Integer.class)
+                .setDescription("Maximum number of loadData batches queued to be sent while the next rows are read. " +
+                        "Batches are sent one at a time in file order")
+                .setDefaultValue(8)
+                .build();
+
+        LOAD_DATA_WRITE_CAPACITY = builder.define("loadDataWriteCapacity", Integer.class)
+                .setDescription("Write capacity units per second loadData may consume, 0 for no limit")
+                .setDefaultValue(0)
+                .build();
+
+        RETRY_MAX_ATTEMPTS = builder.define("retryMaxAttempts", Integer.class)
+                .setDescription("Number of times a statement is tried when it is throttled or times out, " +
+                        "1 disables retries")
+                .setDefaultValue(5)
+                .build();
+
+        RETRY_INITIAL_BACKOFF = builder.define("retryInitialBackoff", Long.class)
+                .setDescription("Number of milliseconds to wait before the first retry, doubled on every further retry")
+                .setDefaultValue(100L)
+                .build();
+
+        RETRY_MAX_BACKOFF = builder.define("retryMaxBackoff", Long.class)
+                .setDescription("Maximum number of milliseconds to wait between retries")
+                .setDefaultValue(10000L)
+                .build();
+
+        CIRCUIT_BREAKER_THRESHOLD = builder.define("circuitBreakerThreshold", Integer.class)
+                .setDescription("Number of throttled statements in a row after which all statements pause for " +
+                        "the circuit breaker cooldown")
+                .setDefaultValue(10)
+                .build();
+
+        CIRCUIT_BREAKER_COOLDOWN = builder.define("circuitBreakerCooldown", Long.class)
+                .setDescription("Number of seconds statements pause once the circuit breaker opened")
+                .setDefaultValue(30L)
+                .build();
+
+        CLIENT_SIDE_TIMESTAMPS = builder.define("clientSideTimestamps", Boolean.class)
+                .setDescription("If true, writes get a USING TIMESTAMP set by the client, so a retried write " +
+                        "can't overwrite a later one. Requires client-side timestamps to be enabled on the tables")
+                .setDefaultValue(false)
+                .build();
+
+        HISTORY_FETCH_SIZE = builder.define("historyFetchSize", Integer.class)
+                .setDescription("Number of DATABASECHANGELOG rows fetched per page")
+                .setDefaultValue(500)
+                .build();
+
+        HISTORY_ALL_COLUMNS = builder.define("historyAllColumns", Boolean.class)
+                .setDescription("If true, ran changesets are read with all DATABASECHANGELOG columns. By default " +
+                        "COMMENTS and LIQUIBASE, which no command needs to decide what to run, are not read")
+                .setDefaultValue(false)
+                .build();
+
+        CHANGELOG_LAYOUT = builder.define("changeLogLayout", String.class)
+                .setDescription("Layout of DATABASECHANGELOG: 'classic' keys rows by ID, AUTHOR and FILENAME, " +
+                        "'timeOrdered' clusters them by ORDEREXECUTED in a few bucket partitions and keeps DESCRIPTION " +
+                        "and COMMENTS in a side table. An existing classic table is migrated once the first time " +
+                        "'timeOrdered' is used")
+                .setDefaultValue("classic")
+                .build();
+
+        HISTORY_FLUSH_INTERVAL = builder.define("historyFlushInterval", Integer.class)
+                .setDescription("Number of changesets whose DATABASECHANGELOG rows are buffered and written " +
+                        "together in batches. Buffered rows are also written before the lock is released and before " +
+                        "an error is reported. 1 writes every row right away")
+                .setDefaultValue(1)
+                .build();
+
+        LOCK_LEASE_DURATION = builder.define("lockLeaseDuration", Integer.class)
+                .setDescription("Number of seconds the change log lock is leased for. The lock row is written with " +
+                        "this TTL and renewed in the background while the lock is held, so the lock of a killed " +
+                        "process expires on its own. 0 keeps the lock until it is released")
+                .setDefaultValue(0)
+                .build();
+
+        LOCK_SCOPE = builder.define("lockScope", String.class)
+                .setDescription("Scope of the change log lock, e.g. the changelog file or the directory holding the " +
+                        "changelogs of one service. Each scope has its own lock row, so deployments of scopes which " +
+                        "don't contain one another run concurrently, and only sees the DATABASECHANGELOG rows whose " +
+                        "FILENAME is under it. By default there is one lock for the whole keyspace, which excludes " +
+                        "every scope")
+                .build();
+
+        SNAPSHOT_CACHE_DIRECTORY = builder.define("snapshotCacheDirectory", String.class)
+                .setDescription("Directory the columns read by snapshots of whole keyspaces are cached in. A cached " +
+                        "keyspace is reused while the tables of the keyspace are unchanged, until Liquibase runs DDL " +
+                        "on the cluster. By default nothing is cached")
+                .build();
+
+        SNAPSHOT_CACHE_MAX_AGE = builder.define("snapshotCacheMaxAge", Long.class)
+                .setDescription("Number of seconds a cached keyspace is reused at most, even if its fingerprint is " +
+                        "unchanged. Bounds how long a column change made outside of Liquibase goes unnoticed")
+                .setDefaultValue(3600L)
+                .build();
+
+        SNAPSHOT_PARALLELISM = builder.define("snapshotParallelism", Integer.class)
+                .setDescription("Maximum number of keyspaces whose tables and columns are read concurrently when a " +
+                        "snapshot or diff covers several keyspaces")
+                .setDefaultValue(8)
+                .build();
+
+        COPY_TABLE_DATA_TOKEN_RANGES = builder.define("copyTableDataTokenRanges", Integer.class)
+                .setDescription("Number of token ranges copyTableData splits the source table into. Each range is " +
+                        "read on its own and checkpointed once copied")
+                .setDefaultValue(256)
+                .build();
+
+        COPY_TABLE_DATA_PARALLELISM = builder.define("copyTableDataParallelism", Integer.class)
+                .setDescription("Maximum number of token ranges copyTableData copies concurrently")
+                .setDefaultValue(8)
+                .build();
+
+        COPY_TABLE_DATA_WRITE_CAPACITY = builder.define("copyTableDataWriteCapacity", Integer.class)
+                .setDescription("Write capacity units per second copyTableData may consume, 0 for no limit")
+                .setDefaultValue(0)
+                .build();
+
+        MODIFY_DATA_TOKEN_RANGES = builder.define("modifyDataTokenRanges", Integer.class)
+                .setDescription("Number of token ranges a delete or update whose where clause doesn't name the " +
+                        "full primary key splits the table into to scan it for matching rows")
+                .setDefaultValue(256)
+                .build();
+
+        MODIFY_DATA_PARALLELISM = builder.define("modifyDataParallelism", Integer.class)
+                .setDescription("Maximum number of token ranges such a delete or update scans concurrently")
+                .setDefaultValue(8)
+                .build();
+
+        MODIFY_DATA_WRITE_CAPACITY = builder.define("modifyDataWriteCapacity", Integer.class)
+                .setDescription("Write capacity units per second such a delete or update may consume, 0 for no limit")
+                .setDefaultValue(0)
+                .build();
+    }
+}
@@ -0,0 +1,124 @@
+package liquibase.ext.keyspace.data;
+
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.executor.KeyspaceRetryPolicy;
+import liquibase.ext.keyspace.executor.KeyspaceThreads;
+
+import java.sql.Statement;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends write CQL on a single background thread, keeping at most a fixed number of statements submitted but not yet
+ * completed and, if a {@link TokenBucket} is given, at most its rate of write capacity units per second.
+ * <p>
+ * Statements are sent one at a time in the order they were submitted, each only once the one before it succeeded, so
+ * a row written again by a later statement, e.g. a repeated primary key in a CSV file, keeps the later values. The
+ * caller prepares the next statements meanwhile. Statements are retried by the given {@link KeyspaceRetryPolicy}. The
+ * first failing statement stops the writer, it is rethrown by the next {@link #submit} or {@link #flush()}.
+ */
+public class KeyspaceBatchWriter implements AutoCloseable {
+
+    private final KeyspaceStatementCache statementCache;
+    private final TokenBucket tokenBucket;
+    private final KeyspaceRetryPolicy retryPolicy;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final AtomicReference<DatabaseException> failure = new AtomicReference<>();
+    private final AtomicLong written = new AtomicLong();
+
+    public KeyspaceBatchWriter(KeyspaceStatementCache statementCache, int maxInFlight, TokenBucket tokenBucket,
+                               KeyspaceRetryPolicy retryPolicy) {
+        this.statementCache = statementCache;
+        this.tokenBucket = tokenBucket;
+        this.retryPolicy = retryPolicy;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        // a single thread, the statement cache sends one statement at a time anyway and this keeps their order
+        this.executor = KeyspaceThreads.newFixedThreadPool("keyspace-writer", 1);
+    }
+
+    /**
+     * Queues the given CQL behind the statements submitted before it, blocking while the write capacity is used up or
+     * too many statements are in flight.
+     *
+     * @param writeUnits write capacity units the statement consumes
+     */
+    public void submit(String cql, int writeUnits) throws DatabaseException {
+        checkFailure();
+        String statementCql = KeyspaceConfiguration.CLIENT_SIDE_TIMESTAMPS.getCurrentValue()
+                ? KeyspaceRetryPolicy.withClientTimestamp(cql, KeyspaceRetryPolicy.currentTimestampMicros()) : cql;
+        try {
+            if (tokenBucket != null) {
+                tokenBucket.acquire(writeUnits);
+            }
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (failure.get() == null) {
+                        retryPolicy.execute(statementCql, () -> statementCache.withConnection(connection -> {
+                            try (Statement statement = connection.createStatement()) {
+                                return statement.execute(statementCql);
+                            }
+                        }));
+                        written.incrementAndGet();
+                    }
+                } catch (DatabaseException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Blocks until every submitted statement completed.
+     */
+    public void flush() throws DatabaseException {
+        try {
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * @return the number of statements executed successfully so far
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() throws DatabaseException {
+        DatabaseException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package liquibase.ext.keyspace.data;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.executor.KeyspaceRetryPolicy;
+import liquibase.ext.keyspace.executor.KeyspaceThreads;
+import liquibase.ext.keyspace.sqlgenerator.InsertSetGeneratorKeyspace;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Deletes or updates the rows of a table of the logged keyspace which match a where clause Cassandra can't run a
+ * DELETE or UPDATE with, because it doesn't name the full primary key.
+ * <p>
+ * The table is scanned for the primary keys of the matching rows with ALLOW FILTERING, split into token ranges like
+ * {@link KeyspaceTableCopier} does, up to a given number of ranges concurrently. Every row found is then deleted or
+ * updated by its primary key, in batches of prepared statements throttled to a rate of write capacity units per second
+ * if one is given. The ranges take turns on the shared connection like those of {@link KeyspaceTableCopier} do.
+ * <p>
+ * There are no checkpoints. A range whose scan fails is scanned again, which modifies the rows found before the failure
+ * a second time: deleted rows aren't found again, and an idempotent update just writes the same cells again. An update
+ * which isn't idempotent, see {@link KeyspaceRetryPolicy#isIdempotent(String)}, e.g. one adding to a counter or a
+ * collection, is not repeated, a range which fails then fails the modification.
+ */
+public class KeyspaceRangeModifier {
+
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern AND = Pattern.compile("\\s+AND\\s+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RELATION = Pattern.compile("^\\s*\"?(\\w+)\"?\\s*(=|!=|<=|>=|<|>|IN\\b|CONTAINS\\b|LIKE\\b)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final KeyspaceDatabase database;
+    private final String tableName;
+    private final String where;
+    private final String modification;
+
+    /**
+     * @param where        the where clause the rows have to match, or null for all rows
+     * @param modification the DELETE or UPDATE of the table without its where clause, e.g. "UPDATE ks.t SET a = 1"
+     */
+    public KeyspaceRangeModifier(KeyspaceDatabase database, String tableName, String where, String modification) {
+        this.database = database;
+        this.tableName = tableName;
+        this.where = where;
+        this.modification = modification;
+    }
+
+    /**
+     * Deletes or updates all matching rows.
+     *
+     * @return the number of rows modified
+     */
+    public long modify(int tokenRanges, int parallelism, int writeCapacity) throws DatabaseException {
+        List<String> partitionKey = database.getConnectionProfile().getPartitionKeyColumns(tableName);
+        List<String> primaryKey = database.getConnectionProfile().getPrimaryKeyColumns(tableName);
+        if (partitionKey.isEmpty()) {
+            throw new DatabaseException("Could not read the partition key of " + tableName);
+        }
+        String select = "SELECT " + String.join(", ", primaryKey) + " FROM " + database.getDefaultCatalogName() + "." + tableName;
+        String keyed = modification + " WHERE " + primaryKey.stream().map(column -> column + " = ?").collect(Collectors.joining(" AND "));
+
+        // a restricted partition key can't be restricted by token as well, and there is only one partition to scan
+        List<String> selects = new ArrayList<>();
+        if (where != null && restricts(where, partitionKey)) {
+            selects.add(select + " WHERE " + where + " ALLOW FILTERING");
+        } else {
+            String token = "token(" + String.join(", ", partitionKey) + ")";
+            for (BigInteger[] range : KeyspaceTableCopier.split(KeyspaceTableCopier.readPartitioner(database), tokenRanges)) {
+                selects.add(select + " WHERE " + token + " > " + range[0] + " AND " + token + " <= " + range[1]
+                        + (where == null ? "" : " AND " + where + " ALLOW FILTERING"));
+            }
+        }
+
+        int batchSize = InsertSetGeneratorKeyspace.getBatchSize();
+        TokenBucket tokenBucket = writeCapacity > 0 ? new TokenBucket(writeCapacity) : null;
+        KeyspaceStatementCache statementCache = database.getStatementCache();
+        AtomicLong rows = new AtomicLong();
+        ExecutorService executor = KeyspaceThreads.newFixedThreadPool("keyspace-modify", parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String rangeSelect : selects) {
+                futures.add(executor.submit(() -> {
+                    rows.addAndGet(modifyRange(statementCache, rangeSelect, keyed, primaryKey.size(), batchSize, tokenBucket));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DatabaseException) {
+                throw (DatabaseException) e.getCause();
+            }
+            throw new DatabaseException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Scope.getCurrentScope().getLog(getClass()).info(String.format("Modified %d rows of %s%s in %d token ranges",
+                rows.get(), tableName, where == null ? "" : " matching " + where, selects.size()));
+        return rows.get();
+    }
+
+    /**
+     * Modifies the matching rows of one token range. A failed read starts the range over.
+     */
+    long modifyRange(KeyspaceStatementCache statementCache, String select, String keyed, int keySize, int batchSize,
+                     TokenBucket tokenBucket) throws Exception {
+        KeyspaceRetryPolicy retryPolicy = database.getRetryPolicy();
+        KeyspaceRetryPolicy.Attempt<Long> scan = () -> KeyspaceTableCopier.scan(statementCache, select, keySize, batchSize,
+                batch -> KeyspaceTableCopier.write(retryPolicy, statementCache, keyed, batch, tokenBucket));
+        if (KeyspaceRetryPolicy.isIdempotent(keyed)) {
+            return retryPolicy.execute(select, scan);
+        }
+        try {
+            return scan.run();
+        } catch (Exception e) {
+            throw new DatabaseException("Could not modify the rows of " + tableName + " in " + select
+                    + ", some of them may be modified already and can't be modified again safely: " + keyed, e);
+        }
+    }
+
+    /**
+     * Tells whether Cassandra can run a DELETE or UPDATE with the given where clause as it is, which is the case if
+     * it restricts every primary key column by = or IN and nothing else. If the primary key isn't known it is assumed
+     * to.
+     */
+    public static boolean isKeyed(String where, List<String> primaryKey) {
+        if (primaryKey.isEmpty()) {
+            return true;
+        }
+        if (where == null) {
+            return false;
+        }
+        Set<String> restricted = new HashSet<>();
+        for (String[] relation : relations(where)) {
+            if (relation == null || !primaryKey.contains(relation[0]) || !isEquality(relation[1])) {
+                return false;
+            }
+            restricted.add(relation[0]);
+        }
+        return restricted.size() == primaryKey.size();
+    }
+
+    /**
+     * @return true if the where clause restricts every one of the given columns by = or IN
+     */
+    static boolean restricts(String where, List<String> columns) {
+        Set<String> restricted = new HashSet<>();
+        for (String[] relation : relations(where)) {
+            if (relation != null && isEquality(relation[1])) {
+                restricted.add(relation[0]);
+            }
+        }
+        return restricted.containsAll(columns);
+    }
+
+    /**
+     * Splits a where clause into its relations, which CQL only joins by AND.
+     *
+     * @return the lower case column and upper case operator of every relation, null for a relation which isn't on a
+     * single column, e.g. on a token or a tuple
+     */
+    private static List<String[]> relations(String where) {
+        List<String[]> relations = new ArrayList<>();
+        for (String relation : AND.split(STRING_LITERAL.matcher(where).replaceAll("?"))) {
+            Matcher matcher = RELATION.matcher(relation);
+            relations.add(matcher.find() ? new String[]{matcher.group(1).toLowerCase(), matcher.group(2).toUpperCase()} : null);
+        }
+        return relations;
+    }
+
+    private static boolean isEquality(String operator) {
+        return "=".equals(operator) || "IN".equals(operator);
+    }
+}
@@ -0,0 +1,273 @@
+package liquibase.ext.keyspace.data;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.executor.KeyspaceRetryPolicy;
+import liquibase.ext.keyspace.executor.KeyspaceThreads;
+import liquibase.ext.keyspace.sqlgenerator.InsertSetGeneratorKeyspace;
+
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies the rows of one table of the logged keyspace into another, e.g. one with a new primary key.
+ * <p>
+ * The token ring is split into ranges which are scanned page by page, up to a given number of them concurrently,
+ * each on its own statements. The ranges take turns on the shared connection, a page is read or a batch written at a
+ * time, see {@link KeyspaceStatementCache#withConnection}. Rows are written in batches of prepared inserts, throttled to a rate of write capacity
+ * units per second if one is given. Every range copied is checkpointed in a side table of DATABASECHANGELOG, see
+ * {@link #getProgressTableName(KeyspaceDatabase)} with its bounds, so a copy which failed picks up with the ranges it
+ * didn't finish when it runs again. A copy whose ranges were split differently before, e.g. into another number of
+ * ranges, is not resumed, as its checkpoints don't cover the same rows. Inserts are idempotent, rows of an unfinished
+ * range are just written again.
+ */
+public class KeyspaceTableCopier {
+
+    private static final int FETCH_SIZE = 1000;
+
+    private static final BigInteger MURMUR3_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MURMUR3_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final BigInteger RANDOM_MIN = BigInteger.ONE.negate();
+    private static final BigInteger RANDOM_MAX = BigInteger.ONE.shiftLeft(127);
+
+    private final KeyspaceDatabase database;
+    private final String sourceTableName;
+    private final String targetTableName;
+    private final Map<String, String> columns;
+    private final String copyId;
+
+    /**
+     * @param columns source column of every target column written
+     * @param copyId  identifies the copy in the checkpoints, the same across runs
+     */
+    public KeyspaceTableCopier(KeyspaceDatabase database, String sourceTableName, String targetTableName,
+                               Map<String, String> columns, String copyId) {
+        this.database = database;
+        this.sourceTableName = sourceTableName;
+        this.targetTableName = targetTableName;
+        this.columns = columns;
+        this.copyId = copyId;
+    }
+
+    public static String getProgressTableName(KeyspaceDatabase database) {
+        return database.getDatabaseChangeLogTableName().toLowerCase() + "_copy";
+    }
+
+    /**
+     * Copies the rows of all ranges not copied yet.
+     *
+     * @return the number of rows copied by this run
+     */
+    public long copy(int tokenRanges, int parallelism, int writeCapacity) throws DatabaseException {
+        List<String> partitionKey = database.getConnectionProfile().getPartitionKeyColumns(sourceTableName);
+        if (partitionKey.isEmpty()) {
+            throw new DatabaseException("Could not read the partition key of " + sourceTableName);
+        }
+        String keyspace = database.getDefaultCatalogName();
+        String progressTable = keyspace + "." + getProgressTableName(database);
+        database.createTableIfNeeded(getProgressTableName(database),
+                "COPY_ID TEXT, RANGE INT, RANGE_START TEXT, RANGE_END TEXT, ROWS BIGINT, PRIMARY KEY (COPY_ID, RANGE)");
+        List<BigInteger[]> ranges = split(readPartitioner(database), tokenRanges);
+        Set<Integer> copied = copiedRanges(ranges, database.getStatementCache().query(
+                "SELECT RANGE, RANGE_START, RANGE_END FROM " + progressTable + " WHERE COPY_ID = ?",
+                rs -> new Object[]{rs.getInt("RANGE"), rs.getString("RANGE_START"), rs.getString("RANGE_END")}, copyId));
+
+        String token = "token(" + String.join(", ", partitionKey) + ")";
+        String select = "SELECT " + String.join(", ", columns.values()) + " FROM " + keyspace + "." + sourceTableName
+                + " WHERE " + token + " > %s AND " + token + " <= %s";
+        String insert = "INSERT INTO " + keyspace + "." + targetTableName + " (" + String.join(", ", columns.keySet())
+                + ") VALUES (" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        if (!copied.isEmpty()) {
+            Scope.getCurrentScope().getLog(getClass()).info(String.format("Resuming copy of %s into %s, %d of %d ranges are copied",
+                    sourceTableName, targetTableName, copied.size(), ranges.size()));
+        }
+
+        int batchSize = InsertSetGeneratorKeyspace.getBatchSize();
+        TokenBucket tokenBucket = writeCapacity > 0 ? new TokenBucket(writeCapacity) : null;
+        AtomicLong rows = new AtomicLong();
+        ExecutorService executor = KeyspaceThreads.newFixedThreadPool("keyspace-copy", parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                if (copied.contains(i)) {
+                    continue;
+                }
+                int range = i;
+                BigInteger[] bounds = ranges.get(i);
+                String rangeSelect = String.format(select, bounds[0], bounds[1]);
+                futures.add(executor.submit(() -> {
+                    long rangeRows = copyRange(rangeSelect, insert, batchSize, tokenBucket);
+                    database.getStatementCache().update("INSERT INTO " + progressTable
+                                    + " (COPY_ID, RANGE, RANGE_START, RANGE_END, ROWS) VALUES (?, ?, ?, ?, ?)",
+                            copyId, range, bounds[0].toString(), bounds[1].toString(), rangeRows);
+                    rows.addAndGet(rangeRows);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DatabaseException) {
+                throw (DatabaseException) e.getCause();
+            }
+            throw new DatabaseException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        database.getStatementCache().update("DELETE FROM " + progressTable + " WHERE COPY_ID = ?", copyId);
+        Scope.getCurrentScope().getLog(getClass()).info(String.format("Copied %d rows of %s into %s in %d token ranges",
+                rows.get(), sourceTableName, targetTableName, ranges.size() - copied.size()));
+        return rows.get();
+    }
+
+    /**
+     * @param checkpoints range, start and end of every checkpoint of the copy
+     * @return the ranges which are copied already
+     * @throws DatabaseException if a checkpoint is of a range the token ring is not split into now
+     */
+    static Set<Integer> copiedRanges(List<BigInteger[]> ranges, List<Object[]> checkpoints) throws DatabaseException {
+        Set<Integer> copied = new HashSet<>();
+        for (Object[] checkpoint : checkpoints) {
+            int range = (Integer) checkpoint[0];
+            if (range < 0 || range >= ranges.size() || !ranges.get(range)[0].toString().equals(checkpoint[1])
+                    || !ranges.get(range)[1].toString().equals(checkpoint[2])) {
+                throw new DatabaseException("The copy was started with other token ranges, range " + range + " from "
+                        + checkpoint[1] + " to " + checkpoint[2] + " is not one of the " + ranges.size()
+                        + " ranges now. Run it with the token ranges it was started with, or delete its checkpoints");
+            }
+            copied.add(range);
+        }
+        return copied;
+    }
+
+    /**
+     * Copies one token range. A failed read starts the range over, writing its rows again.
+     */
+    private long copyRange(String select, String insert, int batchSize, TokenBucket tokenBucket) throws Exception {
+        KeyspaceStatementCache statementCache = database.getStatementCache();
+        KeyspaceRetryPolicy retryPolicy = database.getRetryPolicy();
+        return retryPolicy.execute(select, () -> scan(statementCache, select, columns.size(), batchSize,
+                batch -> write(retryPolicy, statementCache, insert, batch, tokenBucket)));
+    }
+
+    /**
+     * Handles a batch of rows read by {@link #scan}.
+     */
+    interface BatchHandler {
+
+        /**
+         * @return the number of rows handled
+         */
+        int handle(List<Object[]> batch) throws Exception;
+    }
+
+    /**
+     * Reads the rows of the given select in batches, using the shared connection for one batch at a time, and hands
+     * them to the given handler, which doesn't hold the connection.
+     *
+     * @return the number of rows handled
+     */
+    static long scan(KeyspaceStatementCache statementCache, String select, int columnCount, int batchSize,
+                     BatchHandler handler) throws Exception {
+        long handled = 0;
+        try (Statement statement = statementCache.withConnection(connection -> connection.createStatement());
+             ResultSet rs = statementCache.withConnection(connection -> {
+                 statement.setFetchSize(FETCH_SIZE);
+                 return statement.executeQuery(select);
+             })) {
+            List<Object[]> batch;
+            while (!(batch = statementCache.withConnection(connection -> readRows(rs, columnCount, batchSize))).isEmpty()) {
+                handled += handler.handle(batch);
+            }
+        }
+        return handled;
+    }
+
+    private static List<Object[]> readRows(ResultSet rs, int columnCount, int limit) throws SQLException {
+        List<Object[]> rows = new ArrayList<>(limit);
+        while (rows.size() < limit && rs.next()) {
+            Object[] row = new Object[columnCount];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = rs.getObject(i + 1);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Runs the cached prepared statement of the given CQL once for every row of the batch, as one JDBC batch.
+     *
+     * @return the number of rows written
+     */
+    static int write(KeyspaceRetryPolicy retryPolicy, KeyspaceStatementCache statementCache, String cql, List<Object[]> batch,
+                     TokenBucket tokenBucket) throws Exception {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        if (tokenBucket != null) {
+            tokenBucket.acquire(batch.size());
+        }
+        retryPolicy.execute(cql, () -> statementCache.withConnection(connection -> {
+            // prepared and bound under the same monitor, as the cached statement is shared by all threads
+            PreparedStatement preparedStatement = statementCache.prepare(cql);
+            preparedStatement.clearBatch();
+            for (Object[] row : batch) {
+                KeyspaceStatementCache.bind(preparedStatement, row);
+                preparedStatement.addBatch();
+            }
+            return preparedStatement.executeBatch();
+        }));
+        return batch.size();
+    }
+
+    /**
+     * @return the partitioner of the cluster
+     * @throws DatabaseException if it can't be read, as the token ring can't be split without knowing its bounds
+     */
+    static String readPartitioner(KeyspaceDatabase database) throws DatabaseException {
+        List<String> partitioners = database.getStatementCache().query("SELECT partitioner FROM system.local",
+                rs -> rs.getString("partitioner"));
+        if (partitioners.isEmpty() || partitioners.get(0) == null) {
+            throw new DatabaseException("Could not read the partitioner from system.local");
+        }
+        return partitioners.get(0);
+    }
+
+    /**
+     * Splits the token ring of the given partitioner into ranges of about the same size. Murmur3 tokens are longs,
+     * everything else, like the RandomPartitioner and the default partitioner of AWS Keyspace, has tokens from 0 to
+     * 2^127.
+     *
+     * @return the exclusive start and inclusive end of every range, covering the whole ring
+     */
+    static List<BigInteger[]> split(String partitioner, int count) {
+        boolean murmur3 = partitioner.contains("Murmur3");
+        BigInteger min = murmur3 ? MURMUR3_MIN : RANDOM_MIN;
+        BigInteger max = murmur3 ? MURMUR3_MAX : RANDOM_MAX;
+        BigInteger size = max.subtract(min);
+        int ranges = Math.max(1, count);
+        List<BigInteger[]> split = new ArrayList<>(ranges);
+        BigInteger start = min;
+        for (int i = 1; i <= ranges; i++) {
+            BigInteger end = i == ranges ? max : min.add(size.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(ranges)));
+            split.add(new BigInteger[]{start, end});
+            start = end;
+        }
+        return split;
+    }
+}
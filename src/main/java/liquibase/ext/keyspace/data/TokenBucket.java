@@ -0,0 +1,49 @@
+package liquibase.ext.keyspace.data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket holding at most one second worth of tokens, refilled continuously at the given rate.
+ * <p>
+ * A caller asking for more tokens than are available takes them anyway and sleeps until the bucket is back at zero, so
+ * requests larger than the bucket still go through, just at the configured rate.
+ */
+public class TokenBucket {
+
+    private final double ratePerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive, was " + ratePerSecond);
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.tokens = ratePerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes the given number of tokens, blocking while the bucket is in debt.
+     */
+    public synchronized void acquire(int permits) throws InterruptedException {
+        refill();
+        tokens -= permits;
+        if (tokens < 0) {
+            // holding the lock on purpose, later callers queue up behind this one
+            TimeUnit.NANOSECONDS.sleep((long) Math.ceil(-tokens / ratePerSecond * TimeUnit.SECONDS.toNanos(1)));
+            refill();
+        }
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(ratePerSecond, tokens + (now - lastRefillNanos) * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,209 @@
+package liquibase.ext.keyspace.database;
+
+import liquibase.Scope;
+import liquibase.change.AbstractSQLChange;
+import liquibase.change.Change;
+import liquibase.change.ChangeFactory;
+import liquibase.change.ChangeParameterMetaData;
+import liquibase.change.core.*;
+import liquibase.change.custom.CustomChangeWrapper;
+import liquibase.ext.keyspace.change.UpdateTableCapacityChange;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.util.StringUtil;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out which tables a change touches and which of them it sends into CREATING, UPDATING or DELETING state.
+ * <p>
+ * Tables of core changes come from their table name parameters. The CQL of sql changes is only parsed when
+ * {@link KeyspaceConfiguration#PARALLEL_DDL} is enabled, otherwise their tables are unknown.
+ * <p>
+ * Tables are named like {@link TableReadinessBarrier} does: by their name in the given default keyspace, and as
+ * keyspace.table in any other keyspace, e.g. from the catalogName of a change or a qualified name in CQL.
+ */
+public final class ChangeTableNames {
+
+    private static final List<String> TABLE_PARAMETERS = Arrays.asList(
+            "tableName", "oldTableName", "newTableName", "baseTableName", "referencedTableName", "existingTableName",
+            "sourceTableName", "targetTableName");
+
+    private static final String NAME = "((?:\"[^\"]+\"|\\w+)(?:\\s*\\.\\s*(?:\"[^\"]+\"|\\w+))?)";
+
+    private static final Pattern CREATE_TABLE = Pattern.compile("(?is)^CREATE\\s+TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?" + NAME + ".*");
+    private static final Pattern ALTER_TABLE = Pattern.compile("(?is)^ALTER\\s+TABLE\\s+" + NAME + ".*");
+    private static final Pattern DROP_TABLE = Pattern.compile("(?is)^DROP\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?" + NAME + ".*");
+    private static final Pattern[] DML = new Pattern[]{
+            Pattern.compile("(?is)^INSERT\\s+INTO\\s+" + NAME + ".*"),
+            Pattern.compile("(?is)^UPDATE\\s+" + NAME + ".*"),
+            Pattern.compile("(?is)^DELETE\\s+.*?FROM\\s+" + NAME + ".*"),
+            Pattern.compile("(?is)^SELECT\\s+.*?FROM\\s+" + NAME + ".*"),
+            Pattern.compile("(?is)^TRUNCATE\\s+(?:TABLE\\s+)?" + NAME + ".*"),
+            Pattern.compile("(?is)^CREATE\\s+(?:CUSTOM\\s+)?INDEX\\s+(?:.*?\\s+)?ON\\s+" + NAME + ".*"),
+    };
+
+    private ChangeTableNames() {
+    }
+
+    /**
+     * @return the lower case names of the tables touched by the change, or null if they can't be determined
+     * (e.g. custom changes, or sql changes without parallel DDL)
+     */
+    public static Set<String> of(Change change, String defaultKeyspace) {
+        if (change instanceof AbstractSQLChange) {
+            Map<String, TableReadinessBarrier.PendingState> tables = parseSql((AbstractSQLChange) change, defaultKeyspace);
+            return tables == null ? null : tables.keySet();
+        }
+        if (change instanceof CustomChangeWrapper) {
+            return null;
+        }
+        Set<String> tableNames = new HashSet<>();
+        Map<String, ChangeParameterMetaData> parameters = Scope.getCurrentScope().getSingleton(ChangeFactory.class)
+                .getChangeMetaData(change).getParameters();
+        ChangeParameterMetaData catalog = parameters.get("catalogName");
+        Object keyspace = catalog == null ? null : catalog.getCurrentValue(change);
+        for (String parameterName : TABLE_PARAMETERS) {
+            ChangeParameterMetaData parameter = parameters.get(parameterName);
+            if (parameter != null) {
+                Object value = parameter.getCurrentValue(change);
+                if (value != null) {
+                    tableNames.add(qualify(keyspace == null ? null : keyspace.toString().toLowerCase(),
+                            value.toString().toLowerCase(), defaultKeyspace));
+                }
+            }
+        }
+        return tableNames;
+    }
+
+    /**
+     * @return the tables the change sends into CREATING, UPDATING or DELETING state, with that state
+     */
+    public static Map<String, TableReadinessBarrier.PendingState> ddlOf(Change change, String defaultKeyspace) {
+        if (change instanceof AbstractSQLChange) {
+            Map<String, TableReadinessBarrier.PendingState> tables = parseSql((AbstractSQLChange) change, defaultKeyspace);
+            Map<String, TableReadinessBarrier.PendingState> ddl = new LinkedHashMap<>();
+            if (tables != null) {
+                for (Map.Entry<String, TableReadinessBarrier.PendingState> entry : tables.entrySet()) {
+                    if (entry.getValue() != null) {
+                        ddl.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            return ddl;
+        }
+
+        TableReadinessBarrier.PendingState pendingState = null;
+        if (change instanceof CreateTableChange) {
+            pendingState = TableReadinessBarrier.PendingState.CREATING;
+        } else if (change instanceof DropTableChange) {
+            pendingState = TableReadinessBarrier.PendingState.DELETING;
+        } else if (change instanceof AddColumnChange || change instanceof DropColumnChange
+                || change instanceof RenameColumnChange || change instanceof ModifyDataTypeChange
+                || change instanceof SetTableRemarksChange || change instanceof UpdateTableCapacityChange) {
+            pendingState = TableReadinessBarrier.PendingState.UPDATING;
+        }
+
+        Map<String, TableReadinessBarrier.PendingState> ddl = new LinkedHashMap<>();
+        Set<String> tableNames = of(change, defaultKeyspace);
+        if (pendingState != null && tableNames != null) {
+            for (String tableName : tableNames) {
+                ddl.put(tableName, pendingState);
+            }
+        }
+        return ddl;
+    }
+
+    /**
+     * @return the tables rolling the change back sends into CREATING, UPDATING or DELETING state, with that state. A
+     * table the change created is deleted by the rollback and the other way round
+     */
+    public static Map<String, TableReadinessBarrier.PendingState> rollbackDdlOf(Change change, String defaultKeyspace) {
+        Map<String, TableReadinessBarrier.PendingState> ddl = new LinkedHashMap<>();
+        for (Map.Entry<String, TableReadinessBarrier.PendingState> entry : ddlOf(change, defaultKeyspace).entrySet()) {
+            TableReadinessBarrier.PendingState pendingState = entry.getValue();
+            if (pendingState == TableReadinessBarrier.PendingState.CREATING) {
+                pendingState = TableReadinessBarrier.PendingState.DELETING;
+            } else if (pendingState == TableReadinessBarrier.PendingState.DELETING) {
+                pendingState = TableReadinessBarrier.PendingState.CREATING;
+            }
+            ddl.put(entry.getKey(), pendingState);
+        }
+        return ddl;
+    }
+
+    private static Map<String, TableReadinessBarrier.PendingState> parseSql(AbstractSQLChange change, String defaultKeyspace) {
+        if (!KeyspaceConfiguration.PARALLEL_DDL.getCurrentValue()) {
+            return null;
+        }
+        String sql = change.getSql();
+        if (sql == null) {
+            return null;
+        }
+        return parseCql(StringUtil.processMultiLineSQL(sql, true, true, change.getEndDelimiter()), defaultKeyspace);
+    }
+
+    /**
+     * Parses the given CQL statements.
+     *
+     * @return the touched tables, mapped to the state their DDL sends them into (null for DML), or null if any of
+     * the statements is not understood
+     */
+    static Map<String, TableReadinessBarrier.PendingState> parseCql(String[] statements, String defaultKeyspace) {
+        Map<String, TableReadinessBarrier.PendingState> tables = new LinkedHashMap<>();
+        for (String statement : statements) {
+            String cql = StringUtil.trimToNull(statement);
+            if (cql == null) {
+                continue;
+            }
+            Matcher matcher;
+            if ((matcher = CREATE_TABLE.matcher(cql)).matches()) {
+                tables.put(tableName(matcher.group(1), defaultKeyspace), TableReadinessBarrier.PendingState.CREATING);
+            } else if ((matcher = ALTER_TABLE.matcher(cql)).matches()) {
+                tables.put(tableName(matcher.group(1), defaultKeyspace), TableReadinessBarrier.PendingState.UPDATING);
+            } else if ((matcher = DROP_TABLE.matcher(cql)).matches()) {
+                tables.put(tableName(matcher.group(1), defaultKeyspace), TableReadinessBarrier.PendingState.DELETING);
+            } else {
+                String tableName = null;
+                for (Pattern pattern : DML) {
+                    matcher = pattern.matcher(cql);
+                    if (matcher.matches()) {
+                        tableName = tableName(matcher.group(1), defaultKeyspace);
+                        break;
+                    }
+                }
+                if (tableName == null) {
+                    return null;
+                }
+                if (!tables.containsKey(tableName)) {
+                    tables.put(tableName, null);
+                }
+            }
+        }
+        return tables;
+    }
+
+    private static String tableName(String qualifiedName, String defaultKeyspace) {
+        int separator = qualifiedName.lastIndexOf('.');
+        if (separator < 0) {
+            return name(qualifiedName);
+        }
+        return qualify(name(qualifiedName.substring(0, separator).trim()), name(qualifiedName.substring(separator + 1).trim()),
+                defaultKeyspace);
+    }
+
+    private static String name(String name) {
+        if (name.startsWith("\"") && name.endsWith("\"")) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name.toLowerCase();
+    }
+
+    private static String qualify(String keyspace, String tableName, String defaultKeyspace) {
+        if (keyspace == null || keyspace.equalsIgnoreCase(defaultKeyspace)) {
+            return tableName;
+        }
+        return keyspace + "." + tableName;
+    }
+}
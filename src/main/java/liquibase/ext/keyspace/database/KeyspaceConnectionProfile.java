@@ -0,0 +1,228 @@
+package liquibase.ext.keyspace.database;
+
+import com.simba.cassandra.cassandra.core.CDBJDBCConnection;
+import com.simba.cassandra.jdbc.jdbc42.S42Connection;
+import liquibase.Scope;
+import liquibase.database.DatabaseConnection;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.executor.KeyspaceRetryPolicy;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * What we know about the connection of a {@link KeyspaceDatabase}, worked out once per connection instead of on
+ * every command.
+ * <p>
+ * The logged keyspace and endpoint flavour come from the connection itself, whether system_schema_mcs and the
+ * tracking tables exist and the primary keys of tables are probed on first use and remembered until one of the
+ * invalidate methods is called.
+ */
+public class KeyspaceConnectionProfile {
+
+    private static final Pattern KEYSPACES_URL = Pattern.compile("^jdbc:cassandra://cassandra(-fips)?\\.(.)+\\.amazonaws\\.com:(.)+");
+
+    public enum Flavour {
+        AWS_KEYSPACES,
+        CASSANDRA
+    }
+
+    private final KeyspaceDatabase database;
+    private final String loggedKeyspace;
+    private final Flavour flavour;
+
+    private Boolean hasSystemSchemaMcs;
+    private Set<String> trackingTables;
+    private final Map<String, List<String>> partitionKeys = new HashMap<>();
+    private final Map<String, List<String>> primaryKeys = new HashMap<>();
+
+    public KeyspaceConnectionProfile(KeyspaceDatabase database, DatabaseConnection connection) {
+        this.database = database;
+        this.loggedKeyspace = readLoggedKeyspace(connection);
+        this.flavour = connection != null && String.valueOf(connection.getURL()).toLowerCase().contains("amazonaws")
+                ? Flavour.AWS_KEYSPACES : Flavour.CASSANDRA;
+    }
+
+    /**
+     * @return true if the url points to an AWS Keyspaces endpoint
+     */
+    public static boolean isKeyspacesUrl(String url) {
+        return KEYSPACES_URL.matcher(String.valueOf(url)).matches();
+    }
+
+    public String getLoggedKeyspace() {
+        return loggedKeyspace;
+    }
+
+    public Flavour getFlavour() {
+        return flavour;
+    }
+
+    public boolean isAwsKeyspaces() {
+        return flavour == Flavour.AWS_KEYSPACES;
+    }
+
+    /**
+     * @return true if table status can be read from system_schema_mcs.tables. Only a definite answer is remembered, if
+     * the probe was throttled or timed out it is probed again next time and AWS Keyspaces endpoints are assumed to
+     * have it meanwhile
+     */
+    public synchronized boolean hasSystemSchemaMcs() {
+        if (hasSystemSchemaMcs == null) {
+            try {
+                database.getStatementCache().query("SELECT keyspace_name FROM system_schema_mcs.keyspaces LIMIT 1",
+                        rs -> rs.getString("keyspace_name"));
+                hasSystemSchemaMcs = true;
+            } catch (DatabaseException e) {
+                if (KeyspaceRetryPolicy.classify(e) != KeyspaceRetryPolicy.ErrorClass.OTHER) {
+                    Scope.getCurrentScope().getLog(getClass()).info("Could not probe for system_schema_mcs, will try again", e);
+                    return isAwsKeyspaces();
+                }
+                Scope.getCurrentScope().getLog(getClass()).fine("No system_schema_mcs available", e);
+                hasSystemSchemaMcs = false;
+            }
+        }
+        return hasSystemSchemaMcs;
+    }
+
+    public boolean hasDatabaseChangeLogTable() {
+        return getTrackingTables().contains(database.getDatabaseChangeLogTableName().toLowerCase());
+    }
+
+    public boolean hasDatabaseChangeLogLockTable() {
+        return getTrackingTables().contains(database.getDatabaseChangeLogLockTableName().toLowerCase());
+    }
+
+    /**
+     * @return the lower case partition key columns of the given table in the logged keyspace, in key order, or an
+     * empty list if they can't be read
+     */
+    public List<String> getPartitionKeyColumns(String tableName) {
+        return getPartitionKeyColumns(null, tableName);
+    }
+
+    /**
+     * @return the lower case partition key columns of the given table in the given keyspace, the logged one if null,
+     * in key order, or an empty list if they can't be read
+     */
+    public synchronized List<String> getPartitionKeyColumns(String keyspace, String tableName) {
+        String key = key(keyspace, tableName);
+        return readKeys(keyspace, tableName, key) ? partitionKeys.get(key) : Collections.emptyList();
+    }
+
+    /**
+     * @return the lower case partition key and clustering columns of the given table in the logged keyspace, in key
+     * order, or an empty list if they can't be read
+     */
+    public List<String> getPrimaryKeyColumns(String tableName) {
+        return getPrimaryKeyColumns(null, tableName);
+    }
+
+    /**
+     * @return the lower case partition key and clustering columns of the given table in the given keyspace, the
+     * logged one if null, in key order, or an empty list if they can't be read
+     */
+    public synchronized List<String> getPrimaryKeyColumns(String keyspace, String tableName) {
+        String key = key(keyspace, tableName);
+        return readKeys(keyspace, tableName, key) ? primaryKeys.get(key) : Collections.emptyList();
+    }
+
+    /**
+     * Reads the key columns of the given table if they aren't known yet.
+     *
+     * @return false if they can't be read
+     */
+    private boolean readKeys(String keyspace, String tableName, String key) {
+        if (partitionKeys.containsKey(key)) {
+            return true;
+        }
+        Map<Integer, String> partitionKey = new TreeMap<>();
+        Map<Integer, String> clustering = new TreeMap<>();
+        try {
+            for (Object[] row : database.getStatementCache().query(
+                    "SELECT column_name, kind, position FROM system_schema.columns WHERE keyspace_name = ? AND table_name = ?",
+                    rs -> new Object[]{rs.getString("column_name"), rs.getString("kind"), rs.getInt("position")},
+                    keyspace == null ? loggedKeyspace : keyspace.toLowerCase(), tableName.toLowerCase())) {
+                if ("partition_key".equals(row[1])) {
+                    partitionKey.put((Integer) row[2], ((String) row[0]).toLowerCase());
+                } else if ("clustering".equals(row[1])) {
+                    clustering.put((Integer) row[2], ((String) row[0]).toLowerCase());
+                }
+            }
+        } catch (DatabaseException e) {
+            Scope.getCurrentScope().getLog(getClass()).fine("Could not read partition key of " + key, e);
+            return false;
+        }
+        List<String> primaryKey = new ArrayList<>(partitionKey.values());
+        primaryKey.addAll(clustering.values());
+        partitionKeys.put(key, new ArrayList<>(partitionKey.values()));
+        primaryKeys.put(key, primaryKey);
+        return true;
+    }
+
+    /**
+     * Forgets the partition key of the given table, e.g. after it has been dropped or created. Tables outside the
+     * logged keyspace are named keyspace.table.
+     */
+    public synchronized void invalidatePartitionKey(String tableName) {
+        int separator = tableName.indexOf('.');
+        String key = separator < 0 ? key(null, tableName)
+                : key(tableName.substring(0, separator), tableName.substring(separator + 1));
+        partitionKeys.remove(key);
+        primaryKeys.remove(key);
+    }
+
+    /**
+     * @return the lower case table name, qualified by its keyspace unless that is the logged one
+     */
+    private String key(String keyspace, String tableName) {
+        if (keyspace == null || keyspace.equalsIgnoreCase(loggedKeyspace)) {
+            return tableName.toLowerCase();
+        }
+        return keyspace.toLowerCase() + "." + tableName.toLowerCase();
+    }
+
+    /**
+     * Forgets which tracking tables exist, e.g. after creating or dropping one of them.
+     */
+    public synchronized void invalidateTrackingTables() {
+        trackingTables = null;
+    }
+
+    private synchronized Set<String> getTrackingTables() {
+        if (trackingTables == null) {
+            Set<String> tables = new HashSet<>();
+            try {
+                List<String> tableNames = database.getStatementCache().query(
+                        "SELECT table_name FROM system_schema.tables WHERE keyspace_name = ?",
+                        rs -> rs.getString("table_name"), loggedKeyspace);
+                for (String tableName : tableNames) {
+                    String name = tableName.toLowerCase();
+                    if (name.equals(database.getDatabaseChangeLogTableName().toLowerCase())
+                            || name.equals(database.getDatabaseChangeLogLockTableName().toLowerCase())) {
+                        tables.add(name);
+                    }
+                }
+            } catch (DatabaseException e) {
+                Scope.getCurrentScope().getLog(getClass()).info("Could not read tracking tables of keyspace " + loggedKeyspace, e);
+                return tables;
+            }
+            trackingTables = tables;
+        }
+        return trackingTables;
+    }
+
+    private static String readLoggedKeyspace(DatabaseConnection connection) {
+        try {
+            if (connection instanceof JdbcConnection) {
+                return ((CDBJDBCConnection) ((S42Connection) ((JdbcConnection) connection)
+                        .getUnderlyingConnection()).getConnection()).getSession().getLoggedKeyspace();
+            }
+        } catch (Exception e) {
+            Scope.getCurrentScope().getLog(KeyspaceConnectionProfile.class)
+                    .severe("Could not get keyspace from connection", e);
+        }
+        return null;
+    }
+}
@@ -1,22 +1,44 @@
 package liquibase.ext.keyspace.database;
 
-import com.simba.cassandra.cassandra.core.CDBJDBCConnection;
-import com.simba.cassandra.jdbc.jdbc42.S42Connection;
 import liquibase.Scope;
 import liquibase.change.Change;
-import liquibase.change.core.CreateTableChange;
-import liquibase.change.core.DropTableChange;
 import liquibase.changelog.DatabaseChangeLog;
 import liquibase.database.AbstractJdbcDatabase;
 import liquibase.database.DatabaseConnection;
 import liquibase.database.jvm.JdbcConnection;
+import liquibase.diff.compare.DatabaseObjectComparatorFactory;
 import liquibase.exception.DatabaseException;
 import liquibase.exception.LiquibaseException;
+import liquibase.exception.LockException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.ext.keyspace.change.AwaitTablesChange;
+import liquibase.ext.keyspace.change.TableCapacity;
+import liquibase.ext.keyspace.change.UpdateTableCapacityChange;
+import liquibase.ext.keyspace.changelog.ChangeLogLayout;
+import liquibase.ext.keyspace.changelog.ChangeLogLayoutMigrator;
+import liquibase.ext.keyspace.changelog.KeyspaceChangeLogHistoryService;
+import liquibase.ext.keyspace.data.KeyspaceTableCopier;
+import liquibase.ext.keyspace.executor.KeyspaceRetryPolicy;
+import liquibase.ext.keyspace.lockservice.KeyspaceLockLease;
+import liquibase.ext.keyspace.snapshot.KeyspaceSnapshotCache;
 import liquibase.sql.visitor.SqlVisitor;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.InsertOrUpdateStatement;
+import liquibase.statement.core.InsertSetStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.RawSqlStatement;
+import liquibase.structure.DatabaseObject;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * AWS Keyspace NoSQL database support.
@@ -24,7 +46,15 @@ import java.util.concurrent.TimeUnit;
 public class KeyspaceDatabase extends AbstractJdbcDatabase {
     public static final String PRODUCT_NAME = "Keyspace";
 
-    private String keyspace;
+    private KeyspaceConnectionProfile connectionProfile;
+
+    private final TableReadinessBarrier tableReadinessBarrier = new TableReadinessBarrier(this);
+
+    private KeyspaceStatementCache statementCache;
+
+    private final KeyspaceRetryPolicy retryPolicy = new KeyspaceRetryPolicy();
+
+    private volatile KeyspaceLockLease lockLease;
 
     @Override
     public String getShortName() {
@@ -72,7 +102,7 @@ public class KeyspaceDatabase extends AbstractJdbcDatabase {
     }
 
     private boolean urlMapsToKeyspace(String url){
-        return String.valueOf(url).matches("^jdbc:cassandra://cassandra(-fips)?\\.(.)+\\.amazonaws\\.com:(.)+");
+        return KeyspaceConnectionProfile.isKeyspacesUrl(url);
     }
 
     @Override
@@ -112,93 +142,178 @@ public class KeyspaceDatabase extends AbstractJdbcDatabase {
     }
 
     public String getKeyspace() {
-        if (keyspace == null) {
-            try {
-                if (this.getConnection() instanceof JdbcConnection) {
-                    keyspace = ((CDBJDBCConnection) ((S42Connection) ((JdbcConnection) (this).getConnection())
-                            .getUnderlyingConnection()).getConnection()).getSession().getLoggedKeyspace();
-                }
-            } catch (Exception e) {
-                Scope.getCurrentScope().getLog(KeyspaceDatabase.class)
-                        .severe("Could not get keyspace from connection", e);
+        return getConnectionProfile().getLoggedKeyspace();
+    }
 
-            }
+    /**
+     * Returns what is known about the current connection, computed once per connection.
+     */
+    public synchronized KeyspaceConnectionProfile getConnectionProfile() {
+        if (connectionProfile == null) {
+            connectionProfile = new KeyspaceConnectionProfile(this, getConnection());
         }
-        return keyspace;
+        return connectionProfile;
+    }
 
+    public TableReadinessBarrier getTableReadinessBarrier() {
+        return tableReadinessBarrier;
     }
 
     @Override
     public void executeStatements(Change change, DatabaseChangeLog changeLog, List<SqlVisitor> sqlVisitors) throws LiquibaseException {
+        // table creation, alteration and deletion in AWS Keyspace is not immediate like other Cassandra Platforms,
+        // As AWS Keyspace has SLA is at max 30 minutes for these changes.
+        // https://docs.aws.amazon.com/keyspaces/latest/devguide/working-with-tables.html#tables-create
+        if (!updatesDatabase()) {
+            execute(batchInserts(change.generateStatements(this)), sqlVisitors);
+            return;
+        }
+        checkLockLease();
+
+        // We only wait on tables which are still settling when this change actually touches them,
+        // changes we can't tell the tables of wait on everything.
+        // Independent DDL is sent right away, so up to maxConcurrentDdl tables settle server side at the same time.
+        if (change instanceof AwaitTablesChange) {
+            tableReadinessBarrier.await(((AwaitTablesChange) change).getTableNameSet());
+        } else {
+            tableReadinessBarrier.await(ChangeTableNames.of(change, getDefaultCatalogName()));
+        }
 
+        Map<String, TableReadinessBarrier.PendingState> ddl = ChangeTableNames.ddlOf(change, getDefaultCatalogName());
+        if (!ddl.isEmpty()) {
+            tableReadinessBarrier.awaitCapacity();
+        }
 
-        super.executeStatements(change, changeLog, sqlVisitors);
+        try {
+            execute(batchInserts(change.generateStatements(this)), sqlVisitors);
+        } catch (LiquibaseException | RuntimeException e) {
+            // the changesets marked ran so far must be recorded before the failure is reported
+            flushHistoryQuietly();
+            throw e;
+        }
 
-        // table creation and deletion in AWS Keyspace is not immediate like other Cassandra Platforms,
-        // As AWS Keyspace has SLA is at max 30 minutes for these changes.
-        // https://docs.aws.amazon.com/keyspaces/latest/devguide/working-with-tables.html#tables-create
+        registerDdl(change, ddl);
+    }
+
+    /**
+     * Records the tables the DDL of a change has just sent into CREATING, UPDATING or DELETING state and drops what
+     * is cached about them.
+     */
+    private void registerDdl(Change change, Map<String, TableReadinessBarrier.PendingState> ddl) throws DatabaseException {
+        for (Map.Entry<String, TableReadinessBarrier.PendingState> entry : ddl.entrySet()) {
+            tableReadinessBarrier.register(entry.getKey(), entry.getValue());
+            if (entry.getValue() != TableReadinessBarrier.PendingState.UPDATING) {
+                getConnectionProfile().invalidatePartitionKey(entry.getKey());
+            }
+        }
+        if (!ddl.isEmpty()) {
+            invalidateSnapshotCache();
+        }
+        if (change instanceof UpdateTableCapacityChange) {
+            // what comes next is what the capacity was changed for, it must not run on the old capacity
+            tableReadinessBarrier.await(ddl.keySet());
+        }
+    }
 
-        // In the following statements, We check the Read only DATABASECHANGELOG
-        // to see what status the tables are in before we move on.
-        if (change instanceof CreateTableChange || change instanceof DropTableChange) {
+    /**
+     * Drops the cached columns of this cluster after DDL, which may have changed them without changing the fingerprint.
+     */
+    private void invalidateSnapshotCache() {
+        KeyspaceSnapshotCache snapshotCache = KeyspaceSnapshotCache.configured();
+        if (snapshotCache != null) {
+            snapshotCache.invalidate(getConnection().getURL());
+        }
+    }
 
-            String Table_Name;
-            boolean creating;
-            if (change instanceof CreateTableChange) {
-                Table_Name = ((CreateTableChange) change).getTableName();
-                creating = true;
+    private void flushHistoryQuietly() {
+        try {
+            KeyspaceChangeLogHistoryService.flushHistory(this);
+        } catch (DatabaseException e) {
+            Scope.getCurrentScope().getLog(getClass()).severe("Could not write buffered history rows", e);
+        }
+    }
+
+    /**
+     * Merges runs of plain inserts into the same table, e.g. the rows of loadData, into an {@link InsertSetStatement}
+     * so they are sent as CQL batches instead of one round trip per row.
+     */
+    public SqlStatement[] batchInserts(SqlStatement[] statements) {
+        if (statements == null || statements.length < 2) {
+            return statements;
+        }
+        List<SqlStatement> result = new ArrayList<>();
+        InsertSetStatement insertSet = null;
+        for (SqlStatement statement : statements) {
+            if (statement instanceof InsertStatement && !(statement instanceof InsertOrUpdateStatement)) {
+                InsertStatement insert = (InsertStatement) statement;
+                if (insertSet == null || !Objects.equals(insertSet.getTableName(), insert.getTableName())
+                        || !Objects.equals(insertSet.getCatalogName(), insert.getCatalogName())) {
+                    insertSet = new InsertSetStatement(insert.getCatalogName(), insert.getSchemaName(), insert.getTableName());
+                    result.add(insertSet);
+                }
+                insertSet.addInsertStatement(insert);
             } else {
-                Table_Name = ((DropTableChange) change).getTableName();
-                creating = false;
+                insertSet = null;
+                result.add(statement);
+            }
+        }
+        for (int i = 0; i < result.size(); i++) {
+            // a single row is sent as it is
+            if (result.get(i) instanceof InsertSetStatement && ((InsertSetStatement) result.get(i)).getStatements().size() == 1) {
+                result.set(i, ((InsertSetStatement) result.get(i)).peek());
             }
+        }
+        return result.toArray(new SqlStatement[0]);
+    }
 
-            int DBCL_GET_TABLE_ATTEMPTS = 30;
-            while (DBCL_GET_TABLE_ATTEMPTS >= 0) {
-                try {
-                    Statement statement = getStatement();
-
-                    ResultSet rs = statement.executeQuery("SELECT keyspace_name, table_name, status FROM " +
-                            "system_schema_mcs.tables WHERE keyspace_name = '" + getDefaultCatalogName() +
-                            "' AND table_name = '" + Table_Name + "'");
-
-                    while (rs.next()) {
-                        String status = rs.getString("status");
-                        if (creating) {
-                            if (status.equals("ACTIVE")) {
-                                //table is active, we're done here
-                                return;
-                            } else if (status.equals("CREATING")) {
-                                Scope.getCurrentScope().getLog(this.getClass()).info("table status = CREATING");
-                                DBCL_GET_TABLE_ATTEMPTS--;
-                                TimeUnit.SECONDS.sleep(5);
-                            } else {
-                                Scope.getCurrentScope().getLog(this.getClass()).severe(String.format("%s table in %s state.", Table_Name, status));
-                                // something went very wrong, are we having issues with another Cassandra platform...?
-                                return;
-                            }
-                        } else {
-                            if (status == null) {
-                                //table is deleted, we're done here
-                                return;
-                            } else if (status.equals("DELETING")) {
-                                Scope.getCurrentScope().getLog(this.getClass()).info("table status = DELETING");
-                                DBCL_GET_TABLE_ATTEMPTS--;
-                                TimeUnit.SECONDS.sleep(5);
-                            } else {
-                                Scope.getCurrentScope().getLog(this.getClass()).severe(String.format("%s table in %s state.", Table_Name, status));
-                                // something went very wrong, are we having issues with another Cassandra platform...?
-                                return;
-                            }
-                        }
-
-                    }
-                } catch (InterruptedException | SQLException e) {
-                    throw new DatabaseException(e);
-                }
+    @Override
+    public void executeRollbackStatements(Change change, List<SqlVisitor> sqlVisitors) throws LiquibaseException {
+        if (!updatesDatabase()) {
+            super.executeRollbackStatements(change, sqlVisitors);
+            return;
+        }
+        checkLockLease();
+        // the inverse of a change touches the same tables
+        tableReadinessBarrier.await(ChangeTableNames.of(change, getDefaultCatalogName()));
+
+        Map<String, TableReadinessBarrier.PendingState> ddl = ChangeTableNames.rollbackDdlOf(change, getDefaultCatalogName());
+        if (!ddl.isEmpty()) {
+            tableReadinessBarrier.awaitCapacity();
+        }
+
+        try {
+            super.executeRollbackStatements(change, sqlVisitors);
+        } catch (LiquibaseException | RuntimeException e) {
+            flushHistoryQuietly();
+            throw e;
+        }
 
-            } // while loop for attempting to check change
-        } // If create or drop change
+        registerDdl(change, ddl);
+    }
 
+    /**
+     * Sets the lease of the change log lock held while changes run, or null once the lock is released.
+     */
+    public void setLockLease(KeyspaceLockLease lockLease) {
+        this.lockLease = lockLease;
+    }
+
+    /**
+     * Stops the update once the lease of the change log lock is lost, another node may hold the lock by then.
+     */
+    private void checkLockLease() throws LockException {
+        KeyspaceLockLease lease = lockLease;
+        if (lease != null && lease.isLost()) {
+            throw new LockException("The change log lock lease was lost, another node may be running changesets. " +
+                    "Stopping before the next change");
+        }
+    }
+
+    /**
+     * @return false when statements are only written out, e.g. by update-sql
+     */
+    public boolean updatesDatabase() {
+        return Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", this).updatesDatabase();
     }
 
     @Override
@@ -215,27 +330,103 @@ public class KeyspaceDatabase extends AbstractJdbcDatabase {
         return getKeyspace();
     }
 
-    public Statement getStatement() throws DatabaseException {
-        return ((JdbcConnection) super.getConnection()).createStatement();
+    /**
+     * Besides DATABASECHANGELOG and the lock table, which Cassandra reports by their lower case names, the side tables
+     * of the extension are left out of snapshots, diffs, generated change logs and drop-all: the details of the time
+     * ordered layout, the staging table of its migration, the capacity history and the copy checkpoints.
+     */
+    @Override
+    public boolean isLiquibaseObject(DatabaseObject object) {
+        if (object instanceof Table) {
+            Schema liquibaseSchema = new Schema(getLiquibaseCatalogName(), getLiquibaseSchemaName());
+            for (String tableName : Arrays.asList(getDatabaseChangeLogTableName().toLowerCase(),
+                    getDatabaseChangeLogLockTableName().toLowerCase(), ChangeLogLayout.getDetailsTableName(this),
+                    new ChangeLogLayoutMigrator(this).getStagingTableName(), TableCapacity.getHistoryTableName(this),
+                    KeyspaceTableCopier.getProgressTableName(this), KeyspaceChangeLogHistoryService.getCounterTableName(this))) {
+                if (DatabaseObjectComparatorFactory.getInstance().isSameObject(object,
+                        new Table().setName(tableName).setSchema(liquibaseSchema), null, this)) {
+                    return true;
+                }
+            }
+        }
+        return super.isLiquibaseObject(object);
     }
 
-    public boolean hasDatabaseChangeLogLockTable() {
-        boolean hasChangeLogLockTable;
+    @Override
+    public void setConnection(DatabaseConnection conn) {
+        closeStatementCache();
+        super.setConnection(conn);
+        synchronized (this) {
+            connectionProfile = new KeyspaceConnectionProfile(this, conn);
+        }
+    }
+
+    @Override
+    public void close() throws DatabaseException {
+        closeStatementCache();
+        super.close();
+    }
+
+    /**
+     * Returns the prepared statement cache of the current connection.
+     */
+    public synchronized KeyspaceStatementCache getStatementCache() {
+        if (statementCache == null) {
+            statementCache = new KeyspaceStatementCache(((JdbcConnection) super.getConnection()).getUnderlyingConnection(),
+                    KeyspaceStatementCache.DEFAULT_CAPACITY, retryPolicy);
+        }
+        return statementCache;
+    }
+
+    /**
+     * Returns the policy retrying throttled and timed out statements on this database.
+     */
+    public KeyspaceRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    private synchronized void closeStatementCache() {
+        if (statementCache != null) {
+            statementCache.close();
+            statementCache = null;
+            retryPolicy.logCounters();
+        }
+    }
+
+    /**
+     * Returns a new plain statement. Callers are expected to close it, statements left open are closed and counted as
+     * leaked when the connection is closed.
+     */
+    public Statement getStatement() throws DatabaseException {
         try {
-            Statement statement = getStatement();
-            statement.executeQuery("SELECT ID from " + getDefaultCatalogName() + ".DATABASECHANGELOGLOCK");
-            statement.close();
-            hasChangeLogLockTable = true;
+            return getStatementCache().createStatement();
         } catch (SQLException e) {
-            Scope.getCurrentScope().getLog(getClass()).info("No DATABASECHANGELOGLOCK available in cassandra.");
-            hasChangeLogLockTable = false;
-        } catch (DatabaseException e) {
-            e.printStackTrace();
-            hasChangeLogLockTable = false;
+            throw new DatabaseException(e);
         }
+    }
 
+    /**
+     * Creates a side table of the logged keyspace unless it exists, waiting for it to become ACTIVE.
+     *
+     * @param definition the columns and primary key of the table
+     */
+    public void createTableIfNeeded(String tableName, String definition) throws DatabaseException {
+        if (!getStatementCache().query("SELECT table_name FROM system_schema.tables WHERE keyspace_name = ? AND table_name = ?",
+                rs -> rs.getString("table_name"), getDefaultCatalogName(), tableName).isEmpty()) {
+            return;
+        }
+        Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", this);
+        executor.execute(new RawSqlStatement("CREATE TABLE IF NOT EXISTS " + getDefaultCatalogName() + "." + tableName
+                + " (" + definition + ")"));
+        if (executor.updatesDatabase()) {
+            tableReadinessBarrier.register(tableName, TableReadinessBarrier.PendingState.CREATING);
+            tableReadinessBarrier.await(Collections.singleton(tableName));
+        }
+    }
+
+    public boolean hasDatabaseChangeLogLockTable() {
         // needs to be generated up front
-        return hasChangeLogLockTable;
+        return getConnectionProfile().hasDatabaseChangeLogLockTable();
     }
 
     @Override
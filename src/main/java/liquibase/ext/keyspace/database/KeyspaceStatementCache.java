@@ -0,0 +1,255 @@
+package liquibase.ext.keyspace.database;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.executor.KeyspaceRetryPolicy;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Per connection cache of prepared statements for the fixed CQL the extension sends, plus book keeping of the plain
+ * statements handed out by {@link KeyspaceDatabase#getStatement()}.
+ * <p>
+ * Prepared statements are kept in a LRU map and closed when evicted or when the cache is closed. Plain statements
+ * which are still open when the cache is closed are counted as leaked and closed. Queries and updates go through the
+ * {@link KeyspaceRetryPolicy} of the cache. Each try holds the monitor of the cache while it uses the connection, the
+ * backoff between tries doesn't, so other threads like the lock lease renewal aren't held up by it.
+ * <p>
+ * The connection is shared by every thread of the extension, and its driver is not meant to be used concurrently.
+ * Threads which use it directly do so through {@link #withConnection(ConnectionCall)}, under the same monitor.
+ */
+public class KeyspaceStatementCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Reads a single row of a result set.
+     */
+    public interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * JDBC calls which use the connection, see {@link #withConnection(ConnectionCall)}.
+     */
+    public interface ConnectionCall<T> {
+        T call(Connection connection) throws SQLException;
+    }
+
+    private final Connection connection;
+    private final KeyspaceRetryPolicy retryPolicy;
+    private final Map<String, PreparedStatement> preparedStatements;
+    private final Set<Statement> openStatements = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long leaked;
+
+    public KeyspaceStatementCache(Connection connection) {
+        this(connection, DEFAULT_CAPACITY);
+    }
+
+    public KeyspaceStatementCache(Connection connection, final int capacity) {
+        this(connection, capacity, new KeyspaceRetryPolicy());
+    }
+
+    public KeyspaceStatementCache(Connection connection, final int capacity, KeyspaceRetryPolicy retryPolicy) {
+        this.connection = connection;
+        this.retryPolicy = retryPolicy;
+        this.preparedStatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached prepared statement for the given CQL, preparing it on first use.
+     */
+    public synchronized PreparedStatement prepare(String cql) throws SQLException {
+        PreparedStatement statement = preparedStatements.get(cql);
+        if (statement != null && !statement.isClosed()) {
+            hits++;
+            return statement;
+        }
+        misses++;
+        statement = connection.prepareStatement(cql);
+        preparedStatements.put(cql, statement);
+        return statement;
+    }
+
+    /**
+     * Runs the given JDBC calls while no other thread uses the connection. The calls should only do a small piece of
+     * work, e.g. read a page or write a batch, and never wait for another thread, which may need the connection too.
+     */
+    public synchronized <T> T withConnection(ConnectionCall<T> call) throws SQLException {
+        return call.call(connection);
+    }
+
+    /**
+     * Runs the given CQL as a cached prepared statement and reads every returned row.
+     */
+    public <T> List<T> query(String cql, RowReader<T> reader, Object... parameters) throws DatabaseException {
+        return retryPolicy.execute(cql, () -> {
+            synchronized (this) {
+                PreparedStatement statement = prepare(cql);
+                bind(statement, parameters);
+                List<T> rows = new ArrayList<>();
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(reader.read(rs));
+                    }
+                }
+                return rows;
+            }
+        });
+    }
+
+    /**
+     * Runs the given CQL as a cached prepared statement.
+     *
+     * @return the update count reported by the driver
+     */
+    public int update(String cql, Object... parameters) throws DatabaseException {
+        return retryPolicy.execute(cql, () -> {
+            synchronized (this) {
+                PreparedStatement statement = prepare(cql);
+                bind(statement, parameters);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Runs the given conditional CQL (a lightweight transaction, e.g. UPDATE ... IF) as a cached prepared statement.
+     *
+     * @return the returned row by lower case column name: "[applied]" and, if the condition failed, the current values
+     * of the compared columns. Empty if the driver returned no row.
+     */
+    public Map<String, Object> conditionalUpdate(String cql, Object... parameters) throws DatabaseException {
+        return retryPolicy.execute(cql, () -> {
+            synchronized (this) {
+                PreparedStatement statement = prepare(cql);
+                bind(statement, parameters);
+                Map<String, Object> row = new HashMap<>();
+                if (statement.execute()) {
+                    try (ResultSet rs = statement.getResultSet()) {
+                        if (rs.next()) {
+                            ResultSetMetaData metaData = rs.getMetaData();
+                            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                                row.put(metaData.getColumnLabel(i).toLowerCase(), rs.getObject(i));
+                            }
+                        }
+                    }
+                }
+                return row;
+            }
+        });
+    }
+
+    /**
+     * @return true if the result of {@link #conditionalUpdate(String, Object...)} reports the write as applied. A
+     * result without "[applied]", e.g. an empty one, is not, so callers never assume a lock they can't prove is theirs.
+     */
+    public static boolean isApplied(Map<String, Object> result) {
+        Object applied = result.get("[applied]");
+        return applied != null && (Boolean.TRUE.equals(applied) || "true".equalsIgnoreCase(applied.toString()));
+    }
+
+    /**
+     * Creates a plain statement, which is closed together with the cache if the caller does not close it.
+     */
+    public synchronized Statement createStatement() throws SQLException {
+        openStatements.removeIf(KeyspaceStatementCache::isClosed);
+        Statement statement = connection.createStatement();
+        openStatements.add(statement);
+        return statement;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getLeakedStatements() {
+        return leaked;
+    }
+
+    /**
+     * Closes all cached prepared statements and every plain statement the callers forgot to close.
+     */
+    public synchronized void close() {
+        for (PreparedStatement statement : preparedStatements.values()) {
+            closeQuietly(statement);
+        }
+        preparedStatements.clear();
+
+        for (Statement statement : openStatements) {
+            if (!isClosed(statement)) {
+                leaked++;
+                closeQuietly(statement);
+            }
+        }
+        openStatements.clear();
+
+        Scope.getCurrentScope().getLog(getClass()).info(String.format(
+                "Statement cache closed: %d hits, %d misses, %d evictions, %d leaked statements",
+                hits, misses, evictions, leaked));
+    }
+
+    /**
+     * Binds the parameters to the statement, by their Java type.
+     */
+    public static void bind(PreparedStatement statement, Object... parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            Object parameter = parameters[i];
+            int index = i + 1;
+            if (parameter == null) {
+                statement.setNull(index, Types.VARCHAR);
+            } else if (parameter instanceof String) {
+                statement.setString(index, (String) parameter);
+            } else if (parameter instanceof Boolean) {
+                statement.setBoolean(index, (Boolean) parameter);
+            } else if (parameter instanceof Integer) {
+                statement.setInt(index, (Integer) parameter);
+            } else if (parameter instanceof Long) {
+                statement.setLong(index, (Long) parameter);
+            } else if (parameter instanceof java.util.Date) {
+                statement.setTimestamp(index, new Timestamp(((java.util.Date) parameter).getTime()));
+            } else {
+                statement.setObject(index, parameter);
+            }
+        }
+    }
+
+    private static boolean isClosed(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            Scope.getCurrentScope().getLog(KeyspaceStatementCache.class).fine("Could not close statement", e);
+        }
+    }
+}
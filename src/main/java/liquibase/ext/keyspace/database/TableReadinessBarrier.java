@@ -0,0 +1,222 @@
+package liquibase.ext.keyspace.database;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps track of tables whose DDL has been sent to AWS Keyspace but which are not settled yet.
+ * <p>
+ * Table creation, alteration and deletion in AWS Keyspace is asynchronous, the table stays in CREATING, UPDATING or
+ * DELETING state for a while after the statement returned.
+ * https://docs.aws.amazon.com/keyspaces/latest/devguide/working-with-tables.html#tables-create
+ * <p>
+ * Instead of waiting on every table right after its DDL, tables are registered here and only waited on when a later
+ * change touches them. All pending tables are then checked with a single keyspace wide query against
+ * system_schema_mcs.tables, so waiting on many tables costs about as much as waiting on the slowest one.
+ * <p>
+ * Tables are named by their lower case name in the logged keyspace, and as keyspace.table in any other keyspace,
+ * which is then polled as well.
+ */
+public class TableReadinessBarrier {
+
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 10000;
+
+    public enum PendingState {
+        CREATING,
+        UPDATING,
+        DELETING
+    }
+
+    private final KeyspaceDatabase database;
+    private final Map<String, PendingState> pendingTables = new LinkedHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    public TableReadinessBarrier(KeyspaceDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Records a table whose DDL has just been executed.
+     */
+    public synchronized void register(String tableName, PendingState state) {
+        if (tableName != null) {
+            pendingTables.put(key(tableName), state);
+        }
+    }
+
+    public synchronized boolean isPending(String tableName) {
+        return tableName != null && pendingTables.containsKey(key(tableName));
+    }
+
+    public synchronized boolean hasPendingTables() {
+        return !pendingTables.isEmpty();
+    }
+
+    /**
+     * Blocks until all pending tables settled.
+     */
+    public void awaitAll() throws DatabaseException {
+        await(null);
+    }
+
+    /**
+     * Blocks until none of the given tables is pending anymore. Passing null waits for all pending tables.
+     *
+     * @throws DatabaseException if they did not settle within the configured timeout, they stay pending then
+     */
+    public void await(Collection<String> tableNames) throws DatabaseException {
+        awaitUntil(() -> !mustWait(tableNames));
+    }
+
+    /**
+     * Blocks until fewer than the configured maximum of concurrent DDL operations are pending, so another table can
+     * be sent to CREATING, UPDATING or DELETING state.
+     *
+     * @throws DatabaseException if not enough tables settled within the configured timeout
+     */
+    public void awaitCapacity() throws DatabaseException {
+        int maxConcurrentDdl = KeyspaceConfiguration.MAX_CONCURRENT_DDL.getCurrentValue();
+        awaitUntil(() -> pendingCount() < maxConcurrentDdl);
+    }
+
+    /**
+     * Polls until the condition holds. The monitor is only held to check the condition and to apply the statuses of
+     * a poll, so other threads can register tables while this one queries or sleeps.
+     */
+    private void awaitUntil(BooleanSupplier condition) throws DatabaseException {
+        if (condition.getAsBoolean()) {
+            return;
+        }
+
+        long timeout = KeyspaceConfiguration.TABLE_READINESS_TIMEOUT.getCurrentValue();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout);
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        try {
+            while (true) {
+                poll();
+                if (condition.getAsBoolean()) {
+                    return;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new DatabaseException(String.format("Tables %s did not settle within %d seconds",
+                            getPendingTables(), timeout));
+                }
+                // full jitter: sleep somewhere between half and the whole backoff window
+                long sleep = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+                Scope.getCurrentScope().getLog(getClass()).info(String.format(
+                        "Waiting on tables %s. Checking again in %d ms.", getPendingTables(), sleep));
+                TimeUnit.MILLISECONDS.sleep(sleep);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        }
+    }
+
+    public synchronized void clear() {
+        pendingTables.clear();
+    }
+
+    /**
+     * @return the pending tables and what they are pending for, in the order they were registered
+     */
+    public synchronized Map<String, PendingState> getPendingTables() {
+        return new LinkedHashMap<>(pendingTables);
+    }
+
+    private synchronized int pendingCount() {
+        return pendingTables.size();
+    }
+
+    private synchronized boolean mustWait(Collection<String> tableNames) {
+        if (pendingTables.isEmpty()) {
+            return false;
+        }
+        if (tableNames == null) {
+            return true;
+        }
+        for (String tableName : tableNames) {
+            if (isPending(tableName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the status of every table in the keyspaces of the pending tables, a keyspace at once, and drops all
+     * pending tables which have settled.
+     */
+    private void poll() throws DatabaseException {
+        if (!database.getConnectionProfile().hasSystemSchemaMcs()) {
+            // DDL on self managed Cassandra does not go through these states
+            clear();
+            return;
+        }
+        Map<String, PendingState> polled = getPendingTables();
+        Set<String> keyspaces = new LinkedHashSet<>();
+        for (String tableName : polled.keySet()) {
+            int separator = tableName.indexOf('.');
+            keyspaces.add(separator < 0 ? database.getDefaultCatalogName() : tableName.substring(0, separator));
+        }
+        Map<String, String> statuses = new HashMap<>();
+        for (String keyspace : keyspaces) {
+            for (String[] row : database.getStatementCache().query(
+                    "SELECT table_name, status FROM system_schema_mcs.tables WHERE keyspace_name = ?",
+                    rs -> new String[]{rs.getString("table_name"), rs.getString("status")}, keyspace)) {
+                statuses.put(key(keyspace + "." + row[0]), row[1]);
+            }
+        }
+        settle(polled, statuses);
+    }
+
+    /**
+     * @return the lower case table name, qualified by its keyspace unless that is the logged one
+     */
+    private String key(String tableName) {
+        String key = tableName.toLowerCase();
+        int separator = key.indexOf('.');
+        if (separator >= 0 && key.substring(0, separator).equalsIgnoreCase(database.getDefaultCatalogName())) {
+            return key.substring(separator + 1);
+        }
+        return key;
+    }
+
+    /**
+     * Drops the tables which settled according to the statuses read. Tables registered again while the statuses were
+     * read, e.g. dropped right after they were found active, are left for the next poll.
+     */
+    private synchronized void settle(Map<String, PendingState> polled, Map<String, String> statuses) {
+        Iterator<Map.Entry<String, PendingState>> iterator = pendingTables.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, PendingState> entry = iterator.next();
+            if (polled.get(entry.getKey()) != entry.getValue()) {
+                continue;
+            }
+            String status = statuses.get(entry.getKey());
+            if (entry.getValue() == PendingState.DELETING) {
+                if (status == null) {
+                    //table is deleted, we're done here
+                    iterator.remove();
+                } else if (!status.equals("DELETING")) {
+                    Scope.getCurrentScope().getLog(getClass()).severe(String.format("%s table in %s state.", entry.getKey(), status));
+                    iterator.remove();
+                }
+            } else if ("ACTIVE".equals(status)) {
+                iterator.remove();
+            } else if (status != null && !status.equals("CREATING") && !status.equals("UPDATING")) {
+                // something went very wrong, are we having issues with another Cassandra platform...?
+                Scope.getCurrentScope().getLog(getClass()).severe(String.format("%s table in %s state.", entry.getKey(), status));
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package liquibase.ext.keyspace.datatype;
+
+import liquibase.Scope;
+import liquibase.structure.core.DataType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A CQL type as found in system_schema.columns.type, e.g. {@code frozen<map<text, list<int>>>}, parsed into its name
+ * and type parameters.
+ * <p>
+ * Types are immutable and interned: every spelling of the same type parses to one shared instance, so types compare
+ * with == and a snapshot of many columns holds each distinct type once. Text which doesn't parse is kept as an opaque
+ * type without parameters.
+ */
+public final class CqlType {
+
+    private static final Map<String, CqlType> PARSED = new ConcurrentHashMap<>();
+    private static final Map<String, CqlType> CANONICAL = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final List<CqlType> parameters;
+    private final String text;
+    private final DataType dataType;
+
+    private CqlType(String name, List<CqlType> parameters) {
+        this.name = name;
+        this.parameters = parameters;
+        StringBuilder text = new StringBuilder(name);
+        if (!parameters.isEmpty()) {
+            text.append('<');
+            for (int i = 0; i < parameters.size(); i++) {
+                text.append(i == 0 ? "" : ", ").append(parameters.get(i));
+            }
+            text.append('>');
+        }
+        this.text = text.toString();
+        this.dataType = new DataType(this.text);
+    }
+
+    /**
+     * @return the interned type of the given text, or null for null
+     */
+    public static CqlType parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        return PARSED.computeIfAbsent(text, CqlType::doParse);
+    }
+
+    private static CqlType doParse(String text) {
+        try {
+            Parser parser = new Parser(text);
+            CqlType type = parser.type();
+            parser.skipWhitespace();
+            if (parser.position != text.length()) {
+                throw new IllegalArgumentException("Unexpected '" + text.charAt(parser.position) + "' at " + parser.position);
+            }
+            return type;
+        } catch (IllegalArgumentException e) {
+            Scope.getCurrentScope().getLog(CqlType.class).fine("Could not parse CQL type " + text + ": " + e.getMessage());
+            return intern(text.trim(), Collections.emptyList());
+        }
+    }
+
+    private static CqlType intern(String name, List<CqlType> parameters) {
+        CqlType type = new CqlType(name, parameters);
+        CqlType existing = CANONICAL.putIfAbsent(type.text, type);
+        return existing == null ? type : existing;
+    }
+
+    /**
+     * @return the name of the type, lower case unless it is a quoted user defined type
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the element types of collections and tuples, the type of frozen, or the dimension of a vector
+     */
+    public List<CqlType> getParameters() {
+        return parameters;
+    }
+
+    public boolean isFrozen() {
+        return "frozen".equals(name);
+    }
+
+    public boolean isCollection() {
+        return "list".equals(name) || "set".equals(name) || "map".equals(name);
+    }
+
+    /**
+     * @return the snapshot data type of this type. It is shared by every column of the type and must not be changed
+     */
+    public DataType toDataType() {
+        return dataType;
+    }
+
+    /**
+     * @return the type in the spelling Cassandra uses itself
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static final class Parser {
+
+        private final String text;
+        private int position;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private CqlType type() {
+            String name = name();
+            List<CqlType> parameters = Collections.emptyList();
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == '<') {
+                position++;
+                parameters = new ArrayList<>();
+                char separator;
+                do {
+                    parameters.add(type());
+                    skipWhitespace();
+                    if (position == text.length()) {
+                        throw new IllegalArgumentException("Missing '>' at " + position);
+                    }
+                    separator = text.charAt(position++);
+                } while (separator == ',');
+                if (separator != '>') {
+                    throw new IllegalArgumentException("Unexpected '" + separator + "' at " + (position - 1));
+                }
+                parameters = Collections.unmodifiableList(parameters);
+            }
+            return intern(name, parameters);
+        }
+
+        private String name() {
+            skipWhitespace();
+            int start = position;
+            if (position < text.length() && (text.charAt(position) == '"' || text.charAt(position) == '\'')) {
+                // quoted user defined types keep their case, custom types are class names in single quotes
+                char quote = text.charAt(position);
+                position = text.indexOf(quote, position + 1);
+                if (position < 0) {
+                    throw new IllegalArgumentException("Unterminated " + quote + " at " + start);
+                }
+                position++;
+                return text.substring(start, position);
+            }
+            while (position < text.length()
+                    && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_' || text.charAt(position) == '.')) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Missing type name at " + start);
+            }
+            return text.substring(start, position).toLowerCase();
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
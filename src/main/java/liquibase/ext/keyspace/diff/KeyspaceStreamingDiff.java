@@ -0,0 +1,258 @@
+package liquibase.ext.keyspace.diff;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.change.TableCapacity;
+import liquibase.ext.keyspace.changelog.ChangeLogLayout;
+import liquibase.ext.keyspace.data.KeyspaceTableCopier;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.datatype.CqlType;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Diffs two keyspaces one table at a time, walking the table names of both sides in sorted order, and writes the CQL
+ * turning the target into the reference as a formatted SQL changelog while it goes. Unlike a snapshot based diff only
+ * the table names and the columns of the table being compared are held in memory.
+ * <p>
+ * Missing tables and missing regular or static columns are created, surplus ones dropped. Differences Cassandra can't
+ * alter in place, like column types and primary keys, are written to the changelog as comments to be resolved by hand.
+ */
+public class KeyspaceStreamingDiff {
+
+    /**
+     * One side of the diff, read table by table.
+     */
+    public interface SchemaSource {
+
+        String getKeyspaceName();
+
+        /**
+         * @return the names of all tables of the keyspace
+         */
+        List<String> getTableNames() throws DatabaseException;
+
+        /**
+         * @return COLUMN_NAME, TYPE, KIND, POSITION and CLUSTERING_ORDER of every column of the given table
+         */
+        List<Map<String, ?>> getColumns(String tableName) throws DatabaseException;
+    }
+
+    private final SchemaSource reference;
+    private final SchemaSource target;
+    private final String author;
+    private final String idRoot = String.valueOf(System.currentTimeMillis());
+    private int changeSetCount;
+    private int differenceCount;
+
+    public KeyspaceStreamingDiff(SchemaSource reference, SchemaSource target, String author) {
+        this.reference = reference;
+        this.target = target;
+        this.author = author;
+    }
+
+    /**
+     * @return the default keyspace of the database, without the tables Liquibase tracks changes in
+     */
+    public static SchemaSource source(KeyspaceDatabase database) {
+        String keyspaceName = database.getDefaultCatalogName();
+        Set<String> trackingTables = new HashSet<>(Arrays.asList(
+                database.getDatabaseChangeLogTableName().toLowerCase(),
+                database.getDatabaseChangeLogLockTableName().toLowerCase(),
+                ChangeLogLayout.getDetailsTableName(database),
+                TableCapacity.getHistoryTableName(database),
+                KeyspaceTableCopier.getProgressTableName(database)));
+        return new SchemaSource() {
+            @Override
+            public String getKeyspaceName() {
+                return keyspaceName;
+            }
+
+            @Override
+            public List<String> getTableNames() throws DatabaseException {
+                return database.getStatementCache().query("SELECT TABLE_NAME FROM system_schema.tables WHERE keyspace_name = ?",
+                        rs -> rs.getString("TABLE_NAME"), keyspaceName).stream()
+                        .filter(tableName -> !trackingTables.contains(tableName.toLowerCase()))
+                        .collect(Collectors.toList());
+            }
+
+            @Override
+            public List<Map<String, ?>> getColumns(String tableName) throws DatabaseException {
+                return database.getStatementCache().query(
+                        "SELECT COLUMN_NAME, TYPE, KIND, POSITION, CLUSTERING_ORDER FROM system_schema.columns WHERE keyspace_name = ? AND table_name = ?",
+                        rs -> {
+                            Map<String, Object> column = new HashMap<>();
+                            column.put("COLUMN_NAME", rs.getString("COLUMN_NAME"));
+                            column.put("TYPE", CqlType.parse(rs.getString("TYPE")).toString());
+                            column.put("KIND", rs.getString("KIND"));
+                            column.put("POSITION", rs.getInt("POSITION"));
+                            column.put("CLUSTERING_ORDER", rs.getString("CLUSTERING_ORDER"));
+                            return column;
+                        }, keyspaceName, tableName);
+            }
+        };
+    }
+
+    /**
+     * Writes the changelog, flushing the writer after every table.
+     *
+     * @return the number of changesets written
+     */
+    public int write(Writer writer) throws DatabaseException, IOException {
+        writer.write("-- liquibase formatted sql\n");
+        List<String> referenceTables = new ArrayList<>(reference.getTableNames());
+        List<String> targetTables = new ArrayList<>(target.getTableNames());
+        Collections.sort(referenceTables);
+        Collections.sort(targetTables);
+
+        int r = 0;
+        int t = 0;
+        while (r < referenceTables.size() || t < targetTables.size()) {
+            int order = r == referenceTables.size() ? 1
+                    : t == targetTables.size() ? -1 : referenceTables.get(r).compareTo(targetTables.get(t));
+            if (order < 0) {
+                String tableName = referenceTables.get(r++);
+                writeChangeSet(writer, "Missing table " + tableName, createTable(tableName, reference.getColumns(tableName)));
+            } else if (order > 0) {
+                String tableName = targetTables.get(t++);
+                writeChangeSet(writer, "Unexpected table " + tableName, "DROP TABLE " + qualify(tableName));
+            } else {
+                String tableName = referenceTables.get(r++);
+                t++;
+                compareTable(writer, tableName, reference.getColumns(tableName), target.getColumns(tableName));
+            }
+            writer.flush();
+        }
+        Scope.getCurrentScope().getLog(getClass()).info(String.format("Compared %d with %d tables, found %d differences",
+                referenceTables.size(), targetTables.size(), differenceCount));
+        return changeSetCount;
+    }
+
+    private void compareTable(Writer writer, String tableName, List<Map<String, ?>> referenceColumns,
+                              List<Map<String, ?>> targetColumns) throws IOException {
+        if (!primaryKey(referenceColumns).equals(primaryKey(targetColumns))) {
+            writeComment(writer, "Primary key of " + tableName + " differs, expected " + primaryKey(referenceColumns)
+                    + " but found " + primaryKey(targetColumns) + ". It can't be altered, the table has to be recreated");
+            return;
+        }
+        Map<String, Map<String, ?>> targetByName = byName(targetColumns);
+        for (Map<String, ?> column : referenceColumns) {
+            if (isKey(column)) {
+                continue;
+            }
+            Map<String, ?> targetColumn = targetByName.remove((String) column.get("COLUMN_NAME"));
+            if (targetColumn == null) {
+                writeChangeSet(writer, "Missing column " + tableName + "." + column.get("COLUMN_NAME"),
+                        "ALTER TABLE " + qualify(tableName) + " ADD " + columnDefinition(column));
+            } else if (type(column) != type(targetColumn) || !column.get("KIND").equals(targetColumn.get("KIND"))) {
+                writeComment(writer, "Column " + tableName + "." + column.get("COLUMN_NAME") + " differs, expected "
+                        + columnDefinition(column) + " but found " + columnDefinition(targetColumn)
+                        + ". It can't be altered, the column has to be recreated");
+            }
+        }
+        for (Map<String, ?> column : targetByName.values()) {
+            if (!isKey(column)) {
+                writeChangeSet(writer, "Unexpected column " + tableName + "." + column.get("COLUMN_NAME"),
+                        "ALTER TABLE " + qualify(tableName) + " DROP " + column.get("COLUMN_NAME"));
+            }
+        }
+    }
+
+    private String createTable(String tableName, List<Map<String, ?>> columns) {
+        StringJoiner definitions = new StringJoiner(", ");
+        for (Map<String, ?> column : sorted(columns, null)) {
+            definitions.add(columnDefinition(column));
+        }
+        List<Map<String, ?>> partitionKey = sorted(columns, "partition_key");
+        List<Map<String, ?>> clustering = sorted(columns, "clustering");
+        StringJoiner primaryKey = new StringJoiner(", ");
+        primaryKey.add("(" + names(partitionKey) + ")");
+        for (Map<String, ?> column : clustering) {
+            primaryKey.add((String) column.get("COLUMN_NAME"));
+        }
+        String cql = "CREATE TABLE " + qualify(tableName) + " (" + definitions + ", PRIMARY KEY (" + primaryKey + "))";
+        if (!clustering.isEmpty()) {
+            StringJoiner order = new StringJoiner(", ");
+            for (Map<String, ?> column : clustering) {
+                order.add(column.get("COLUMN_NAME") + " " + String.valueOf(column.get("CLUSTERING_ORDER")).toUpperCase());
+            }
+            cql += " WITH CLUSTERING ORDER BY (" + order + ")";
+        }
+        return cql;
+    }
+
+    private void writeChangeSet(Writer writer, String difference, String cql) throws IOException {
+        differenceCount++;
+        changeSetCount++;
+        Scope.getCurrentScope().getLog(getClass()).fine(difference);
+        writer.write("\n--changeset " + author + ":" + idRoot + "-" + changeSetCount + "\n");
+        writer.write("--comment: " + difference + "\n");
+        writer.write(cql + ";\n");
+    }
+
+    private void writeComment(Writer writer, String difference) throws IOException {
+        differenceCount++;
+        Scope.getCurrentScope().getLog(getClass()).warning(difference);
+        writer.write("\n-- " + difference + "\n");
+    }
+
+    private String qualify(String tableName) {
+        return target.getKeyspaceName() + "." + tableName;
+    }
+
+    /**
+     * @return the partition key and clustering columns as names and types, in key order
+     */
+    private static List<String> primaryKey(List<Map<String, ?>> columns) {
+        List<String> primaryKey = new ArrayList<>();
+        for (String kind : Arrays.asList("partition_key", "clustering")) {
+            for (Map<String, ?> column : sorted(columns, kind)) {
+                primaryKey.add(kind + " " + column.get("COLUMN_NAME") + " " + type(column) + " " + column.get("CLUSTERING_ORDER"));
+            }
+        }
+        return primaryKey;
+    }
+
+    /**
+     * @return the columns of the given kind, or all of them if kind is null, keys first and in key order
+     */
+    private static List<Map<String, ?>> sorted(List<Map<String, ?>> columns, String kind) {
+        List<String> kinds = Arrays.asList("partition_key", "clustering", "static", "regular");
+        return columns.stream()
+                .filter(column -> kind == null || kind.equals(column.get("KIND")))
+                .sorted(Comparator.comparingInt((Map<String, ?> column) -> kinds.indexOf(column.get("KIND")))
+                        .thenComparingInt(column -> column.get("POSITION") == null ? -1 : (Integer) column.get("POSITION"))
+                        .thenComparing(column -> (String) column.get("COLUMN_NAME")))
+                .collect(Collectors.toList());
+    }
+
+    private static Map<String, Map<String, ?>> byName(List<Map<String, ?>> columns) {
+        Map<String, Map<String, ?>> byName = new LinkedHashMap<>();
+        for (Map<String, ?> column : columns) {
+            byName.put((String) column.get("COLUMN_NAME"), column);
+        }
+        return byName;
+    }
+
+    private static boolean isKey(Map<String, ?> column) {
+        return "partition_key".equals(column.get("KIND")) || "clustering".equals(column.get("KIND"));
+    }
+
+    /**
+     * @return the interned type of the column, the same instance for the same type on both sides
+     */
+    private static CqlType type(Map<String, ?> column) {
+        return CqlType.parse((String) column.get("TYPE"));
+    }
+
+    private static String columnDefinition(Map<String, ?> column) {
+        return column.get("COLUMN_NAME") + " " + column.get("TYPE") + ("static".equals(column.get("KIND")) ? " STATIC" : "");
+    }
+
+    private static String names(List<Map<String, ?>> columns) {
+        return columns.stream().map(column -> (String) column.get("COLUMN_NAME")).collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,494 @@
+package liquibase.ext.keyspace.executor;
+
+import liquibase.Scope;
+import liquibase.change.Change;
+import liquibase.change.core.TagDatabaseChange;
+import liquibase.changelog.ChangeLogHistoryService;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.RanChangeSet;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.executor.jvm.JdbcExecutor;
+import liquibase.executor.jvm.RowMapper;
+import liquibase.ext.keyspace.changelog.ChangeLogLayout;
+import liquibase.ext.keyspace.changelog.KeyspaceChangeLogHistoryService;
+import liquibase.ext.keyspace.changelog.KeyspaceHistoryWriter;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.lockservice.LockScope;
+import liquibase.ext.keyspace.sqlgenerator.LockDatabaseChangeLogGeneratorKeyspace;
+import liquibase.ext.keyspace.statement.SharedConnectionStatement;
+import liquibase.listener.SqlListener;
+import liquibase.servicelocator.PrioritizedService;
+import liquibase.sql.SqlConfiguration;
+import liquibase.sql.visitor.AbstractSqlVisitor;
+import liquibase.sql.visitor.SqlVisitor;
+import liquibase.statement.ExecutablePreparedStatement;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.ClearDatabaseChangeLogTableStatement;
+import liquibase.statement.core.LockDatabaseChangeLogStatement;
+import liquibase.statement.core.MarkChangeSetRanStatement;
+import liquibase.statement.core.RawSqlStatement;
+import liquibase.statement.core.RemoveChangeSetRanStatusStatement;
+import liquibase.statement.core.SelectFromDatabaseChangeLogStatement;
+import liquibase.statement.core.TagDatabaseStatement;
+import liquibase.statement.core.UnlockDatabaseChangeLogStatement;
+import liquibase.statement.core.UpdateChangeSetChecksumStatement;
+import liquibase.util.LiquibaseUtil;
+import liquibase.util.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes the tracking table writes (lock, unlock and mark ran) as cached prepared statements with bound parameters
+ * instead of re-parsed CQL built by string concatenation. Lock and unlock are conditional updates of the lock row, so
+ * only one node can take the lock. Everything else is executed like the standard executor does.
+ * <p>
+ * The generators for these statements are still used whenever SQL is only written out, e.g. by update-sql.
+ * <p>
+ * With the {@link ChangeLogLayout#TIME_ORDERED} layout, removing a changeset from the history and updating its
+ * checksum address its row by bucket and execution order, looked up in the history service.
+ * <p>
+ * Changesets marked ran are written through {@link KeyspaceHistoryWriter}, which is flushed before any other statement
+ * on DATABASECHANGELOG.
+ * <p>
+ * All statements are retried on throttling and timeouts as far as {@link KeyspaceRetryPolicy} considers it safe.
+ */
+public class JdbcExecutorKeyspace extends JdbcExecutor {
+
+    private static final String DELETE_TIME_ORDERED_ROW = "DELETE FROM <table> WHERE BUCKET = ? AND ORDEREXECUTED = ? " +
+            "AND FILENAME = ? AND ID = ? AND AUTHOR = ?";
+
+    @Override
+    public int getPriority() {
+        return PrioritizedService.PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(Database database) {
+        return database instanceof KeyspaceDatabase;
+    }
+
+    @Override
+    public void execute(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        flushHistoryBefore(sql);
+        if (sql instanceof MarkChangeSetRanStatement && hasNoVisitors(sqlVisitors)) {
+            markChangeSetRan((MarkChangeSetRanStatement) sql);
+        } else if ((sql instanceof LockDatabaseChangeLogStatement || sql instanceof UnlockDatabaseChangeLogStatement)
+                && hasNoVisitors(sqlVisitors)) {
+            update(sql, sqlVisitors);
+        } else if (sql instanceof RemoveChangeSetRanStatusStatement && hasNoVisitors(sqlVisitors) && isTimeOrdered()) {
+            removeChangeSetRanStatus(((RemoveChangeSetRanStatusStatement) sql).getChangeSet());
+        } else if (sql instanceof UpdateChangeSetChecksumStatement && hasNoVisitors(sqlVisitors) && isTimeOrdered()) {
+            updateChangeSetChecksum(((UpdateChangeSetChecksumStatement) sql).getChangeSet());
+        } else if (sql instanceof SharedConnectionStatement) {
+            super.execute(sql, sqlVisitors);
+        } else if (sql instanceof ExecutablePreparedStatement) {
+            // e.g. the inserts of blob columns by loadData, which use the connection directly
+            try {
+                onConnection(() -> {
+                    super.execute(sql, sqlVisitors);
+                    return null;
+                });
+            } catch (DatabaseException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new DatabaseException(e);
+            }
+        } else {
+            for (String cql : generate(sql, withClientTimestamp(sqlVisitors))) {
+                withRetry(cql, () -> onConnection(() -> {
+                    super.execute(new RawSqlStatement(cql), null);
+                    return null;
+                }));
+            }
+        }
+    }
+
+    @Override
+    public int update(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        if (sql instanceof LockDatabaseChangeLogStatement && hasNoVisitors(sqlVisitors)) {
+            return lock();
+        } else if (sql instanceof UnlockDatabaseChangeLogStatement && hasNoVisitors(sqlVisitors)) {
+            // only our own lock is released, the lease may have expired and another node taken the lock since
+            Map<String, Object> result = executeConditionalUpdate("UPDATE " + getLockTableName() +
+                    " SET LOCKED = FALSE, LOCKEDBY = ? WHERE ID = ? IF LOCKED = TRUE AND LOCKEDBY = ?",
+                    null, LockScope.currentLockId(), LockDatabaseChangeLogGeneratorKeyspace.getLockedBy());
+            return KeyspaceStatementCache.isApplied(result) ? 1 : 0;
+        }
+        flushHistoryBefore(sql);
+        String cql = single(sql, generate(sql, withClientTimestamp(sqlVisitors)));
+        return withRetry(cql, () -> onConnection(() -> super.update(new RawSqlStatement(cql), null)));
+    }
+
+    @Override
+    public List query(SqlStatement sql, RowMapper rowMapper, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        flushHistoryBefore(sql);
+        String cql = single(sql, generate(sql, sqlVisitors));
+        return withRetry(cql, () -> onConnection(() -> super.query(new RawSqlStatement(cql), rowMapper, null)));
+    }
+
+    /**
+     * Runs a try of the standard executor while no background thread uses the connection, see
+     * {@link KeyspaceStatementCache#withConnection}. {@link SharedConnectionStatement}s are not run this way, as they
+     * may hand their work to background threads and wait for them.
+     */
+    private <T> T onConnection(KeyspaceRetryPolicy.Attempt<T> attempt) throws Exception {
+        synchronized (((KeyspaceDatabase) database).getStatementCache()) {
+            return attempt.run();
+        }
+    }
+
+    /**
+     * Writes the buffered history rows before a statement reads or changes DATABASECHANGELOG otherwise.
+     */
+    private void flushHistoryBefore(SqlStatement sql) throws DatabaseException {
+        if (sql instanceof RemoveChangeSetRanStatusStatement || sql instanceof UpdateChangeSetChecksumStatement
+                || sql instanceof TagDatabaseStatement || sql instanceof ClearDatabaseChangeLogTableStatement
+                || sql instanceof SelectFromDatabaseChangeLogStatement) {
+            KeyspaceChangeLogHistoryService.flushHistory(database);
+        }
+    }
+
+    /**
+     * Generates the CQL of a statement once, so every try runs exactly the same CQL and generators which read the
+     * database, like the one for tags, don't read it again on every try.
+     */
+    private List<String> generate(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        List<String> cql = new ArrayList<>();
+        for (String statement : applyVisitors(sql, sqlVisitors)) {
+            if (statement != null) {
+                cql.add(statement);
+            }
+        }
+        return cql;
+    }
+
+    private static String single(SqlStatement sql, List<String> cql) throws DatabaseException {
+        if (cql.size() != 1) {
+            throw new DatabaseException(sql.getClass().getSimpleName() + " did not convert to a single CQL statement: " + cql);
+        }
+        return cql.get(0);
+    }
+
+    /**
+     * Runs a single generated CQL statement through the retry policy. Statements generated together are retried one
+     * by one, so a retry never runs the ones which succeeded already again.
+     */
+    private <T> T withRetry(String cql, KeyspaceRetryPolicy.Attempt<T> attempt) throws DatabaseException {
+        return ((KeyspaceDatabase) database).getRetryPolicy().execute(cql, attempt);
+    }
+
+    private static List<SqlVisitor> withClientTimestamp(List<SqlVisitor> sqlVisitors) {
+        if (!KeyspaceConfiguration.CLIENT_SIDE_TIMESTAMPS.getCurrentValue()) {
+            return sqlVisitors;
+        }
+        List<SqlVisitor> visitors = sqlVisitors == null ? new ArrayList<>() : new ArrayList<>(sqlVisitors);
+        visitors.add(new ClientTimestampSqlVisitor(KeyspaceRetryPolicy.currentTimestampMicros()));
+        return visitors;
+    }
+
+    private void markChangeSetRan(MarkChangeSetRanStatement statement) throws DatabaseException {
+        ChangeSet.ExecType execType = statement.getExecType();
+        if (execType.equals(ChangeSet.ExecType.FAILED) || execType.equals(ChangeSet.ExecType.SKIPPED)) {
+            return; //don't mark
+        }
+        ChangeSet changeSet = statement.getChangeSet();
+        String tag = null;
+        for (Change change : changeSet.getChanges()) {
+            if (change instanceof TagDatabaseChange) {
+                tag = ((TagDatabaseChange) change).getTag();
+            }
+        }
+
+        ChangeLogHistoryService historyService = ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database);
+        int orderExecuted;
+        try {
+            orderExecuted = historyService.getNextSequenceValue();
+        } catch (DatabaseException e) {
+            throw e;
+        } catch (LiquibaseException e) {
+            throw new DatabaseException(e);
+        }
+
+        KeyspaceHistoryWriter historyWriter = ((KeyspaceChangeLogHistoryService) historyService).getHistoryWriter();
+        if (isTimeOrdered()) {
+            markChangeSetRanTimeOrdered(changeSet, execType, orderExecuted, tag, historyService, historyWriter);
+            historyWriter.changeSetAdded();
+            return;
+        }
+
+        String tableName = getChangeLogTableName();
+        List<Object> parameters = new ArrayList<>(Arrays.asList(new Date(), orderExecuted,
+                changeSet.generateCheckSum().toString(), execType.value, historyService.getDeploymentId(),
+                limitSize(StringUtil.trimToEmpty(changeSet.getComments())), changeSet.buildFullContext(),
+                changeSet.buildFullLabels()));
+        String cql;
+        if (execType.ranBefore) {
+            cql = "UPDATE " + tableName + " SET DATEEXECUTED = ?, ORDEREXECUTED = ?, MD5SUM = ?, EXECTYPE = ?, " +
+                    "DEPLOYMENT_ID = ?, COMMENTS = ?, CONTEXTS = ?, LABELS = ?" + (tag == null ? "" : ", TAG = ?") +
+                    " WHERE ID = ? AND AUTHOR = ? AND FILENAME = ?";
+            if (tag != null) {
+                parameters.add(tag);
+            }
+            parameters.addAll(Arrays.asList(changeSet.getId(), changeSet.getAuthor(), changeSet.getFilePath()));
+        } else {
+            cql = "INSERT INTO " + tableName + " (DATEEXECUTED, ORDEREXECUTED, MD5SUM, EXECTYPE, DEPLOYMENT_ID, " +
+                    "COMMENTS, CONTEXTS, LABELS, ID, AUTHOR, FILENAME, DESCRIPTION, LIQUIBASE" + (tag == null ? "" : ", TAG") +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?" + (tag == null ? "" : ", ?") + ")";
+            parameters.addAll(Arrays.asList(changeSet.getId(), changeSet.getAuthor(), changeSet.getFilePath(),
+                    limitSize(changeSet.getDescription()), getLiquibaseVersion()));
+            if (tag != null) {
+                parameters.add(tag);
+            }
+        }
+        // the partition key is ID, AUTHOR and FILENAME are clustering columns
+        historyWriter.add(cql, Arrays.asList(tableName, changeSet.getId()),
+                Arrays.asList(tableName, changeSet.getId(), changeSet.getAuthor(), changeSet.getFilePath()), parameters.toArray());
+        historyWriter.changeSetAdded();
+    }
+
+    /**
+     * A rerun changeset is moved to the top of the {@link ChangeLogLayout#TIME_ORDERED} table, as its clustering key
+     * is its execution order. DESCRIPTION and COMMENTS go to the side table.
+     */
+    private void markChangeSetRanTimeOrdered(ChangeSet changeSet, ChangeSet.ExecType execType, int orderExecuted,
+                                             String tag, ChangeLogHistoryService historyService,
+                                             KeyspaceHistoryWriter historyWriter) throws DatabaseException {
+        String tableName = getChangeLogTableName();
+        String detailsTableName = getDetailsTableName();
+        if (execType.ranBefore) {
+            RanChangeSet previous = getRanChangeSet(changeSet);
+            if (previous != null && previous.getOrderExecuted() != null) {
+                if (tag == null) {
+                    tag = previous.getTag();
+                }
+                int bucket = ChangeLogLayout.bucketOf(previous.getOrderExecuted());
+                historyWriter.add(DELETE_TIME_ORDERED_ROW.replace("<table>", tableName), Arrays.asList(tableName, bucket),
+                        Arrays.asList(tableName, bucket, previous.getOrderExecuted(), previous.getStoredChangeLog(),
+                                previous.getId(), previous.getAuthor()),
+                        bucket, previous.getOrderExecuted(), previous.getStoredChangeLog(), previous.getId(), previous.getAuthor());
+            }
+        }
+
+        String description = limitSize(changeSet.getDescription());
+        List<String> columns = new ArrayList<>(Arrays.asList("BUCKET", "ORDEREXECUTED", "FILENAME", "ID", "AUTHOR",
+                "DATEEXECUTED", "MD5SUM", "EXECTYPE", "DEPLOYMENT_ID", "CONTEXTS", "LABELS", "LIQUIBASE"));
+        List<Object> parameters = new ArrayList<>(Arrays.asList(ChangeLogLayout.bucketOf(orderExecuted), orderExecuted,
+                changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor(), new Date(),
+                changeSet.generateCheckSum().toString(), execType.value, historyService.getDeploymentId(),
+                changeSet.buildFullContext(), changeSet.buildFullLabels(), getLiquibaseVersion()));
+        // unset columns are left out instead of bound to null, which would write tombstones
+        if (ChangeLogLayout.isKeptInRow(description)) {
+            columns.add("DESCRIPTION");
+            parameters.add(description);
+        }
+        if (tag != null) {
+            columns.add("TAG");
+            parameters.add(tag);
+        }
+        int bucket = ChangeLogLayout.bucketOf(orderExecuted);
+        historyWriter.add("INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES ("
+                        + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")", Arrays.asList(tableName, bucket),
+                Arrays.asList(tableName, bucket, orderExecuted, changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor()),
+                parameters.toArray());
+        historyWriter.add("INSERT INTO " + detailsTableName + " (FILENAME, ID, AUTHOR, DESCRIPTION, COMMENTS) VALUES (?, ?, ?, ?, ?)",
+                Arrays.asList(detailsTableName, changeSet.getId()),
+                Arrays.asList(detailsTableName, changeSet.getId(), changeSet.getAuthor(), changeSet.getFilePath()),
+                changeSet.getFilePath(), changeSet.getId(), changeSet.getAuthor(), description,
+                limitSize(StringUtil.trimToEmpty(changeSet.getComments())));
+    }
+
+    private void removeChangeSetRanStatus(ChangeSet changeSet) throws DatabaseException {
+        RanChangeSet ranChangeSet = getRanChangeSet(changeSet);
+        if (ranChangeSet == null || ranChangeSet.getOrderExecuted() == null) {
+            return;
+        }
+        deleteTimeOrderedRow(ranChangeSet);
+        executeUpdate("DELETE FROM " + getDetailsTableName() + " WHERE FILENAME = ? AND ID = ? AND AUTHOR = ?",
+                ranChangeSet.getStoredChangeLog(), ranChangeSet.getId(), ranChangeSet.getAuthor());
+    }
+
+    private void updateChangeSetChecksum(ChangeSet changeSet) throws DatabaseException {
+        RanChangeSet ranChangeSet = getRanChangeSet(changeSet);
+        if (ranChangeSet == null || ranChangeSet.getOrderExecuted() == null) {
+            return;
+        }
+        executeUpdate("UPDATE " + getChangeLogTableName() + " SET MD5SUM = ? WHERE BUCKET = ? AND ORDEREXECUTED = ? " +
+                        "AND FILENAME = ? AND ID = ? AND AUTHOR = ?", changeSet.generateCheckSum().toString(),
+                ChangeLogLayout.bucketOf(ranChangeSet.getOrderExecuted()), ranChangeSet.getOrderExecuted(),
+                ranChangeSet.getStoredChangeLog(), ranChangeSet.getId(), ranChangeSet.getAuthor());
+    }
+
+    private RanChangeSet getRanChangeSet(ChangeSet changeSet) throws DatabaseException {
+        try {
+            return ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database).getRanChangeSet(changeSet);
+        } catch (LiquibaseException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    private void deleteTimeOrderedRow(RanChangeSet ranChangeSet) throws DatabaseException {
+        executeUpdate(DELETE_TIME_ORDERED_ROW.replace("<table>", getChangeLogTableName()),
+                ChangeLogLayout.bucketOf(ranChangeSet.getOrderExecuted()), ranChangeSet.getOrderExecuted(),
+                ranChangeSet.getStoredChangeLog(), ranChangeSet.getId(), ranChangeSet.getAuthor());
+    }
+
+    private boolean isTimeOrdered() {
+        return ChangeLogLayout.of((KeyspaceDatabase) database) == ChangeLogLayout.TIME_ORDERED;
+    }
+
+    private String getChangeLogTableName() {
+        return database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(),
+                database.getDatabaseChangeLogTableName());
+    }
+
+    private String getDetailsTableName() {
+        return database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(),
+                ChangeLogLayout.getDetailsTableName(database));
+    }
+
+    /**
+     * Takes the lock with a single conditional update of the lock row of the {@link LockScope}. With a
+     * {@link KeyspaceConfiguration#LOCK_LEASE_DURATION} the lock cells are written with that TTL, an expired lease
+     * leaves them empty and is taken over like a missing lock row.
+     *
+     * If a lock of an overlapping scope is held as well, the row is given back again, see {@link LockScope}.
+     *
+     * @return 1 if the lock is ours now, 0 if another node holds it or an overlapping one
+     */
+    private int lock() throws DatabaseException {
+        String lockedBy = LockDatabaseChangeLogGeneratorKeyspace.getLockedBy();
+        Date lockGranted = new Date();
+        int lockId = LockScope.currentLockId();
+        int leaseDuration = KeyspaceConfiguration.LOCK_LEASE_DURATION.getCurrentValue();
+        String usingTtl = leaseDuration > 0 ? " USING TTL " + leaseDuration : "";
+        Map<String, Object> result = executeConditionalUpdate("UPDATE " + getLockTableName() + usingTtl +
+                " SET LOCKED = TRUE, LOCKEDBY = ?, LOCKGRANTED = ? WHERE ID = ? IF LOCKED = FALSE", lockedBy, lockGranted, lockId);
+        if (!KeyspaceStatementCache.isApplied(result) && result.get("locked") == null) {
+            // there is no lock row yet, or its lease expired
+            result = executeConditionalUpdate("INSERT INTO " + getLockTableName() +
+                    " (ID, LOCKED, LOCKEDBY, LOCKGRANTED) VALUES (?, TRUE, ?, ?) IF NOT EXISTS" + usingTtl, lockId, lockedBy, lockGranted);
+            if (!KeyspaceStatementCache.isApplied(result) && result.get("locked") == null) {
+                // the row outlived the expired lease, e.g. it was inserted without a TTL
+                result = executeConditionalUpdate("UPDATE " + getLockTableName() + usingTtl +
+                        " SET LOCKED = TRUE, LOCKEDBY = ?, LOCKGRANTED = ? WHERE ID = ? IF LOCKED = null", lockedBy, lockGranted, lockId);
+            }
+        }
+        if (!KeyspaceStatementCache.isApplied(result)) {
+            // An earlier try which timed out may have been applied after all. A failed condition only returns the
+            // compared columns, so whether the lock is ours is asked with a condition on LOCKEDBY, which renews it as well.
+            result = executeConditionalUpdate("UPDATE " + getLockTableName() + usingTtl +
+                    " SET LOCKED = TRUE, LOCKEDBY = ?, LOCKGRANTED = ? WHERE ID = ? IF LOCKED = TRUE AND LOCKEDBY = ?",
+                    lockedBy, lockGranted, lockId, lockedBy);
+            if (!KeyspaceStatementCache.isApplied(result)) {
+                return 0;
+            }
+        }
+
+        String overlapping = findOverlappingLock(lockId, LockScope.current());
+        if (overlapping == null) {
+            return 1;
+        }
+        Scope.getCurrentScope().getLog(getClass()).info("The change log lock overlaps the one held by " + overlapping);
+        executeConditionalUpdate("UPDATE " + getLockTableName() + " SET LOCKED = FALSE, LOCKEDBY = null WHERE ID = ? IF LOCKEDBY = ?",
+                lockId, lockedBy);
+        return 0;
+    }
+
+    /**
+     * Looks for another locked row whose scope overlaps the given one. The lock table only has a row per scope, so it
+     * is read whole. Two nodes taking overlapping locks both write their own row before they read the others, so at
+     * least one of them sees the other and gives its row back.
+     *
+     * @return the LOCKEDBY of the overlapping lock, or null if there is none
+     */
+    private String findOverlappingLock(int lockId, String scope) throws DatabaseException {
+        List<Object[]> rows = ((KeyspaceDatabase) database).getStatementCache().query(
+                "SELECT ID, LOCKED, LOCKEDBY FROM " + getLockTableName(),
+                rs -> new Object[]{rs.getInt("ID"), rs.getObject("LOCKED"), rs.getString("LOCKEDBY")});
+        for (Object[] row : rows) {
+            int id = (Integer) row[0];
+            if (id == lockId || !Boolean.TRUE.equals(row[1])) {
+                continue;
+            }
+            String lockedBy = (String) row[2];
+            String otherScope = LockScope.scopeOf(lockedBy);
+            // a scoped row without its scope in LOCKEDBY was locked by an older version, which may cover anything
+            if (id == LockScope.GLOBAL_LOCK_ID || otherScope == null || LockScope.overlaps(scope, otherScope)) {
+                return lockedBy == null ? "lock " + id : lockedBy;
+            }
+        }
+        return null;
+    }
+
+    private Map<String, Object> executeConditionalUpdate(String cql, Object... parameters) throws DatabaseException {
+        for (SqlListener listener : Scope.getCurrentScope().getListeners(SqlListener.class)) {
+            listener.writeSqlWillRun(cql);
+        }
+        Scope.getCurrentScope().getLog(getClass()).log(SqlConfiguration.SHOW_AT_LOG_LEVEL.getCurrentValue(), cql, null);
+        return ((KeyspaceDatabase) database).getStatementCache().conditionalUpdate(cql, parameters);
+    }
+
+    private int executeUpdate(String cql, Object... parameters) throws DatabaseException {
+        for (SqlListener listener : Scope.getCurrentScope().getListeners(SqlListener.class)) {
+            listener.writeSqlWillRun(cql);
+        }
+        Scope.getCurrentScope().getLog(getClass()).log(SqlConfiguration.SHOW_AT_LOG_LEVEL.getCurrentValue(), cql, null);
+        return ((KeyspaceDatabase) database).getStatementCache().update(cql, parameters);
+    }
+
+    private String getLockTableName() {
+        return database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(),
+                database.getDatabaseChangeLogLockTableName());
+    }
+
+    /**
+     * Adds the same client side timestamp to every try of a write, see {@link KeyspaceRetryPolicy#withClientTimestamp}.
+     */
+    private static class ClientTimestampSqlVisitor extends AbstractSqlVisitor {
+
+        private final long timestampMicros;
+
+        ClientTimestampSqlVisitor(long timestampMicros) {
+            this.timestampMicros = timestampMicros;
+        }
+
+        @Override
+        public String getName() {
+            return "clientTimestamp";
+        }
+
+        @Override
+        public String modifySql(String sql, Database database) {
+            return KeyspaceRetryPolicy.withClientTimestamp(sql, timestampMicros);
+        }
+    }
+
+    private static boolean hasNoVisitors(List<SqlVisitor> sqlVisitors) {
+        return sqlVisitors == null || sqlVisitors.isEmpty();
+    }
+
+    private static String getLiquibaseVersion() {
+        return StringUtil.limitSize(LiquibaseUtil.getBuildVersion()
+                .replaceAll("SNAPSHOT", "SNP")
+                .replaceAll("beta", "b")
+                .replaceAll("alpha", "b"), 20);
+    }
+
+    private static String limitSize(String string) {
+        int maxLength = 250;
+        if (string.length() > maxLength) {
+            return string.substring(0, maxLength - 3) + "...";
+        }
+        return string;
+    }
+}
@@ -0,0 +1,253 @@
+package liquibase.ext.keyspace.executor;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Retries statements AWS Keyspace throttled or timed out.
+ * <p>
+ * Throttled statements were rejected before they ran, so they are always retried. Timed out statements may or may not
+ * have been applied, so they are only retried when running them twice does no harm, see {@link #isIdempotent(String)}.
+ * Retries back off exponentially with jitter. After {@link KeyspaceConfiguration#CIRCUIT_BREAKER_THRESHOLD} throttled
+ * statements in a row, all statements pause for {@link KeyspaceConfiguration#CIRCUIT_BREAKER_COOLDOWN} to let the
+ * table capacity recover.
+ */
+public class KeyspaceRetryPolicy {
+
+    public enum ErrorClass {
+        THROTTLED,
+        TIMEOUT,
+        OTHER
+    }
+
+    /**
+     * A single try of a statement.
+     */
+    public interface Attempt<T> {
+        T run() throws Exception;
+    }
+
+    // error codes of the native protocol, which the driver reports as vendor code of its SQLExceptions
+    private static final int OVERLOADED_CODE = 0x1001;
+    private static final int WRITE_TIMEOUT_CODE = 0x1100;
+    private static final int READ_TIMEOUT_CODE = 0x1200;
+
+    // driver exceptions by simple name, the driver classes are shaded and not on the compile classpath
+    private static final Set<String> THROTTLED_TYPES = new HashSet<>(Arrays.asList("OverloadedException"));
+    private static final Set<String> TIMEOUT_TYPES = new HashSet<>(Arrays.asList("ReadTimeoutException",
+            "WriteTimeoutException", "DriverTimeoutException", "OperationTimedOutException"));
+    // AWS Keyspaces reports exceeded capacity as a generic server error, only its message tells it apart
+    private static final Pattern CAPACITY_EXCEEDED = Pattern.compile(
+            "(?i).*(throughput exceeds the current capacity|throttl|rate exceeded).*", Pattern.DOTALL);
+    private static final Pattern IDEMPOTENT_DDL = Pattern.compile(
+            "(?is)^(CREATE\\s+.*\\s+IF\\s+NOT\\s+EXISTS\\s.*|DROP\\s+.*\\s+IF\\s+EXISTS\\s.*|TRUNCATE\\s.*)");
+    private static final Pattern WRITE = Pattern.compile("(?is)^(INSERT|UPDATE|DELETE|BEGIN\\s+(UNLOGGED\\s+)?BATCH)\\s.*");
+    private static final Pattern CONDITIONAL = Pattern.compile("(?is).*\\sIF\\s.*");
+    private static final Pattern ARITHMETIC = Pattern.compile("(?is).*\\w+\\s*=\\s*(\\w+\\s*[+-]|[\\[{].*[]}]\\s*\\+).*");
+
+    private static final Pattern INSERT = Pattern.compile("(?is)^(INSERT\\s.*?)\\s*;?\\s*$");
+    private static final Pattern UPDATE = Pattern.compile("(?is)^(UPDATE\\s+\\S+)(\\s+SET\\s.*)");
+    private static final Pattern DELETE = Pattern.compile("(?is)^(DELETE\\s+.*?FROM\\s+\\S+)(\\s+WHERE\\s.*)");
+    private static final Pattern BATCH = Pattern.compile("(?is)^(BEGIN\\s+(?:UNLOGGED\\s+)?BATCH)(\\s.*)");
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<ErrorClass, AtomicLong> errors = new EnumMap<>(ErrorClass.class);
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong giveUps = new AtomicLong();
+    private final AtomicLong circuitOpenings = new AtomicLong();
+
+    private int consecutiveThrottles;
+    private long circuitOpenUntil;
+
+    public KeyspaceRetryPolicy() {
+        for (ErrorClass errorClass : ErrorClass.values()) {
+            errors.put(errorClass, new AtomicLong());
+        }
+    }
+
+    /**
+     * Runs the attempt, trying again while it fails with a retryable error.
+     *
+     * @param cql the CQL the attempt runs, used to decide if it may be retried after a timeout
+     */
+    public <T> T execute(String cql, Attempt<T> attempt) throws DatabaseException {
+        int maxAttempts = Math.max(1, KeyspaceConfiguration.RETRY_MAX_ATTEMPTS.getCurrentValue());
+        long backoff = KeyspaceConfiguration.RETRY_INITIAL_BACKOFF.getCurrentValue();
+        long maxBackoff = KeyspaceConfiguration.RETRY_MAX_BACKOFF.getCurrentValue();
+        boolean idempotent = isIdempotent(cql);
+        try {
+            for (int attemptNumber = 1; ; attemptNumber++) {
+                awaitClosedCircuit();
+                try {
+                    T result = attempt.run();
+                    recordSuccess();
+                    return result;
+                } catch (Exception e) {
+                    ErrorClass errorClass = classify(e);
+                    errors.get(errorClass).incrementAndGet();
+                    if (errorClass == ErrorClass.THROTTLED) {
+                        recordThrottle();
+                    }
+                    boolean retryable = errorClass == ErrorClass.THROTTLED || (errorClass == ErrorClass.TIMEOUT && idempotent);
+                    if (!retryable || attemptNumber >= maxAttempts) {
+                        if (retryable) {
+                            giveUps.incrementAndGet();
+                        }
+                        throw asDatabaseException(cql, e);
+                    }
+                    long sleep = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+                    Scope.getCurrentScope().getLog(getClass()).info(String.format(
+                            "%s on attempt %d of %d, retrying in %d ms: %s", errorClass, attemptNumber, maxAttempts, sleep, cql));
+                    retries.incrementAndGet();
+                    TimeUnit.MILLISECONDS.sleep(sleep);
+                    backoff = Math.min(backoff * 2, maxBackoff);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * @return true if the CQL can run twice with the same outcome: reads, writes without lightweight transactions,
+     * counter or collection arithmetic, and DDL guarded by IF [NOT] EXISTS
+     */
+    public static boolean isIdempotent(String cql) {
+        if (cql == null) {
+            return false;
+        }
+        String statement = cql.trim();
+        if (statement.regionMatches(true, 0, "SELECT", 0, 6)) {
+            return true;
+        }
+        if (WRITE.matcher(statement).matches()) {
+            return !CONDITIONAL.matcher(statement).matches() && !ARITHMETIC.matcher(statement).matches();
+        }
+        return IDEMPOTENT_DDL.matcher(statement).matches();
+    }
+
+    /**
+     * Adds a client side USING TIMESTAMP to idempotent writes which don't carry a USING clause yet, so a retry
+     * writes exactly the same cells as the first try.
+     */
+    public static String withClientTimestamp(String cql, long timestampMicros) {
+        if (cql == null || !isIdempotent(cql) || cql.toUpperCase().contains(" USING ")) {
+            return cql;
+        }
+        String statement = cql.trim();
+        String using = " USING TIMESTAMP " + timestampMicros;
+        Matcher matcher;
+        if ((matcher = BATCH.matcher(statement)).matches()
+                || (matcher = UPDATE.matcher(statement)).matches()
+                || (matcher = DELETE.matcher(statement)).matches()) {
+            return matcher.group(1) + using + matcher.group(2);
+        }
+        if ((matcher = INSERT.matcher(statement)).matches()) {
+            return matcher.group(1) + using;
+        }
+        return cql;
+    }
+
+    /**
+     * @return the current time in microseconds, the resolution of Cassandra write timestamps
+     */
+    public static long currentTimestampMicros() {
+        return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    }
+
+    /**
+     * Classifies an error by the driver exception types and native protocol error codes in its causes. Only if none
+     * of them tells, the messages are checked for the capacity errors of AWS Keyspaces. Unavailable replicas are not
+     * throttling, they are reported as {@link ErrorClass#OTHER} and not retried.
+     */
+    public static ErrorClass classify(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String type = cause.getClass().getSimpleName();
+            int code = cause instanceof SQLException ? ((SQLException) cause).getErrorCode() : 0;
+            if (THROTTLED_TYPES.contains(type) || code == OVERLOADED_CODE) {
+                return ErrorClass.THROTTLED;
+            }
+            if (cause instanceof SQLTimeoutException || TIMEOUT_TYPES.contains(type)
+                    || code == WRITE_TIMEOUT_CODE || code == READ_TIMEOUT_CODE) {
+                return ErrorClass.TIMEOUT;
+            }
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && CAPACITY_EXCEEDED.matcher(cause.getMessage()).matches()) {
+                return ErrorClass.THROTTLED;
+            }
+        }
+        return ErrorClass.OTHER;
+    }
+
+    public long getErrors(ErrorClass errorClass) {
+        return errors.get(errorClass).get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getGiveUps() {
+        return giveUps.get();
+    }
+
+    public long getCircuitOpenings() {
+        return circuitOpenings.get();
+    }
+
+    public void logCounters() {
+        Scope.getCurrentScope().getLog(getClass()).info(String.format(
+                "Retry policy: %d throttled, %d timed out, %d other errors, %d retries, %d given up, %d circuit openings",
+                getErrors(ErrorClass.THROTTLED), getErrors(ErrorClass.TIMEOUT), getErrors(ErrorClass.OTHER),
+                getRetries(), getGiveUps(), getCircuitOpenings()));
+    }
+
+    private synchronized void recordSuccess() {
+        consecutiveThrottles = 0;
+    }
+
+    private synchronized void recordThrottle() {
+        consecutiveThrottles++;
+        if (consecutiveThrottles >= KeyspaceConfiguration.CIRCUIT_BREAKER_THRESHOLD.getCurrentValue()) {
+            consecutiveThrottles = 0;
+            circuitOpenUntil = System.currentTimeMillis()
+                    + TimeUnit.SECONDS.toMillis(KeyspaceConfiguration.CIRCUIT_BREAKER_COOLDOWN.getCurrentValue());
+            circuitOpenings.incrementAndGet();
+            Scope.getCurrentScope().getLog(getClass()).warning(
+                    "Sustained throttling, pausing all statements until " + new java.util.Date(circuitOpenUntil));
+        }
+    }
+
+    private void awaitClosedCircuit() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            wait = circuitOpenUntil - System.currentTimeMillis();
+        }
+        if (wait > 0) {
+            TimeUnit.MILLISECONDS.sleep(wait);
+        }
+    }
+
+    private static DatabaseException asDatabaseException(String cql, Exception e) {
+        if (e instanceof DatabaseException) {
+            return (DatabaseException) e;
+        }
+        return new DatabaseException("Error executing CQL " + cql + ": " + e.getMessage(), e);
+    }
+}
@@ -0,0 +1,83 @@
+package liquibase.ext.keyspace.executor;
+
+import liquibase.Scope;
+import liquibase.configuration.ConfigurationDefinition;
+import liquibase.configuration.LiquibaseConfiguration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Daemon threads for the background work of the extension, and the scope it runs in.
+ * <p>
+ * Liquibase scopes may be thread local, in which case a task on another thread reads every setting at its default
+ * instead of what the user configured. {@link #inCurrentScope(Callable)} captures the current values of all
+ * liquibase.keyspace settings when a task is created and runs it in a child scope holding them. The threads of a pool
+ * run in such a scope from when the pool is created, so every task sees the settings of the scope which created it.
+ * <p>
+ * All threads share the connection of the database, see {@link liquibase.ext.keyspace.database.KeyspaceStatementCache#withConnection}.
+ */
+public final class KeyspaceThreads {
+
+    private static final String SETTINGS_PREFIX = "liquibase.keyspace.";
+    private static final Map<String, AtomicInteger> THREAD_COUNTS = new ConcurrentHashMap<>();
+
+    private KeyspaceThreads() {
+    }
+
+    /**
+     * @return a pool of the given number of daemon threads, named after the given prefix, running in the current scope
+     */
+    public static ExecutorService newFixedThreadPool(String name, int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), threadFactory(name, captureSettings()));
+    }
+
+    /**
+     * @return a single daemon thread for scheduled tasks, named after the given prefix, running in the current scope
+     */
+    public static ScheduledExecutorService newSingleThreadScheduledExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(threadFactory(name, captureSettings()));
+    }
+
+    /**
+     * @return the task, run with the settings of the current scope on whichever thread calls it
+     */
+    public static <T> Callable<T> inCurrentScope(Callable<T> task) {
+        Map<String, Object> settings = captureSettings();
+        return () -> Scope.child(settings, task::call);
+    }
+
+    /**
+     * @return the current value of every liquibase.keyspace setting by key
+     */
+    static Map<String, Object> captureSettings() {
+        Map<String, Object> settings = new HashMap<>();
+        LiquibaseConfiguration configuration = Scope.getCurrentScope().getSingleton(LiquibaseConfiguration.class);
+        for (ConfigurationDefinition<?> definition : configuration.getRegisteredDefinitions(true)) {
+            if (definition.getKey().startsWith(SETTINGS_PREFIX)) {
+                Object value = definition.getCurrentValue();
+                if (value != null) {
+                    settings.put(definition.getKey(), value);
+                }
+            }
+        }
+        return settings;
+    }
+
+    private static ThreadFactory threadFactory(String name, Map<String, Object> settings) {
+        AtomicInteger count = THREAD_COUNTS.computeIfAbsent(name, key -> new AtomicInteger());
+        return runnable -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    Scope.child(settings, runnable::run);
+                } catch (Exception e) {
+                    Scope.getCurrentScope().getLog(KeyspaceThreads.class).warning("Thread " + Thread.currentThread().getName() + " failed", e);
+                }
+            }, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
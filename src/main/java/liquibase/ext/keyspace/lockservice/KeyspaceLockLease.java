@@ -0,0 +1,103 @@
+package liquibase.ext.keyspace.lockservice;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.executor.KeyspaceThreads;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Renews the lease of a change log lock taken with a {@link KeyspaceConfiguration#LOCK_LEASE_DURATION} on a daemon
+ * thread, three times per lease, as long as the process holding it is alive.
+ * <p>
+ * A renewal is a conditional update on our own LOCKEDBY. If it is not applied the lease expired and another node may
+ * have taken the lock, which ends the renewals. The lease also counts as lost once a whole lease duration passed
+ * without a successful renewal, as the lock cells have expired by then. {@link KeyspaceDatabase} checks
+ * {@link #isLost()} before every change and stops the update.
+ */
+public class KeyspaceLockLease implements AutoCloseable {
+
+    private final Supplier<KeyspaceStatementCache> statementCache;
+    private final String lockTableName;
+    private final int lockId;
+    private final String lockedBy;
+    private final int duration;
+    private final ScheduledExecutorService executor;
+    private volatile boolean lost;
+    private volatile long renewedAt = System.currentTimeMillis();
+
+    public KeyspaceLockLease(Supplier<KeyspaceStatementCache> statementCache, String lockTableName, int lockId, String lockedBy, int duration) {
+        this.statementCache = statementCache;
+        this.lockTableName = lockTableName;
+        this.lockId = lockId;
+        this.lockedBy = lockedBy;
+        this.duration = duration;
+        this.executor = KeyspaceThreads.newSingleThreadScheduledExecutor("keyspace-lock-lease");
+    }
+
+    /**
+     * Starts renewing the lease in the background.
+     */
+    public void start() {
+        long period = Math.max(1000L, TimeUnit.SECONDS.toMillis(duration) / 3);
+        renewedAt = System.currentTimeMillis();
+        Callable<Boolean> renewal = KeyspaceThreads.inCurrentScope(this::renew);
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                if (!renewal.call()) {
+                    executor.shutdown();
+                }
+            } catch (Throwable e) {
+                // the next renewal may get through before the lease runs out, an escaping exception would cancel it
+                Scope.getCurrentScope().getLog(getClass()).warning("Could not renew the change log lock lease", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Extends the lease by its duration.
+     *
+     * @return false if the lock is no longer ours
+     */
+    boolean renew() throws DatabaseException {
+        Map<String, Object> result = statementCache.get().conditionalUpdate("UPDATE " + lockTableName +
+                " USING TTL " + duration + " SET LOCKED = TRUE, LOCKEDBY = ?, LOCKGRANTED = ? WHERE ID = ? IF LOCKEDBY = ?",
+                lockedBy, new Date(), lockId, lockedBy);
+        if (KeyspaceStatementCache.isApplied(result)) {
+            renewedAt = System.currentTimeMillis();
+        } else {
+            lost = true;
+            Scope.getCurrentScope().getLog(getClass()).severe("The change log lock lease expired, the lock is now held by "
+                    + result.get("lockedby") + ". No further changesets are run");
+        }
+        return !lost;
+    }
+
+    /**
+     * @return true if a renewal found the lock taken over by another node, or the lease ran out without a renewal
+     */
+    public boolean isLost() {
+        return lost || System.currentTimeMillis() - renewedAt >= TimeUnit.SECONDS.toMillis(duration);
+    }
+
+    /**
+     * Stops renewing the lease, waiting for a renewal in progress so it can't overwrite the release of the lock.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(duration, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
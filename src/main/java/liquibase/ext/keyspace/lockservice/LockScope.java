@@ -0,0 +1,93 @@
+package liquibase.ext.keyspace.lockservice;
+
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.util.StringUtil;
+
+/**
+ * The {@link KeyspaceConfiguration#LOCK_SCOPE} a deployment locks and sees the history of.
+ * <p>
+ * Without a scope the lock row is ID 1, like with every other database. A scope gets its own row, with an ID derived
+ * from its name, and the DATABASECHANGELOG rows of changelog files under it. Scopes are paths, matched on whole path
+ * segments, so "db/orders" covers "db/orders/changelog.xml" but not "db/orders-archive/changelog.xml".
+ * <p>
+ * Scopes only run concurrently if they don't overlap. The LOCKEDBY of a scoped lock row names its scope, and a node
+ * which took its own row looks for a locked row of the global lock, of a scope containing its own or of a scope
+ * inside its own, and gives its row back if there is one.
+ */
+public final class LockScope {
+
+    public static final int GLOBAL_LOCK_ID = 1;
+
+    private static final String LOCKED_BY_SCOPE = " for ";
+
+    private LockScope() {
+    }
+
+    /**
+     * @return the configured scope, or null for the global lock
+     */
+    public static String current() {
+        return StringUtil.trimToNull(KeyspaceConfiguration.LOCK_SCOPE.getCurrentValue());
+    }
+
+    /**
+     * @return the ID of the lock row of the configured scope
+     */
+    public static int currentLockId() {
+        return lockId(current());
+    }
+
+    /**
+     * @return the ID of the lock row of the given scope, never {@link #GLOBAL_LOCK_ID} for a scope
+     */
+    public static int lockId(String scope) {
+        if (scope == null) {
+            return GLOBAL_LOCK_ID;
+        }
+        // String.hashCode is specified, so every node derives the same ID
+        return GLOBAL_LOCK_ID + 1 + (normalize(scope).hashCode() & Integer.MAX_VALUE) % (Integer.MAX_VALUE - GLOBAL_LOCK_ID - 1);
+    }
+
+    /**
+     * @return true if the history row of the given changelog file belongs to the scope
+     */
+    public static boolean contains(String scope, String fileName) {
+        if (scope == null) {
+            return true;
+        }
+        if (fileName == null) {
+            return false;
+        }
+        String path = normalize(fileName);
+        String prefix = normalize(scope);
+        return path.equals(prefix) || path.startsWith(prefix.endsWith("/") ? prefix : prefix + "/");
+    }
+
+    /**
+     * @return true if deployments of the two scopes may run the same changesets, null being the global lock
+     */
+    public static boolean overlaps(String scope, String otherScope) {
+        return contains(scope, otherScope) || contains(otherScope, scope);
+    }
+
+    /**
+     * @return the LOCKEDBY of the given node holding the lock of the given scope
+     */
+    public static String lockedBy(String node, String scope) {
+        return scope == null ? node : node + LOCKED_BY_SCOPE + normalize(scope);
+    }
+
+    /**
+     * @return the scope a LOCKEDBY names, or null if it names none, e.g. as it was written by an older version
+     */
+    public static String scopeOf(String lockedBy) {
+        int index = lockedBy == null ? -1 : lockedBy.indexOf(LOCKED_BY_SCOPE);
+        return index < 0 ? null : StringUtil.trimToNull(lockedBy.substring(index + LOCKED_BY_SCOPE.length()));
+    }
+
+    private static String normalize(String path) {
+        // matched like RanChangeSet.isSameAs matches file names
+        return DatabaseChangeLog.normalizePath(path).toLowerCase();
+    }
+}
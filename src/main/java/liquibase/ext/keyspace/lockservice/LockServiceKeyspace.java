@@ -1,19 +1,24 @@
 package liquibase.ext.keyspace.lockservice;
 
 import liquibase.Scope;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
 import liquibase.database.Database;
 import liquibase.database.ObjectQuotingStrategy;
-import liquibase.database.core.DB2Database;
-import liquibase.database.core.DerbyDatabase;
 import liquibase.database.core.MSSQLDatabase;
 import liquibase.exception.DatabaseException;
-import liquibase.exception.LiquibaseException;
 import liquibase.exception.LockException;
 import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.executor.Executor;
 import liquibase.executor.ExecutorService;
 import liquibase.executor.LoggingExecutor;
+import liquibase.ext.keyspace.changelog.ChangeLogLayout;
+import liquibase.ext.keyspace.changelog.KeyspaceChangeLogHistoryService;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceConnectionProfile;
 import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.TableReadinessBarrier;
+import liquibase.ext.keyspace.executor.KeyspaceRetryPolicy;
+import liquibase.ext.keyspace.sqlgenerator.LockDatabaseChangeLogGeneratorKeyspace;
 import liquibase.lockservice.StandardLockService;
 import liquibase.snapshot.SnapshotGeneratorFactory;
 import liquibase.sql.Sql;
@@ -21,196 +26,115 @@ import liquibase.sqlgenerator.SqlGeneratorFactory;
 import liquibase.statement.core.*;
 import liquibase.structure.core.Table;
 
-import java.security.SecureRandom;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 public class LockServiceKeyspace extends StandardLockService {
 
     private boolean isDatabaseChangeLogLockTableInitialized;
     private ObjectQuotingStrategy quotingStrategy;
 
-    private Boolean hasKeyspaceChangeLogLockTable;
-    private final SecureRandom random = new SecureRandom();
+    private boolean bootstrapped;
+    private KeyspaceLockLease lease;
 
-    // Keyspace does not work with aggregation functions thus we must use a different way to check locks
+    /**
+     * Works out whether the lock table exists and what its lock row holds from a single read of the lock row's
+     * partition, then creates the table or resets a stale lock row only when needed. The outcome is kept for the
+     * lock session, so the polls of a waiting node don't repeat it.
+     */
     @Override
     public void init() throws DatabaseException {
-        boolean createdTable = false;
+        if (bootstrapped) {
+            return;
+        }
         Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc",  database);
 
-        int maxIterations = 20;
         if (executor instanceof LoggingExecutor) {
             //can't / don't have to re-check
-            if (hasDatabaseChangeLogLockTable()) {
-                maxIterations = 0;
-            } else {
-                maxIterations = 1;
+            if (!hasDatabaseChangeLogLockTable()) {
+                executor.comment("Create Database Lock Table");
+                executor.execute(new CreateDatabaseChangeLogLockTableStatement());
             }
+            return;
         }
-        for (int i = 0; i < maxIterations; i++) {
-            try {
-                if (!hasDatabaseChangeLogLockTable(true)) {
-                    executor.comment("Create Database Lock Table");
-                    executor.execute(new CreateDatabaseChangeLogLockTableStatement());
-                    database.commit();
-                    Scope.getCurrentScope().getLog(getClass()).fine(
-                            "Created database lock table with name: " +
-                                    database.escapeTableName(
-                                            database.getLiquibaseCatalogName(),
-                                            database.getLiquibaseSchemaName(),
-                                            database.getDatabaseChangeLogLockTableName()
-                                    )
-                    );
-                    this.hasKeyspaceChangeLogLockTable = true;
-                    createdTable = true;
-                }
 
-                if (!isDatabaseChangeLogLockTableInitialized(createdTable, true)) {
-                    executor.comment("Initialize Database Lock Table");
-                    // Can not use trunkate thus we have to look through each item and delete it
-                    // Otherwise we would have to wait max of 1 hour to delete and recreate the table.
-                    //executor.execute(new InitializeDatabaseChangeLogLockTableStatement());
-
-                    List<Map<String, ?>> ret = executor.queryForList(
-                            new RawSqlStatement(
-                                "Select * from "+ database.escapeTableName(
-                                        database.getLiquibaseCatalogName(),
-                                        database.getLiquibaseSchemaName(),
-                                        database.getDatabaseChangeLogLockTableName()) + ";"
-                            )
-                    );
-
-                    for (Map<String, ?> item: ret) {
-                        executor.execute(
-                                new RawSqlStatement(
-                                        "DELETE FROM " + database.escapeTableName(
-                                                database.getLiquibaseCatalogName(),
-                                                database.getLiquibaseSchemaName(),
-                                                database.getDatabaseChangeLogLockTableName())
-                                                + " WHERE id = " + item.get("ID") + ";"
-                                )
-                        );
-                    }
-
-
-                    database.commit();
-                }
-
-                if (executor.updatesDatabase() && (database instanceof DerbyDatabase) && ((DerbyDatabase) database)
-                        .supportsBooleanDataType() || database.getClass().isAssignableFrom(DB2Database.class) && ((DB2Database) database)
-                        .supportsBooleanDataType()) {
-                    //check if the changelog table is of an old smallint vs. boolean format
-                    String lockTable = database.escapeTableName(
-                            database.getLiquibaseCatalogName(),
-                            database.getLiquibaseSchemaName(),
-                            database.getDatabaseChangeLogLockTableName()
-                    );
-                    Object obj = executor.queryForObject(
-                            new RawSqlStatement(
-                                    //"SELECT MIN(locked) AS test FROM " + lockTable + " FETCH FIRST ROW ONLY"
-                                    "SELECT locked AS test FROM " + lockTable + " limit 1"
-                            ), Object.class
-                    );
-                    if (!(obj instanceof Boolean)) { //wrong type, need to recreate table
-                        executor.execute(
-                                new DropTableStatement(
-                                        database.getLiquibaseCatalogName(),
-                                        database.getLiquibaseSchemaName(),
-                                        database.getDatabaseChangeLogLockTableName(),
-                                        false
-                                )
-                        );
-                        executor.execute(new CreateDatabaseChangeLogLockTableStatement());
-                        executor.execute(new InitializeDatabaseChangeLogLockTableStatement());
-                    }
-                }
-            } catch (Exception e) {
-                if (i == maxIterations - 1) {
-                    throw e;
-                } else {
-                    Scope.getCurrentScope().getLog(getClass()).fine("Failed to create or initialize the lock table, trying again, iteration " + (i + 1) + " of " + maxIterations, e);
-                    // If another node already created the table, then we need to rollback this current transaction,
-                    // otherwise servers like Postgres will not allow continued use of the same connection, failing with
-                    // a message like "current transaction is aborted, commands ignored until end of transaction block"
-
-                    // Keyspace takes alot of time to set up, thus a rollback here will not work.
-                    //database.rollback();
-                    try {
-                        Thread.sleep(random.nextInt(1000));
-                    } catch (InterruptedException ex) {
-                        Scope.getCurrentScope().getLog(getClass()).warning("Lock table retry loop thread sleep interrupted", ex);
-                    }
-                }
-            }
+        String lockTable = database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(),
+                database.getDatabaseChangeLogLockTableName());
+        Map<String, Object> lockRow;
+        try {
+            lockRow = readLockRow(lockTable);
+        } catch (DatabaseException e) {
+            // no lock table yet, or another node just created it and it is not active yet
+            Scope.getCurrentScope().getLog(getClass()).fine("Could not read the lock row, creating the tracking tables", e);
+            createTrackingTables(executor);
+            lockRow = readLockRow(lockTable);
         }
-    }
-
-    protected boolean hasDatabaseChangeLogLockTable(boolean forceRecheck) {
-        if (forceRecheck || hasKeyspaceChangeLogLockTable == null) {
-            try {
-                // Does not work as it uses COUNT(*)
-//                hasKeyspaceChangeLogLockTable = SnapshotGeneratorFactory.getInstance()
-//                        .hasDatabaseChangeLogLockTable(database);
-
-                String lockTable = database.escapeTableName(
-                        database.getLiquibaseCatalogName(),
-                        database.getLiquibaseSchemaName(),
-                        database.getDatabaseChangeLogLockTableName()
-                );
 
-                Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc",  database)
-                        .queryForList(
-                             new RawSqlStatement("SELECT * FROM " + lockTable + " limit 1")
-                         );
-                hasKeyspaceChangeLogLockTable = true;
-            } catch (liquibase.exception.DatabaseException e) {
-                hasKeyspaceChangeLogLockTable = false;
-            } catch (Exception e){
-                throw new UnexpectedLiquibaseException(e);
-            }
+        // Rows are never deleted here, another node may hold the lock. Only a lock row without a LOCKED value is
+        // reset, so the next acquisition gets through with its first conditional update.
+        if (lockRow.isEmpty()) {
+            executor.comment("Initialize Database Lock Table");
+            executor.execute(new RawSqlStatement("INSERT INTO " + lockTable + " (ID, LOCKED) VALUES (" + LockScope.currentLockId() + ", FALSE) IF NOT EXISTS"));
+        } else if (lockRow.get("locked") == null) {
+            // left behind by an expired lease
+            executor.comment("Reset Database Lock");
+            executor.execute(new RawSqlStatement("UPDATE " + lockTable + " SET LOCKED = FALSE WHERE ID = " + LockScope.currentLockId() + " IF LOCKED = null"));
         }
-        return hasKeyspaceChangeLogLockTable;
+        isDatabaseChangeLogLockTableInitialized = true;
+        bootstrapped = true;
     }
 
     /**
-     * Determine whether the databasechangeloglock table has been initialized.
-     * @param forceRecheck if true, do not use any cached information, and recheck the actual database
+     * Creates the lock table and, if it is missing too, DATABASECHANGELOG, then waits once until both are active.
+     * Both are created with IF NOT EXISTS, so nodes starting together on a fresh keyspace can all run this. Both are
+     * waited for even if they existed already, another node starting at the same time may have just created them.
      */
-    protected boolean isDatabaseChangeLogLockTableInitialized(final boolean tableJustCreated, final boolean forceRecheck) {
-        if (!isDatabaseChangeLogLockTableInitialized || forceRecheck) {
-            Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database);
-
-            try {
-
-                // Key
-                isDatabaseChangeLogLockTableInitialized = !(executor.queryForList(
-                        new RawSqlStatement("SELECT * FROM " +
-                                database.escapeTableName(
-                                        database.getLiquibaseCatalogName(),
-                                        database.getLiquibaseSchemaName(),
-                                        database.getDatabaseChangeLogLockTableName()
-                                )
-                        )
-                ).size() > 0);
-
-            } catch (LiquibaseException e) {
-                if (executor.updatesDatabase()) {
-                    throw new UnexpectedLiquibaseException(e);
-                } else {
-                    //probably didn't actually create the table yet.
-                    isDatabaseChangeLogLockTableInitialized = !tableJustCreated;
-                }
+    private void createTrackingTables(Executor executor) throws DatabaseException {
+        KeyspaceDatabase keyspaceDatabase = (KeyspaceDatabase) database;
+        KeyspaceConnectionProfile profile = keyspaceDatabase.getConnectionProfile();
+        List<String> tableNames = new ArrayList<>();
+
+        executor.comment("Create Database Lock Table");
+        executor.execute(new CreateDatabaseChangeLogLockTableStatement());
+        tableNames.add(database.getDatabaseChangeLogLockTableName());
+        tableNames.add(database.getDatabaseChangeLogTableName());
+        if (!profile.hasDatabaseChangeLogTable()) {
+            // otherwise the history service creates it after the lock is taken and waits for it a second time
+            executor.comment("Create Database Change Log Table");
+            executor.execute(new CreateDatabaseChangeLogTableStatement());
+            if (ChangeLogLayout.of(keyspaceDatabase) == ChangeLogLayout.TIME_ORDERED) {
+                tableNames.add(ChangeLogLayout.getDetailsTableName(keyspaceDatabase));
             }
         }
-        return isDatabaseChangeLogLockTableInitialized;
-    }
 
+        TableReadinessBarrier barrier = keyspaceDatabase.getTableReadinessBarrier();
+        for (String tableName : tableNames) {
+            barrier.register(tableName, TableReadinessBarrier.PendingState.CREATING);
+        }
+        barrier.await(tableNames);
+        Scope.getCurrentScope().getLog(getClass()).fine("Created tracking tables " + tableNames);
+        profile.invalidateTrackingTables();
+        profile.invalidatePartitionKey(database.getDatabaseChangeLogTableName());
+    }
 
+    /**
+     * @return LOCKED, LOCKEDBY and LOCKGRANTED of the lock row of the {@link LockScope} keyed by lower case column
+     * name, or an empty map if there is no lock row
+     */
+    private Map<String, Object> readLockRow(String lockTable) throws DatabaseException {
+        List<Map<String, Object>> rows = ((KeyspaceDatabase) database).getStatementCache().query(
+                "SELECT LOCKED, LOCKEDBY, LOCKGRANTED FROM " + lockTable + " WHERE ID = ?", rs -> {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("locked", rs.getObject("LOCKED"));
+                    row.put("lockedby", rs.getString("LOCKEDBY"));
+                    row.put("lockgranted", rs.getTimestamp("LOCKGRANTED"));
+                    return row;
+                }, LockScope.currentLockId());
+        return rows.isEmpty() ? Collections.emptyMap() : rows.get(0);
+    }
 
     @Override
     public int getPriority() {
@@ -236,53 +160,55 @@ public class LockServiceKeyspace extends StandardLockService {
             database.rollback();
             init();
 
-            //SELECT locked FROM betterbotz.DATABASECHANGELOGLOCK where locked = TRUE ALLOW FILTERING
-            Statement statement = ((KeyspaceDatabase) database).getStatement();
-            ResultSet rs = statement.executeQuery("SELECT locked FROM " + database.getDefaultCatalogName() + ".DATABASECHANGELOGLOCK where locked = TRUE ALLOW FILTERING");
+            // one conditional update, no scan for locked rows first, see JdbcExecutorKeyspace
+            executor.comment("Lock Database");
+            int rowsUpdated = executor.update(new LockDatabaseChangeLogStatement());
+            if ((rowsUpdated == -1) && (database instanceof MSSQLDatabase)) {
 
-            boolean locked;
-            if (rs.next()) {
-                locked = rs.getBoolean("locked");
-            } else {
-                locked = false;
+                Scope.getCurrentScope().getLog(this.getClass()).info("Database did not return a proper row count (Might have NOCOUNT enabled)");
+                database.rollback();
+                Sql[] sql = SqlGeneratorFactory.getInstance().generateSql(
+                        new LockDatabaseChangeLogStatement(), database
+                );
+                if (sql.length != 1) {
+                    throw new UnexpectedLiquibaseException("Did not expect " + sql.length + " statements");
+                }
+                rowsUpdated = executor.update(new RawSqlStatement("EXEC sp_executesql N'SET NOCOUNT OFF " +
+                        sql[0].toSql().replace("'", "''") + "'"));
             }
-
-            if (locked) {
+            if (rowsUpdated > 1) {
+                throw new LockException("Did not update change log lock correctly");
+            }
+            if (rowsUpdated == 0) {
+                // another node was faster
                 return false;
-            } else {
-
-                executor.comment("Lock Database");
-                int rowsUpdated = executor.update(new LockDatabaseChangeLogStatement());
-                if ((rowsUpdated == -1) && (database instanceof MSSQLDatabase)) {
-
-                    Scope.getCurrentScope().getLog(this.getClass()).info("Database did not return a proper row count (Might have NOCOUNT enabled)");
-                    database.rollback();
-                    Sql[] sql = SqlGeneratorFactory.getInstance().generateSql(
-                            new LockDatabaseChangeLogStatement(), database
-                    );
-                    if (sql.length != 1) {
-                        throw new UnexpectedLiquibaseException("Did not expect " + sql.length + " statements");
-                    }
-                    rowsUpdated = executor.update(new RawSqlStatement("EXEC sp_executesql N'SET NOCOUNT OFF " +
-                            sql[0].toSql().replace("'", "''") + "'"));
-                }
-                if (rowsUpdated > 1) {
-                    throw new LockException("Did not update change log lock correctly");
-                }
-                if (rowsUpdated == 0) {
-                    // another node was faster
-                    return false;
-                }
-                database.commit();
-                Scope.getCurrentScope().getLog(this.getClass()).info("successfully.acquired.change.log.lock");
+            }
+            database.commit();
+            Scope.getCurrentScope().getLog(this.getClass()).info("successfully.acquired.change.log.lock");
 
 
-                hasChangeLogLock = true;
+            hasChangeLogLock = true;
 
-                database.setCanCacheLiquibaseTableInfo(true);
-                return true;
+            int leaseDuration = KeyspaceConfiguration.LOCK_LEASE_DURATION.getCurrentValue();
+            if (leaseDuration > 0) {
+                lease = new KeyspaceLockLease(((KeyspaceDatabase) database)::getStatementCache,
+                        database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(),
+                                database.getDatabaseChangeLogLockTableName()),
+                        LockScope.currentLockId(), LockDatabaseChangeLogGeneratorKeyspace.getLockedBy(), leaseDuration);
+                lease.start();
+                ((KeyspaceDatabase) database).setLockLease(lease);
             }
+
+            // another node may have run changesets since we last read the history
+            ChangeLogHistoryServiceFactory.getInstance().resetAll();
+            database.setCanCacheLiquibaseTableInfo(true);
+            return true;
         } catch (Exception e) {
+            if (KeyspaceRetryPolicy.classify(e) == KeyspaceRetryPolicy.ErrorClass.TIMEOUT) {
+                // the update may still have been applied, the next try finds our own LOCKEDBY then
+                Scope.getCurrentScope().getLog(getClass()).info("Acquiring the change log lock timed out, trying again", e);
+                return false;
+            }
             throw new LockException(e);
         } finally {
             try {
@@ -295,6 +221,20 @@ public class LockServiceKeyspace extends StandardLockService {
 
     @Override
     public void releaseLock() throws LockException {
+        releaseLock(false);
+    }
+
+    /**
+     * Releases the lock whoever holds it, for the release-locks command. {@link #releaseLock()} only releases the
+     * lock of this process.
+     */
+    @Override
+    public void forceReleaseLock() throws LockException, DatabaseException {
+        init();
+        releaseLock(true);
+    }
+
+    private void releaseLock(boolean force) throws LockException {
 
         ObjectQuotingStrategy incomingQuotingStrategy = null;
         if (this.quotingStrategy != null) {
@@ -302,12 +242,38 @@ public class LockServiceKeyspace extends StandardLockService {
             database.setObjectQuotingStrategy(this.quotingStrategy);
         }
 
+        try {
+            // the next lock holder must see every changeset this one ran
+            KeyspaceChangeLogHistoryService.flushHistory(database);
+        } catch (DatabaseException e) {
+            // keep the lock, releasing it would let another node run the changesets missing from the history again
+            throw new LockException("Could not write buffered history rows, the lock is kept", e);
+        }
+
+        try {
+            // the next lock holder expects the tables created by this one to be usable
+            ((KeyspaceDatabase) database).getTableReadinessBarrier().awaitAll();
+        } catch (DatabaseException e) {
+            Scope.getCurrentScope().getLog(getClass()).warning("Could not wait for pending tables to settle", e);
+        }
+
+        boolean leaseLost = stopLease();
         Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database);
         try {
-            if (this.hasDatabaseChangeLogLockTable()) {
+            if (force && this.hasDatabaseChangeLogLockTable()) {
                 executor.comment("Release Database Lock");
                 database.rollback();
-                executor.update(new UnlockDatabaseChangeLogStatement());
+                executor.execute(new RawSqlStatement("UPDATE " + database.escapeTableName(database.getLiquibaseCatalogName(),
+                        database.getLiquibaseSchemaName(), database.getDatabaseChangeLogLockTableName()) +
+                        " SET LOCKED = FALSE, LOCKEDBY = null WHERE ID = " + LockScope.currentLockId() + " IF LOCKED = TRUE"));
+                database.commit();
+            } else if (!leaseLost && this.hasDatabaseChangeLogLockTable()) {
+                // a lost lease means the lock row belongs to another node now
+                executor.comment("Release Database Lock");
+                database.rollback();
+                if (executor.update(new UnlockDatabaseChangeLogStatement()) == 0 && executor.updatesDatabase()) {
+                    Scope.getCurrentScope().getLog(getClass()).warning("The change log lock was not held anymore when it was released");
+                }
                 database.commit();
             }
         } catch (Exception e) {
@@ -315,6 +281,7 @@ public class LockServiceKeyspace extends StandardLockService {
         } finally {
             try {
                 hasChangeLogLock = false;
+                bootstrapped = false;
 
                 database.setCanCacheLiquibaseTableInfo(false);
                 Scope.getCurrentScope().getLog(getClass()).info("Successfully released change log lock");
@@ -327,6 +294,30 @@ public class LockServiceKeyspace extends StandardLockService {
         }
     }
 
+    @Override
+    public void reset() {
+        stopLease();
+        bootstrapped = false;
+        super.reset();
+    }
+
+    /**
+     * @return true if the lease of the lock was lost while it was held
+     */
+    private boolean stopLease() {
+        boolean lost = false;
+        if (lease != null) {
+            ((KeyspaceDatabase) database).setLockLease(null);
+            lease.close();
+            lost = lease.isLost();
+            if (lost) {
+                Scope.getCurrentScope().getLog(getClass()).warning("The change log lock lease was lost while the lock was held");
+            }
+            lease = null;
+        }
+        return lost;
+    }
+
     @Override
     public boolean hasDatabaseChangeLogLockTable() {
         return ((KeyspaceDatabase)database).hasDatabaseChangeLogLockTable();
@@ -335,60 +326,20 @@ public class LockServiceKeyspace extends StandardLockService {
     @Override
     public boolean isDatabaseChangeLogLockTableInitialized(final boolean tableJustCreated) {
         if (!isDatabaseChangeLogLockTableInitialized) {
-
-            // table creation in AWS Keyspaces is not immediate like other Cassandras
-            // https://docs.aws.amazon.com/keyspaces/latest/devguide/working-with-tables.html#tables-create
-            // let's see if the DATABASECHANGELOG table is active before doing stuff
-            //TODO improve this AWS check when we find out better way
-            if (database.getConnection().getURL().toLowerCase().contains("amazonaws")) {
-                try {
-                    int DBCL_GET_TABLE_ACTIVE_ATTEMPS = 10;
-                    while (DBCL_GET_TABLE_ACTIVE_ATTEMPS >= 0) {
-
-                        Statement statement = ((KeyspaceDatabase) database).getStatement();
-                        ResultSet rs = statement.executeQuery("SELECT keyspace_name, table_name, status FROM " +
-                                "system_schema_mcs.tables WHERE keyspace_name = '" + database.getDefaultCatalogName() +
-                                "' AND table_name = 'databasechangeloglock'"); //todo: aws keyspaces appears to be all lowercase, dunno if that's the same with other cassandras...
-                        if (!rs.next()) {
-                            //need to create table
-                            return false;
-                        } else {
-                            do {
-                                String status = rs.getString("status");
-                                if (status.equals("ACTIVE")) {
-                                    isDatabaseChangeLogLockTableInitialized = true;
-                                    return true;
-                                } else if (status.equals("CREATING")) {
-                                    DBCL_GET_TABLE_ACTIVE_ATTEMPS--;
-                                    int timeout = 3;
-                                    Scope.getCurrentScope().getLog(this.getClass()).info("DATABASECHANGELOGLOCK table in CREATING state. Checking again in " + timeout + " seconds.");
-                                    TimeUnit.SECONDS.sleep(timeout);
-                                } else {
-                                    Scope.getCurrentScope().getLog(this.getClass()).severe(String.format("DATABASECHANGELOGLOCK table in %s state. ", status));
-                                    return false;
-                                    // something went very wrong, are we having issues with another Cassandra platform...?
-                                }
-
-                            } while (rs.next());
-                        }
-                    }
-                } catch (InterruptedException | SQLException |  DatabaseException e) {
+            Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database);
+            try {
+                // a lock table created by this process is waited on together with everything else pending
+                ((KeyspaceDatabase) database).getTableReadinessBarrier().await(
+                        Collections.singleton(database.getDatabaseChangeLogLockTableName()));
+                isDatabaseChangeLogLockTableInitialized = !readLockRow(database.escapeTableName(
+                        database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(),
+                        database.getDatabaseChangeLogLockTableName())).isEmpty();
+            } catch (DatabaseException e) {
+                if (executor.updatesDatabase()) {
                     throw new UnexpectedLiquibaseException(e);
-                }
-                //not AWS scenario
-            } else {
-                Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", database);
-                try {
-                    isDatabaseChangeLogLockTableInitialized = executor.queryForInt(
-                            new RawSqlStatement("SELECT COUNT(*) FROM " + database.getDefaultCatalogName() + ".DATABASECHANGELOGLOCK")
-                    ) > 0;
-                } catch (LiquibaseException e) {
-                    if (executor.updatesDatabase()) {
-                        throw new UnexpectedLiquibaseException(e);
-                    } else {
-                        //probably didn't actually create the table yet.
-                        isDatabaseChangeLogLockTableInitialized = !tableJustCreated;
-                    }
+                } else {
+                    //probably didn't actually create the table yet.
+                    isDatabaseChangeLogLockTableInitialized = !tableJustCreated;
                 }
             }
         }
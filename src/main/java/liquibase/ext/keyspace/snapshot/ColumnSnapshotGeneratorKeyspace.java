@@ -3,21 +3,17 @@ package liquibase.ext.keyspace.snapshot;
 import liquibase.Scope;
 import liquibase.database.Database;
 import liquibase.exception.DatabaseException;
-import liquibase.executor.Executor;
-import liquibase.executor.ExecutorService;
 import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.datatype.CqlType;
 import liquibase.snapshot.DatabaseSnapshot;
 import liquibase.snapshot.jvm.ColumnSnapshotGenerator;
-import liquibase.statement.core.RawSqlStatement;
 import liquibase.structure.DatabaseObject;
 import liquibase.structure.core.Column;
 import liquibase.structure.core.DataType;
 import liquibase.structure.core.Relation;
 import liquibase.util.StringUtil;
 
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class ColumnSnapshotGeneratorKeyspace extends ColumnSnapshotGenerator {
 
@@ -36,15 +32,8 @@ public class ColumnSnapshotGeneratorKeyspace extends ColumnSnapshotGenerator {
             return;
         }
         if (foundObject instanceof Relation) {
-            Database database = snapshot.getDatabase();
             Relation relation = (Relation) foundObject;
-            String query = String.format("SELECT KEYSPACE_NAME, COLUMN_NAME, TYPE, KIND FROM system_schema.columns WHERE KEYSPACE_NAME = '%s' AND table_name='%s';"
-                    , database.getDefaultCatalogName(), relation.getName());
-            Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc",
-                    database);
-            List<Map<String, ?>> returnList = executor.queryForList(new RawSqlStatement(query));
-
-            for (Map<String, ?> columnPropertiesMap : returnList) {
+            for (Map<String, ?> columnPropertiesMap : KeyspaceSchemaMetadata.of(snapshot, relation.getSchema()).getColumns(relation.getName())) {
                 relation.getColumns().add(readColumn(columnPropertiesMap, relation));
             }
         }
@@ -52,23 +41,14 @@ public class ColumnSnapshotGeneratorKeyspace extends ColumnSnapshotGenerator {
 
     @Override
     protected DatabaseObject snapshotObject(DatabaseObject example, DatabaseSnapshot snapshot) throws DatabaseException {
-        Database database = snapshot.getDatabase();
         Relation relation = ((Column) example).getRelation();
-        //we can't add column name as query parameter here as AWS keyspaces don't support such where statement
-        String query = String.format("SELECT KEYSPACE_NAME, COLUMN_NAME, TYPE, KIND FROM system_schema.columns WHERE keyspace_name = '%s' AND table_name='%s';"
-                , database.getDefaultCatalogName(), relation);
-
-        List<Map<String, ?>> returnList = Scope.getCurrentScope().getSingleton(ExecutorService.class)
-                .getExecutor("jdbc", database).queryForList(new RawSqlStatement(query));
-        returnList = returnList.stream()
-                .filter(stringMap -> ((String)stringMap.get("COLUMN_NAME")).equalsIgnoreCase(example.getName()))
-                .collect(Collectors.toList());
-        if (returnList.size() != 1) {
+        Map<String, ?> columnMap = KeyspaceSchemaMetadata.of(snapshot, relation.getSchema()).getColumn(relation.getName(), example.getName());
+        if (columnMap == null) {
             Scope.getCurrentScope().getLog(ColumnSnapshotGeneratorKeyspace.class).warning(String.format(
-                    "expecting exactly 1 column with name %s, got %s", example.getName(), returnList.size()));
+                    "expecting exactly 1 column with name %s, got 0", example.getName()));
             return null;
         } else {
-            return readColumn(returnList.get(0), relation);
+            return readColumn(columnMap, relation);
         }
     }
 
@@ -85,8 +65,9 @@ public class ColumnSnapshotGeneratorKeyspace extends ColumnSnapshotGenerator {
         // Cassandra doesn't actually store somewhere separately if column could nullable or not,
         // but it doesn't allow primary keys to be missing, so gonna use this field as nullable indicator
         column.setNullable(!"partition_key".equalsIgnoreCase(rawColumnKind));
-        //TODO extend datatype parsing when needed to include DataTypeId
-        column.setType(new DataType(rawColumnType));
+        // columns of the same type share its data type
+        CqlType type = CqlType.parse(rawColumnType);
+        column.setType(type == null ? new DataType() : type.toDataType());
         return column;
     }
 
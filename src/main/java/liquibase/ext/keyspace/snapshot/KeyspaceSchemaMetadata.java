@@ -0,0 +1,280 @@
+package liquibase.ext.keyspace.snapshot;
+
+import liquibase.Scope;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.datatype.CqlType;
+import liquibase.ext.keyspace.executor.KeyspaceThreads;
+import liquibase.snapshot.DatabaseSnapshot;
+import liquibase.snapshot.ResultSetCache;
+import liquibase.structure.core.Catalog;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The tables and columns of a keyspace a snapshot is taken of, read once per snapshot and kept with it,
+ * so the table and column snapshot generators answer from memory instead of querying system_schema per object.
+ * <p>
+ * Once the tables of the whole keyspace are read, columns are read keyspace wide as well, with a single query grouped
+ * by table in memory, or taken from the {@link KeyspaceSnapshotCache} if one is configured. A snapshot of single objects
+ * only reads the tables it asks for, each once.
+ * <p>
+ * A snapshot of several keyspaces reads all of them up front, up to {@link KeyspaceConfiguration#SNAPSHOT_PARALLELISM}
+ * at a time, each on its own statements. The reads take turns on the shared connection, a throttled read backs off
+ * while the others go on.
+ */
+public class KeyspaceSchemaMetadata {
+
+    private static final String CACHE_KEY = KeyspaceSchemaMetadata.class.getName();
+    private static final String ALL_CATALOGS_SCRATCH_KEY = "DatabaseSnapshot.allCatalogs";
+
+    /**
+     * The metadata of every keyspace of a snapshot by lower case keyspace name, kept in a result set cache of the
+     * snapshot.
+     */
+    private static class ByKeyspace {
+        private final Map<String, KeyspaceSchemaMetadata> keyspaces = new ConcurrentHashMap<>();
+    }
+
+    private final KeyspaceDatabase database;
+    private final String keyspaceName;
+    private final KeyspaceSnapshotCache snapshotCache;
+    private Map<String, Map<String, ?>> allTables;
+    private final Map<String, Map<String, ?>> tables = new HashMap<>();
+    private final Map<String, List<Map<String, ?>>> columns = new HashMap<>();
+    private boolean allColumns;
+
+    public KeyspaceSchemaMetadata(KeyspaceDatabase database, String keyspaceName, KeyspaceSnapshotCache snapshotCache) {
+        this.database = database;
+        this.keyspaceName = keyspaceName;
+        this.snapshotCache = snapshotCache;
+    }
+
+    /**
+     * @return the metadata of the keyspace of the given schema in the given snapshot, created on first use
+     */
+    public static KeyspaceSchemaMetadata of(DatabaseSnapshot snapshot, Schema schema) throws DatabaseException {
+        KeyspaceDatabase database = (KeyspaceDatabase) snapshot.getDatabase();
+        String keyspaceName = schema == null || schema.getCatalogName() == null
+                ? database.getDefaultCatalogName() : schema.getCatalogName();
+        ByKeyspace byKeyspace;
+        synchronized (snapshot) {
+            ResultSetCache cache = snapshot.getResultSetCache(CACHE_KEY);
+            byKeyspace = cache.getInfo(CACHE_KEY, ByKeyspace.class);
+            if (byKeyspace == null) {
+                byKeyspace = new ByKeyspace();
+                cache.putInfo(CACHE_KEY, byKeyspace);
+                prefetch(snapshot, byKeyspace);
+            }
+        }
+        return byKeyspace.keyspaces.computeIfAbsent(keyspaceName.toLowerCase(),
+                key -> new KeyspaceSchemaMetadata(database, keyspaceName, KeyspaceSnapshotCache.configured()));
+    }
+
+    /**
+     * Reads the tables and columns of every keyspace of a snapshot of several keyspaces concurrently.
+     */
+    private static void prefetch(DatabaseSnapshot snapshot, ByKeyspace byKeyspace) throws DatabaseException {
+        Collection<?> catalogs = getCatalogs(snapshot);
+        if (catalogs.size() < 2 || !snapshot.getSnapshotControl().shouldInclude(Table.class)) {
+            return;
+        }
+        boolean withColumns = snapshot.getSnapshotControl().shouldInclude(Column.class);
+        KeyspaceDatabase database = (KeyspaceDatabase) snapshot.getDatabase();
+        KeyspaceSnapshotCache snapshotCache = KeyspaceSnapshotCache.configured();
+        for (Object catalog : catalogs) {
+            if (catalog instanceof Catalog && ((Catalog) catalog).getName() != null) {
+                String name = ((Catalog) catalog).getName();
+                byKeyspace.keyspaces.put(name.toLowerCase(), new KeyspaceSchemaMetadata(database, name, snapshotCache));
+            }
+        }
+
+        int parallelism = Math.max(1, Math.min(KeyspaceConfiguration.SNAPSHOT_PARALLELISM.getCurrentValue(), byKeyspace.keyspaces.size()));
+        Scope.getCurrentScope().getLog(KeyspaceSchemaMetadata.class).info(String.format(
+                "Reading %d keyspaces, %d at a time", byKeyspace.keyspaces.size(), parallelism));
+        ExecutorService executor = KeyspaceThreads.newFixedThreadPool("keyspace-snapshot", parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (KeyspaceSchemaMetadata metadata : byKeyspace.keyspaces.values()) {
+                futures.add(executor.submit(() -> {
+                    metadata.readKeyspace(withColumns);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DatabaseException) {
+                throw (DatabaseException) e.getCause();
+            }
+            throw new DatabaseException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the catalogs the snapshot is taken of, Liquibase only hands them out as scratch data
+     */
+    @SuppressWarnings("deprecation")
+    private static Collection<?> getCatalogs(DatabaseSnapshot snapshot) {
+        Object catalogs = snapshot.getScratchData(ALL_CATALOGS_SCRATCH_KEY);
+        return catalogs instanceof Collection ? (Collection<?>) catalogs : Collections.emptySet();
+    }
+
+    /**
+     * @return TABLE_NAME, KEYSPACE_NAME and COMMENT of every table of the keyspace
+     */
+    public synchronized Collection<Map<String, ?>> getTables() throws DatabaseException {
+        if (allTables == null) {
+            Map<String, Map<String, ?>> byName = new LinkedHashMap<>();
+            for (Map<String, ?> row : queryKeyspace(
+                    "SELECT TABLE_NAME, KEYSPACE_NAME, COMMENT FROM system_schema.tables WHERE keyspace_name = " + quote(keyspaceName),
+                    rs -> table(rs.getString("TABLE_NAME"), rs.getString("KEYSPACE_NAME"), rs.getString("COMMENT")))) {
+                byName.put(((String) row.get("TABLE_NAME")).toLowerCase(), row);
+            }
+            allTables = byName;
+        }
+        return allTables.values();
+    }
+
+    /**
+     * @return TABLE_NAME, KEYSPACE_NAME and COMMENT of the given table, or null if there is no such table
+     */
+    public synchronized Map<String, ?> getTable(String tableName) throws DatabaseException {
+        String key = tableName.toLowerCase();
+        if (allTables != null) {
+            return allTables.get(key);
+        }
+        if (!tables.containsKey(key)) {
+            List<Map<String, ?>> rows = database.getStatementCache().query(
+                    "SELECT TABLE_NAME, KEYSPACE_NAME, COMMENT FROM system_schema.tables WHERE keyspace_name = ? AND TABLE_NAME = ?",
+                    rs -> table(rs.getString("TABLE_NAME"), rs.getString("KEYSPACE_NAME"), rs.getString("COMMENT")),
+                    keyspaceName, key);
+            tables.put(key, rows.size() == 1 ? rows.get(0) : null);
+        }
+        return tables.get(key);
+    }
+
+    /**
+     * @return KEYSPACE_NAME, COLUMN_NAME, TYPE and KIND of every column of the given table
+     */
+    public synchronized List<Map<String, ?>> getColumns(String tableName) throws DatabaseException {
+        String key = tableName.toLowerCase();
+        if (allTables != null) {
+            // the whole keyspace is snapshotted, one query for all of its columns beats one per table
+            readAllColumns();
+        }
+        if (!columns.containsKey(key) && !allColumns) {
+            columns.put(key, database.getStatementCache().query(
+                    "SELECT KEYSPACE_NAME, TABLE_NAME, COLUMN_NAME, TYPE, KIND FROM system_schema.columns WHERE keyspace_name = ? AND table_name = ?",
+                    rs -> column(rs.getString("KEYSPACE_NAME"), rs.getString("TABLE_NAME"), rs.getString("COLUMN_NAME"),
+                            rs.getString("TYPE"), rs.getString("KIND")),
+                    keyspaceName, key));
+        }
+        return columns.getOrDefault(key, Collections.emptyList());
+    }
+
+    /**
+     * @return the given column of the given table, or null if there is no such column
+     */
+    public synchronized Map<String, ?> getColumn(String tableName, String columnName) throws DatabaseException {
+        // AWS Keyspaces can't filter system_schema.columns by column name, the columns of the table are read instead
+        for (Map<String, ?> column : getColumns(tableName)) {
+            if (((String) column.get("COLUMN_NAME")).equalsIgnoreCase(columnName)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the tables and, if asked for, the columns of the whole keyspace.
+     */
+    synchronized void readKeyspace(boolean withColumns) throws DatabaseException {
+        getTables();
+        if (withColumns) {
+            readAllColumns();
+        }
+    }
+
+    private void readAllColumns() throws DatabaseException {
+        if (allColumns) {
+            return;
+        }
+        for (Map<String, ?> row : readAllColumnRows()) {
+            columns.computeIfAbsent(((String) row.get("TABLE_NAME")).toLowerCase(), table -> new ArrayList<>()).add(row);
+        }
+        allColumns = true;
+    }
+
+    private List<Map<String, ?>> readAllColumnRows() throws DatabaseException {
+        String fingerprint = null;
+        String cluster = database.getConnection().getURL();
+        if (snapshotCache != null) {
+            fingerprint = KeyspaceSnapshotCache.fingerprint(allTables.values());
+            List<Map<String, ?>> cached = snapshotCache.readColumns(cluster, keyspaceName, fingerprint);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<Map<String, ?>> rows = queryKeyspace(
+                "SELECT KEYSPACE_NAME, TABLE_NAME, COLUMN_NAME, TYPE, KIND FROM system_schema.columns WHERE keyspace_name = " + quote(keyspaceName),
+                rs -> column(rs.getString("KEYSPACE_NAME"), rs.getString("TABLE_NAME"), rs.getString("COLUMN_NAME"),
+                        rs.getString("TYPE"), rs.getString("KIND")));
+        if (snapshotCache != null) {
+            snapshotCache.writeColumns(cluster, keyspaceName, fingerprint, rows);
+        }
+        return rows;
+    }
+
+    /**
+     * Runs a keyspace wide read on a statement of its own. It runs once per snapshot, preparing it would not pay off.
+     */
+    private <T> List<T> queryKeyspace(String cql, KeyspaceStatementCache.RowReader<T> reader) throws DatabaseException {
+        return database.getRetryPolicy().execute(cql, () -> database.getStatementCache().withConnection(connection -> {
+            List<T> rows = new ArrayList<>();
+            try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(cql)) {
+                while (rs.next()) {
+                    rows.add(reader.read(rs));
+                }
+            }
+            return rows;
+        }));
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static Map<String, ?> table(String tableName, String keyspaceName, String comment) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("TABLE_NAME", tableName);
+        row.put("KEYSPACE_NAME", keyspaceName);
+        row.put("COMMENT", comment);
+        return row;
+    }
+
+    private static Map<String, ?> column(String keyspaceName, String tableName, String columnName, String type, String kind) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("KEYSPACE_NAME", keyspaceName);
+        row.put("TABLE_NAME", tableName);
+        row.put("COLUMN_NAME", columnName);
+        // the text of a parsed type is shared by all columns of the type
+        row.put("TYPE", type == null ? null : CqlType.parse(type).toString());
+        row.put("KIND", kind);
+        return row;
+    }
+}
@@ -0,0 +1,176 @@
+package liquibase.ext.keyspace.snapshot;
+
+import liquibase.Scope;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.util.StringUtil;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the columns of whole keyspaces on disk in {@link KeyspaceConfiguration#SNAPSHOT_CACHE_DIRECTORY}, so
+ * repeated snapshots of an unchanged keyspace don't read system_schema.columns again.
+ * <p>
+ * Keyspaces are cached per cluster, told apart by the URL of the connection. A cached keyspace is only reused while its
+ * fingerprint, see {@link #fingerprint(Collection)}, is unchanged and for at most
+ * {@link KeyspaceConfiguration#SNAPSHOT_CACHE_MAX_AGE}. The fingerprint can't see columns added to or dropped from a
+ * table, so the cache of a cluster is dropped whenever Liquibase runs DDL on it, see {@link #invalidate(String)}, and
+ * column changes made by others are noticed once the cache expires. One file per keyspace and cluster, the
+ * fingerprint on the first line and a tab separated column per line after it.
+ */
+public class KeyspaceSnapshotCache {
+
+    private static final String[] COLUMN_FIELDS = {"KEYSPACE_NAME", "TABLE_NAME", "COLUMN_NAME", "TYPE", "KIND"};
+
+    private final Path directory;
+    private final long maxAgeMillis;
+
+    public KeyspaceSnapshotCache(Path directory, long maxAgeSeconds) {
+        this.directory = directory;
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+    }
+
+    /**
+     * @return the configured cache, or null if snapshots are not cached
+     */
+    public static KeyspaceSnapshotCache configured() {
+        String directory = StringUtil.trimToNull(KeyspaceConfiguration.SNAPSHOT_CACHE_DIRECTORY.getCurrentValue());
+        return directory == null ? null
+                : new KeyspaceSnapshotCache(Paths.get(directory), KeyspaceConfiguration.SNAPSHOT_CACHE_MAX_AGE.getCurrentValue());
+    }
+
+    /**
+     * Fingerprints a keyspace by the names and comments of its tables. The schema version of the cluster is left out,
+     * AWS Keyspaces doesn't change it with DDL.
+     */
+    public static String fingerprint(Collection<Map<String, ?>> tables) {
+        List<String> parts = new ArrayList<>();
+        for (Map<String, ?> table : tables) {
+            parts.add(table.get("TABLE_NAME") + "\t" + table.get("COMMENT"));
+        }
+        Collections.sort(parts);
+        return sha256(String.join("\n", parts));
+    }
+
+    /**
+     * Drops the cached keyspaces of the given cluster, e.g. after DDL changed their columns.
+     */
+    public void invalidate(String cluster) {
+        String suffix = "-" + clusterId(cluster) + ".columns";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + suffix)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (NoSuchFileException e) {
+            // nothing cached yet
+        } catch (IOException e) {
+            Scope.getCurrentScope().getLog(getClass()).info("Could not invalidate snapshot cache " + directory, e);
+        }
+    }
+
+    /**
+     * @return the cached columns of the keyspace, or null if there are none with the given fingerprint which are
+     * recent enough
+     */
+    public List<Map<String, ?>> readColumns(String cluster, String keyspaceName, String fingerprint) {
+        Path file = getFile(cluster, keyspaceName);
+        try {
+            if (!Files.isRegularFile(file)
+                    || System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > maxAgeMillis) {
+                return null;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                if (!fingerprint.equals(reader.readLine())) {
+                    return null;
+                }
+                List<Map<String, ?>> columns = new ArrayList<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] values = line.split("\t", -1);
+                    if (values.length != COLUMN_FIELDS.length) {
+                        return null;
+                    }
+                    Map<String, Object> column = new HashMap<>();
+                    for (int i = 0; i < COLUMN_FIELDS.length; i++) {
+                        column.put(COLUMN_FIELDS[i], values[i].isEmpty() ? null : values[i]);
+                    }
+                    columns.add(column);
+                }
+                Scope.getCurrentScope().getLog(getClass()).fine("Using cached columns of keyspace " + keyspaceName + " from " + file);
+                return columns;
+            }
+        } catch (IOException e) {
+            Scope.getCurrentScope().getLog(getClass()).info("Could not read snapshot cache " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Caches the columns of the keyspace under the given fingerprint. Failing to do so is logged, the snapshot goes
+     * on without the cache.
+     */
+    public void writeColumns(String cluster, String keyspaceName, String fingerprint, List<Map<String, ?>> columns) {
+        Path file = getFile(cluster, keyspaceName);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            // written next to the cache file and moved over it, so concurrent snapshots never read half a file
+            temp = Files.createTempFile(directory, keyspaceName, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(fingerprint);
+                writer.newLine();
+                for (Map<String, ?> column : columns) {
+                    StringJoiner line = new StringJoiner("\t");
+                    for (String field : COLUMN_FIELDS) {
+                        Object value = column.get(field);
+                        line.add(value == null ? "" : value.toString());
+                    }
+                    writer.write(line.toString());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Scope.getCurrentScope().getLog(getClass()).info("Could not write snapshot cache " + file, e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    Scope.getCurrentScope().getLog(getClass()).fine("Could not delete " + temp, e);
+                }
+            }
+        }
+    }
+
+    private Path getFile(String cluster, String keyspaceName) {
+        return directory.resolve(keyspaceName.toLowerCase() + "-" + clusterId(cluster) + ".columns");
+    }
+
+    /**
+     * @return a short hash of the connection URL, which may hold credentials that don't belong in a file name
+     */
+    private static String clusterId(String cluster) {
+        return sha256(String.valueOf(cluster)).substring(0, 16);
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
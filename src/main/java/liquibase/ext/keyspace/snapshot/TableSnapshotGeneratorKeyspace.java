@@ -5,18 +5,14 @@ import liquibase.Scope;
 import liquibase.database.AbstractJdbcDatabase;
 import liquibase.database.Database;
 import liquibase.exception.DatabaseException;
-import liquibase.executor.Executor;
-import liquibase.executor.ExecutorService;
 import liquibase.ext.keyspace.database.KeyspaceDatabase;
 import liquibase.snapshot.*;
 import liquibase.snapshot.jvm.TableSnapshotGenerator;
-import liquibase.statement.core.RawSqlStatement;
 import liquibase.structure.DatabaseObject;
 import liquibase.structure.core.Schema;
 import liquibase.structure.core.Table;
 import liquibase.util.StringUtil;
 
-import java.util.List;
 import java.util.Map;
 
 public class TableSnapshotGeneratorKeyspace extends TableSnapshotGenerator {
@@ -40,13 +36,7 @@ public class TableSnapshotGeneratorKeyspace extends TableSnapshotGenerator {
             Database database = snapshot.getDatabase();
             Schema schema = (Schema) foundObject;
 
-            String query = String.format("SELECT TABLE_NAME, KEYSPACE_NAME, COMMENT FROM system_schema.tables WHERE keyspace_name = '%s';",
-                    database.getDefaultCatalogName());
-            Executor executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc",
-                    database);
-            List<Map<String, ?>> returnList = executor.queryForList(new RawSqlStatement(query));
-
-            for (Map<String, ?> tablePropertiesMap : returnList) {
+            for (Map<String, ?> tablePropertiesMap : KeyspaceSchemaMetadata.of(snapshot, schema).getTables()) {
                 schema.addDatabaseObject(readTable(tablePropertiesMap, database));
             }
         }
@@ -56,18 +46,13 @@ public class TableSnapshotGeneratorKeyspace extends TableSnapshotGenerator {
     protected DatabaseObject snapshotObject(DatabaseObject example, DatabaseSnapshot snapshot) throws DatabaseException {
 
         Database database = snapshot.getDatabase();
-        String query =
-                String.format("SELECT TABLE_NAME, KEYSPACE_NAME, COMMENT FROM system_schema.tables WHERE keyspace_name = '%s' AND TABLE_NAME = '%s'",
-                        database.getDefaultCatalogName(), example.getName().toLowerCase());
-        List<Map<String, ?>> returnList = Scope.getCurrentScope().getSingleton(ExecutorService.class)
-                .getExecutor("jdbc", database).queryForList(new RawSqlStatement(query));
-        if (returnList.size() != 1) {
+        Map<String, ?> tableMap = KeyspaceSchemaMetadata.of(snapshot, example.getSchema()).getTable(example.getName());
+        if (tableMap == null) {
             Scope.getCurrentScope().getLog(TableSnapshotGeneratorKeyspace.class).warning(String.format(
-                    "expecting exactly 1 table with name %s, got %s", example.getName(), returnList.size()));
+                    "expecting exactly 1 table with name %s, got 0", example.getName()));
             return null;
         } else {
-            return readTable(returnList.get(0), database);
-
+            return readTable(tableMap, database);
         }
     }
 
@@ -0,0 +1,35 @@
+package liquibase.ext.keyspace.sqlgenerator;
+
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.statement.CopyTableDataStatement;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+
+/**
+ * Dummy SQL generator for {@link CopyTableDataStatement}, which executes itself.
+ */
+public class CopyTableDataGeneratorKeyspace extends AbstractSqlGenerator<CopyTableDataStatement> {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(CopyTableDataStatement statement, Database database) {
+        return database instanceof KeyspaceDatabase;
+    }
+
+    @Override
+    public ValidationErrors validate(CopyTableDataStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        return new ValidationErrors();
+    }
+
+    @Override
+    public Sql[] generateSql(CopyTableDataStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        return EMPTY_SQL;
+    }
+}
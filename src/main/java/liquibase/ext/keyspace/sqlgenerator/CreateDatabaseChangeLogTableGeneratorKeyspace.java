@@ -1,11 +1,13 @@
 package liquibase.ext.keyspace.sqlgenerator;
 
 import liquibase.database.Database;
+import liquibase.ext.keyspace.changelog.ChangeLogLayout;
 import liquibase.ext.keyspace.database.KeyspaceDatabase;
 import liquibase.sql.Sql;
 import liquibase.sqlgenerator.SqlGeneratorChain;
 import liquibase.sqlgenerator.SqlGeneratorFactory;
 import liquibase.sqlgenerator.core.CreateDatabaseChangeLogTableGenerator;
+import liquibase.statement.SqlStatement;
 import liquibase.statement.core.CreateDatabaseChangeLogTableStatement;
 import liquibase.statement.core.RawSqlStatement;
 
@@ -33,14 +35,15 @@ public class CreateDatabaseChangeLogTableGeneratorKeyspace extends CreateDatabas
 
     @Override
     public Sql[] generateSql(CreateDatabaseChangeLogTableStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        ChangeLogLayout layout = ChangeLogLayout.configured();
 
+        RawSqlStatement createTableStatement = new RawSqlStatement(layout.getCreateTableCql(database, database.getDatabaseChangeLogTableName()));
+        if (layout == ChangeLogLayout.CLASSIC) {
+            return SqlGeneratorFactory.getInstance().generateSql(createTableStatement, database);
+        }
 
-        RawSqlStatement createTableStatement = new RawSqlStatement("CREATE TABLE IF NOT EXISTS " +
-                database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), "databasechangelog") +
-                "( ID TEXT, AUTHOR TEXT, FILENAME TEXT, DATEEXECUTED timestamp, ORDEREXECUTED INT, EXECTYPE TEXT, MD5SUM TEXT, DESCRIPTION TEXT, COMMENTS TEXT, TAG TEXT, LIQUIBASE TEXT, CONTEXTS TEXT, LABELS TEXT, DEPLOYMENT_ID TEXT,PRIMARY KEY (ID, AUTHOR, FILENAME))");
-
-        return SqlGeneratorFactory.getInstance().generateSql(createTableStatement, database);
-
+        return SqlGeneratorFactory.getInstance().generateSql(new SqlStatement[]{createTableStatement,
+                new RawSqlStatement(ChangeLogLayout.getCreateDetailsTableCql(database))}, database);
     }
 
 }
@@ -1,11 +1,17 @@
 package liquibase.ext.keyspace.sqlgenerator;
 
 import liquibase.database.Database;
+import liquibase.ext.keyspace.change.CreateTableChangeKeyspace;
 import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.statement.CreateTableStatementKeyspace;
 import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
 import liquibase.sqlgenerator.SqlGeneratorChain;
 import liquibase.sqlgenerator.core.CreateTableGenerator;
 import liquibase.statement.core.CreateTableStatement;
+import liquibase.structure.DatabaseObject;
+
+import java.util.StringJoiner;
 
 public class CreateTableGeneratorKeyspace extends CreateTableGenerator {
 
@@ -23,8 +29,49 @@ public class CreateTableGeneratorKeyspace extends CreateTableGenerator {
         // Cassandra doesn't support not null constraints
         statement.getNotNullColumns().clear();
 
-        return super.generateSql(statement, database, sqlGeneratorChain);
+        Sql[] sqls = super.generateSql(statement, database, sqlGeneratorChain);
+        if (statement instanceof CreateTableStatementKeyspace && ((CreateTableStatementKeyspace) statement).hasTableOptions()) {
+            // the options go into the CREATE TABLE itself, an ALTER TABLE would have to wait for the table again
+            Sql createTable = sqls[0];
+            sqls[0] = new UnparsedSql(createTable.toSql() + getTableOptions((CreateTableStatementKeyspace) statement),
+                    createTable.getEndDelimiter(), createTable.getAffectedDatabaseObjects().toArray(new DatabaseObject[0]));
+        }
+        return sqls;
+    }
+
+    /**
+     * @return the WITH clause setting the AWS Keyspace table options of the statement
+     */
+    protected String getTableOptions(CreateTableStatementKeyspace statement) {
+        StringJoiner customProperties = new StringJoiner(", ", "{", "}");
+        if (statement.getCapacityMode() != null) {
+            customProperties.add(getCapacityModeProperty(statement.getCapacityMode(),
+                    statement.getReadCapacityUnits(), statement.getWriteCapacityUnits()));
+        }
+        if (statement.getPointInTimeRecovery() != null) {
+            customProperties.add("'point_in_time_recovery': {'status': '"
+                    + (statement.getPointInTimeRecovery() ? "enabled" : "disabled") + "'}");
+        }
+        if (statement.getDefaultTimeToLive() != null) {
+            // AWS Keyspace only takes a default TTL on tables with TTL enabled
+            customProperties.add("'ttl': {'status': 'enabled'}");
+        }
+        String options = " WITH CUSTOM_PROPERTIES = " + customProperties;
+        if (statement.getDefaultTimeToLive() != null) {
+            options += " AND default_time_to_live = " + statement.getDefaultTimeToLive();
+        }
+        return options;
+    }
 
+    /**
+     * @return the capacity_mode custom property for the given capacity
+     */
+    public static String getCapacityModeProperty(String capacityMode, Integer readCapacityUnits, Integer writeCapacityUnits) {
+        String property = "'capacity_mode': {'throughput_mode': '" + capacityMode + "'";
+        if (CreateTableChangeKeyspace.PROVISIONED.equals(capacityMode)) {
+            property += ", 'read_capacity_units': " + readCapacityUnits + ", 'write_capacity_units': " + writeCapacityUnits;
+        }
+        return property + "}";
     }
 
 }
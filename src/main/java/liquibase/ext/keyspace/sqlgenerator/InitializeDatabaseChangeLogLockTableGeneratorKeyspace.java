@@ -28,7 +28,7 @@ public class InitializeDatabaseChangeLogLockTableGeneratorKeyspace extends Initi
         RawSqlStatement deleteStatement = new RawSqlStatement("TRUNCATE TABLE " + database.escapeTableName(
                 database.getLiquibaseCatalogName(),
                 database.getLiquibaseSchemaName(),
-                "databasechangeloglock".toUpperCase()));
+                database.getDatabaseChangeLogLockTableName()));
 
         return SqlGeneratorFactory.getInstance().generateSql(deleteStatement, database);
 
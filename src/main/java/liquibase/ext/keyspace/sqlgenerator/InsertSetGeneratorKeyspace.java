@@ -0,0 +1,141 @@
+package liquibase.ext.keyspace.sqlgenerator;
+
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.database.KeyspaceConnectionProfile;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.InsertGenerator;
+import liquibase.sqlgenerator.core.InsertSetGenerator;
+import liquibase.statement.core.InsertSetStatement;
+import liquibase.statement.core.InsertStatement;
+
+import java.util.*;
+
+/**
+ * Cassandra has no multi row VALUES, rows are sent in CQL batches instead.
+ * <p>
+ * Rows are grouped by partition key value and every batch holds the rows of a single partition, so a batch is never
+ * spread over several partitions, and at most {@link KeyspaceConfiguration#BATCH_SIZE} rows (AWS Keyspace rejects more
+ * than 30), larger partitions are split. If the partition key can't be read, e.g. offline, rows are batched in their
+ * order. A batch never holds two rows with the same primary key, the writes of one batch share a timestamp and
+ * would not be applied in order, like in {@link liquibase.ext.keyspace.changelog.KeyspaceHistoryWriter}. Batches are
+ * UNLOGGED unless {@link KeyspaceConfiguration#LOGGED_BATCHES} is set.
+ */
+public class InsertSetGeneratorKeyspace extends InsertSetGenerator {
+
+    public static final int MAX_BATCH_SIZE = 30;
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(InsertSetStatement statement, Database database) {
+        return database instanceof KeyspaceDatabase;
+    }
+
+    @Override
+    public Sql[] generateSql(InsertSetStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        if (statement.peek() == null) {
+            return new UnparsedSql[0];
+        }
+        InsertGenerator insertGenerator = getInsertGenerator(database);
+        int batchSize = getBatchSize();
+        String batchType = KeyspaceConfiguration.LOGGED_BATCHES.getCurrentValue() ? "BEGIN BATCH\n" : "BEGIN UNLOGGED BATCH\n";
+
+        List<Sql> result = new ArrayList<>();
+        for (List<InsertStatement> batch : split(statement, database, batchSize)) {
+            StringBuilder sql = new StringBuilder();
+            if (batch.size() > 1) {
+                sql.append(batchType);
+            }
+            for (InsertStatement row : batch) {
+                insertGenerator.generateHeader(sql, row, database);
+                insertGenerator.generateValues(sql, row, database);
+                if (batch.size() > 1) {
+                    sql.append(";\n");
+                }
+            }
+            if (batch.size() > 1) {
+                sql.append("APPLY BATCH");
+            }
+            result.add(new UnparsedSql(sql.toString(), getAffectedTable(statement)));
+        }
+        return result.toArray(new Sql[0]);
+    }
+
+    /**
+     * @return the maximum number of rows per batch
+     */
+    public static int getBatchSize() {
+        return Math.max(1, Math.min(KeyspaceConfiguration.BATCH_SIZE.getCurrentValue(), MAX_BATCH_SIZE));
+    }
+
+    /**
+     * @return the rows grouped by partition, otherwise in their order, split into batches of a single partition and at
+     * most the given size which don't hold two rows with the same primary key
+     */
+    private List<List<InsertStatement>> split(InsertSetStatement statement, Database database, int batchSize) {
+        List<String> partitionKey = getKeyColumns(statement, database, true);
+        List<String> primaryKey = getKeyColumns(statement, database, false);
+
+        Map<List<Object>, List<InsertStatement>> partitions = new LinkedHashMap<>();
+        for (InsertStatement row : statement.getStatements()) {
+            partitions.computeIfAbsent(partitionKey.isEmpty() ? Collections.emptyList() : valuesOf(row, partitionKey),
+                    k -> new ArrayList<>()).add(row);
+        }
+
+        List<List<InsertStatement>> batches = new ArrayList<>();
+        for (List<InsertStatement> partition : partitions.values()) {
+            List<InsertStatement> batch = new ArrayList<>();
+            Set<List<Object>> keys = new HashSet<>();
+            for (InsertStatement row : partition) {
+                List<Object> key = primaryKey.isEmpty() ? null : valuesOf(row, primaryKey);
+                if (batch.size() >= batchSize || (key != null && !keys.add(key))) {
+                    batches.add(batch);
+                    batch = new ArrayList<>();
+                    keys.clear();
+                    if (key != null) {
+                        keys.add(key);
+                    }
+                }
+                batch.add(row);
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * @return the values of the given lower case columns in the row
+     */
+    private static List<Object> valuesOf(InsertStatement row, List<String> columns) {
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, Object> columnValue : row.getColumnValues().entrySet()) {
+            values.put(columnValue.getKey().toLowerCase(), columnValue.getValue());
+        }
+        List<Object> key = new ArrayList<>();
+        for (String column : columns) {
+            key.add(values.get(column));
+        }
+        return key;
+    }
+
+    /**
+     * @return the lower case partition key or primary key columns of the table, or an empty list if they are unknown
+     */
+    private List<String> getKeyColumns(InsertSetStatement statement, Database database, boolean partitionKey) {
+        if (!(database.getConnection() instanceof JdbcConnection)) {
+            // offline, e.g. update-sql without a database
+            return Collections.emptyList();
+        }
+        KeyspaceConnectionProfile profile = ((KeyspaceDatabase) database).getConnectionProfile();
+        return partitionKey ? profile.getPartitionKeyColumns(statement.getCatalogName(), statement.getTableName())
+                : profile.getPrimaryKeyColumns(statement.getCatalogName(), statement.getTableName());
+    }
+}
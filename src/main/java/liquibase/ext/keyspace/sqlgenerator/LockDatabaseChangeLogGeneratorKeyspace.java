@@ -2,6 +2,7 @@ package liquibase.ext.keyspace.sqlgenerator;
 
 import liquibase.database.Database;
 import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.lockservice.LockScope;
 import liquibase.sql.Sql;
 import liquibase.sqlgenerator.SqlGeneratorChain;
 import liquibase.sqlgenerator.SqlGeneratorFactory;
@@ -9,8 +10,12 @@ import liquibase.sqlgenerator.core.LockDatabaseChangeLogGenerator;
 import liquibase.statement.core.LockDatabaseChangeLogStatement;
 import liquibase.statement.core.RawSqlStatement;
 
+import java.util.UUID;
+
 public class LockDatabaseChangeLogGeneratorKeyspace extends LockDatabaseChangeLogGenerator {
 
+    private static final String INSTANCE = UUID.randomUUID().toString().substring(0, 8);
+
     @Override
     public int getPriority() {
         return PRIORITY_DATABASE;
@@ -24,9 +29,17 @@ public class LockDatabaseChangeLogGeneratorKeyspace extends LockDatabaseChangeLo
     @Override
     public Sql[] generateSql(LockDatabaseChangeLogStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
         RawSqlStatement updateStatement = new RawSqlStatement("UPDATE " +
-                database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), "databasechangeloglock") +
-                " SET LOCKED = TRUE, LOCKEDBY = '" + hostname + " (" + hostaddress + ")" + "', LOCKGRANTED = " + System.currentTimeMillis() + " WHERE ID = 1");
+                database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogLockTableName()) +
+                " SET LOCKED = TRUE, LOCKEDBY = '" + getLockedBy() + "', LOCKGRANTED = " + System.currentTimeMillis() + " WHERE ID = " + LockScope.currentLockId() + " IF LOCKED = FALSE");
         return SqlGeneratorFactory.getInstance().generateSql(updateStatement, database);
     }
 
+    /**
+     * @return the LOCKEDBY value identifying this host and process, so two processes on the same host don't take
+     * each other's lock for their own, and the {@link LockScope} it is taken for
+     */
+    public static String getLockedBy() {
+        return LockScope.lockedBy(hostname + " (" + hostaddress + ") #" + INSTANCE, LockScope.current());
+    }
+
 }
@@ -0,0 +1,35 @@
+package liquibase.ext.keyspace.sqlgenerator;
+
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.statement.RangeModifyDataStatement;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.sqlgenerator.core.AbstractSqlGenerator;
+
+/**
+ * Dummy SQL generator for {@link RangeModifyDataStatement}, which executes itself.
+ */
+public class RangeModifyDataGeneratorKeyspace extends AbstractSqlGenerator<RangeModifyDataStatement> {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(RangeModifyDataStatement statement, Database database) {
+        return database instanceof KeyspaceDatabase;
+    }
+
+    @Override
+    public ValidationErrors validate(RangeModifyDataStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        return new ValidationErrors();
+    }
+
+    @Override
+    public Sql[] generateSql(RangeModifyDataStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        return EMPTY_SQL;
+    }
+}
@@ -1,14 +1,19 @@
 package liquibase.ext.keyspace.sqlgenerator;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Date;
+import java.util.List;
 
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.RanChangeSet;
 import liquibase.database.Database;
 import liquibase.database.ObjectQuotingStrategy;
 import liquibase.datatype.DataTypeFactory;
 import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.changelog.ChangeLogLayout;
+import liquibase.ext.keyspace.changelog.KeyspaceHistoryReader;
 import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.ext.keyspace.lockservice.LockScope;
 import liquibase.sql.Sql;
 import liquibase.sql.UnparsedSql;
 import liquibase.sqlgenerator.SqlGeneratorChain;
@@ -36,32 +41,37 @@ public class TagDatabaseGeneratorKeyspace extends TagDatabaseGenerator {
 			String tagEscaped = DataTypeFactory.getInstance().fromObject(statement.getTag(), database).objectToSql(statement.getTag(), database);
 			
 
-			Statement statement1 = ((KeyspaceDatabase) database).getStatement();
+			if (LockScope.current() != null) {
+				return generateScopedSql(tagEscaped, (KeyspaceDatabase) database, statement, sqlGeneratorChain);
+			}
+
+			if (ChangeLogLayout.of((KeyspaceDatabase) database) == ChangeLogLayout.TIME_ORDERED) {
+				return generateTimeOrderedSql(tagEscaped, (KeyspaceDatabase) database, statement, sqlGeneratorChain);
+			}
+
+			KeyspaceStatementCache statementCache = ((KeyspaceDatabase) database).getStatementCache();
 			//Query to get last executed changeset date
 			String query1 = "SELECT TOUNIXTIMESTAMP(MAX(DATEEXECUTED)) as DATEEXECUTED FROM " + 
-					database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), "databasechangelog");
-			ResultSet rs1 = statement1.executeQuery(query1);
+					database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName());
 			String date = "";
-			while (rs1.next()) {
-				date =  rs1.getString("DATEEXECUTED");
+			for (String dateExecuted : statementCache.query(query1, rs -> rs.getString("DATEEXECUTED"))) {
+				date = dateExecuted;
 			}
-			rs1.close();
 			//Query to get composite key details of last executed change set
 			String query2 = "select id,author, filename from " + 
-					database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), "databasechangelog")
-							+ " where dateexecuted = '"+date+"' ALLOW FILTERING";
-			ResultSet rs2 = statement1.executeQuery(query2);
+					database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName())
+							+ " where dateexecuted = ? ALLOW FILTERING";
 			String id = "", author = "", filename = "";
-			while (rs2.next()) {
-				id = rs2.getString("id");
-				author = rs2.getString("author");
-				filename = rs2.getString("filename");
+			for (String[] key : statementCache.query(query2,
+					rs -> new String[]{rs.getString("id"), rs.getString("author"), rs.getString("filename")},
+					new Date(Long.parseLong(date)))) {
+				id = key[0];
+				author = key[1];
+				filename = key[2];
 			}
-			rs2.close();
-			statement1.close();
 			//Query to update tag 
 			String updateQuery = "UPDATE " 
-					+ database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), "databasechangelog")
+					+ database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName())
 					+ " SET TAG = "+tagEscaped
 					+ " WHERE id = '"+ id +"' and author = '"+ author +"' and filename = '"+ filename+ "'";
 
@@ -71,10 +81,58 @@ public class TagDatabaseGeneratorKeyspace extends TagDatabaseGenerator {
 
 			
 
-		} catch (SQLException | DatabaseException e) {
+		} catch (NumberFormatException | DatabaseException e) {
 			return super.generateSql(statement, database, sqlGeneratorChain);
 		} finally {
 			database.setObjectQuotingStrategy(currentStrategy);
 		}
 	}
+
+	/**
+	 * The latest changeset is the first row of the last bucket, so only that row is read.
+	 */
+	private Sql[] generateTimeOrderedSql(String tagEscaped, KeyspaceDatabase database, TagDatabaseStatement statement,
+			SqlGeneratorChain sqlGeneratorChain) throws DatabaseException {
+		List<RanChangeSet> latest = new KeyspaceHistoryReader(database).readLatest(KeyspaceHistoryReader.KEY_COLUMNS, 1);
+		if (latest.isEmpty()) {
+			return super.generateSql(statement, database, sqlGeneratorChain);
+		}
+		return generateUpdateSql(tagEscaped, database, latest.get(0));
+	}
+
+	/**
+	 * The latest changeset of a {@link LockScope} is the last one its history service knows, the latest row of the
+	 * table may belong to another scope.
+	 */
+	private Sql[] generateScopedSql(String tagEscaped, KeyspaceDatabase database, TagDatabaseStatement statement,
+			SqlGeneratorChain sqlGeneratorChain) throws DatabaseException {
+		List<RanChangeSet> ranChangeSets = ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database).getRanChangeSets();
+		if (ranChangeSets.isEmpty()) {
+			return super.generateSql(statement, database, sqlGeneratorChain);
+		}
+		return generateUpdateSql(tagEscaped, database, ranChangeSets.get(ranChangeSets.size() - 1));
+	}
+
+	private Sql[] generateUpdateSql(String tagEscaped, KeyspaceDatabase database, RanChangeSet ranChangeSet) {
+		String updateQuery = "UPDATE "
+				+ database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName())
+				+ " SET TAG = " + tagEscaped;
+		if (ChangeLogLayout.of(database) == ChangeLogLayout.TIME_ORDERED) {
+			updateQuery += " WHERE BUCKET = " + ChangeLogLayout.bucketOf(ranChangeSet.getOrderExecuted())
+					+ " AND ORDEREXECUTED = " + ranChangeSet.getOrderExecuted()
+					+ " AND FILENAME = ";
+		} else {
+			updateQuery += " WHERE FILENAME = ";
+		}
+		updateQuery += quote(ranChangeSet.getStoredChangeLog(), database)
+				+ " AND ID = " + quote(ranChangeSet.getId(), database)
+				+ " AND AUTHOR = " + quote(ranChangeSet.getAuthor(), database);
+		return new Sql[]{
+			new UnparsedSql(updateQuery)
+		};
+	}
+
+	private static String quote(String value, Database database) {
+		return DataTypeFactory.getInstance().fromObject(value, database).objectToSql(value, database);
+	}
 }
@@ -2,12 +2,13 @@ package liquibase.ext.keyspace.sqlgenerator;
 
 import liquibase.database.Database;
 import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.ext.keyspace.lockservice.LockScope;
 import liquibase.sql.Sql;
 import liquibase.sqlgenerator.SqlGeneratorChain;
 import liquibase.sqlgenerator.SqlGeneratorFactory;
 import liquibase.sqlgenerator.core.UnlockDatabaseChangeLogGenerator;
+import liquibase.statement.core.RawSqlStatement;
 import liquibase.statement.core.UnlockDatabaseChangeLogStatement;
-import liquibase.statement.core.UpdateStatement;
 
 public class UnlockDatabaseChangeLogGeneratorKeyspace extends UnlockDatabaseChangeLogGenerator {
 
@@ -24,12 +25,9 @@ public class UnlockDatabaseChangeLogGeneratorKeyspace extends UnlockDatabaseChan
     @Override
     public Sql[] generateSql(UnlockDatabaseChangeLogStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
 
-        UpdateStatement releaseStatement = new UpdateStatement(database.getLiquibaseCatalogName(), null,
-                database.getDatabaseChangeLogLockTableName());
-        releaseStatement.addNewColumnValue("LOCKED", false);
-        releaseStatement.addNewColumnValue("LOCKEDBY", null);
-        releaseStatement.setWhereClause(database.escapeColumnName(database.getLiquibaseCatalogName(), null,
-                database.getDatabaseChangeLogTableName(), "ID") + " = 1");
+        RawSqlStatement releaseStatement = new RawSqlStatement("UPDATE " +
+                database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogLockTableName()) +
+                " SET LOCKED = FALSE, LOCKEDBY = null WHERE ID = " + LockScope.currentLockId() + " IF LOCKED = TRUE");
 
         return SqlGeneratorFactory.getInstance().generateSql(releaseStatement, database);
     }
@@ -0,0 +1,30 @@
+package liquibase.ext.keyspace.statement;
+
+import liquibase.database.PreparedStatementFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.change.CopyTableDataChange;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.statement.AbstractSqlStatement;
+
+/**
+ * Runs a {@link CopyTableDataChange} by scanning the source table, there is no CQL statement for it.
+ */
+public class CopyTableDataStatement extends AbstractSqlStatement implements SharedConnectionStatement {
+
+    private final CopyTableDataChange change;
+    private final KeyspaceDatabase database;
+
+    public CopyTableDataStatement(CopyTableDataChange change, KeyspaceDatabase database) {
+        this.change = change;
+        this.database = database;
+    }
+
+    public CopyTableDataChange getChange() {
+        return change;
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        change.copy(database);
+    }
+}
@@ -0,0 +1,67 @@
+package liquibase.ext.keyspace.statement;
+
+import liquibase.ext.keyspace.change.CreateTableChangeKeyspace;
+import liquibase.statement.core.CreateTableStatement;
+
+/**
+ * CREATE TABLE with the AWS Keyspace table options of a {@link CreateTableChangeKeyspace}.
+ */
+public class CreateTableStatementKeyspace extends CreateTableStatement {
+
+    private String capacityMode;
+    private Integer readCapacityUnits;
+    private Integer writeCapacityUnits;
+    private Integer defaultTimeToLive;
+    private Boolean pointInTimeRecovery;
+
+    public CreateTableStatementKeyspace(String catalogName, String schemaName, String tableName, String remarks, String tableType) {
+        super(catalogName, schemaName, tableName, remarks, tableType);
+    }
+
+    public String getCapacityMode() {
+        return capacityMode;
+    }
+
+    public void setCapacityMode(String capacityMode) {
+        this.capacityMode = capacityMode;
+    }
+
+    public Integer getReadCapacityUnits() {
+        return readCapacityUnits;
+    }
+
+    public void setReadCapacityUnits(Integer readCapacityUnits) {
+        this.readCapacityUnits = readCapacityUnits;
+    }
+
+    public Integer getWriteCapacityUnits() {
+        return writeCapacityUnits;
+    }
+
+    public void setWriteCapacityUnits(Integer writeCapacityUnits) {
+        this.writeCapacityUnits = writeCapacityUnits;
+    }
+
+    public Integer getDefaultTimeToLive() {
+        return defaultTimeToLive;
+    }
+
+    public void setDefaultTimeToLive(Integer defaultTimeToLive) {
+        this.defaultTimeToLive = defaultTimeToLive;
+    }
+
+    public Boolean getPointInTimeRecovery() {
+        return pointInTimeRecovery;
+    }
+
+    public void setPointInTimeRecovery(Boolean pointInTimeRecovery) {
+        this.pointInTimeRecovery = pointInTimeRecovery;
+    }
+
+    /**
+     * @return true if any table option is set
+     */
+    public boolean hasTableOptions() {
+        return capacityMode != null || defaultTimeToLive != null || pointInTimeRecovery != null;
+    }
+}
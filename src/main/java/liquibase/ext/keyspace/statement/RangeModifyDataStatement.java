@@ -0,0 +1,31 @@
+package liquibase.ext.keyspace.statement;
+
+import liquibase.database.PreparedStatementFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration;
+import liquibase.ext.keyspace.data.KeyspaceRangeModifier;
+import liquibase.statement.AbstractSqlStatement;
+
+/**
+ * Runs a delete or update whose where clause doesn't name the full primary key by scanning the table, see
+ * {@link KeyspaceRangeModifier}, there is no CQL statement for it.
+ */
+public class RangeModifyDataStatement extends AbstractSqlStatement implements SharedConnectionStatement {
+
+    private final KeyspaceRangeModifier modifier;
+
+    public RangeModifyDataStatement(KeyspaceRangeModifier modifier) {
+        this.modifier = modifier;
+    }
+
+    public KeyspaceRangeModifier getModifier() {
+        return modifier;
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        modifier.modify(KeyspaceConfiguration.MODIFY_DATA_TOKEN_RANGES.getCurrentValue(),
+                KeyspaceConfiguration.MODIFY_DATA_PARALLELISM.getCurrentValue(),
+                KeyspaceConfiguration.MODIFY_DATA_WRITE_CAPACITY.getCurrentValue());
+    }
+}
@@ -0,0 +1,31 @@
+package liquibase.ext.keyspace.statement;
+
+import liquibase.database.PreparedStatementFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.change.UpdateTableCapacityChange;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.statement.AbstractSqlStatement;
+
+/**
+ * Records the capacity a table has before an {@link UpdateTableCapacityChange} changes it, which has to be read from
+ * the database when the change runs, there is no CQL statement for it.
+ */
+public class RecordTableCapacityStatement extends AbstractSqlStatement implements SharedConnectionStatement {
+
+    private final UpdateTableCapacityChange change;
+    private final KeyspaceDatabase database;
+
+    public RecordTableCapacityStatement(UpdateTableCapacityChange change, KeyspaceDatabase database) {
+        this.change = change;
+        this.database = database;
+    }
+
+    public UpdateTableCapacityChange getChange() {
+        return change;
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        change.recordCurrentCapacity(database);
+    }
+}
@@ -0,0 +1,12 @@
+package liquibase.ext.keyspace.statement;
+
+import liquibase.ext.keyspace.database.KeyspaceStatementCache;
+import liquibase.statement.ExecutablePreparedStatement;
+
+/**
+ * A statement of the extension which executes itself through the {@link KeyspaceStatementCache}, taking the shared
+ * connection only for a piece of work at a time, see {@link KeyspaceStatementCache#withConnection}. It may hand its
+ * work to background threads and wait for them, so it must not run while the connection is held.
+ */
+public interface SharedConnectionStatement extends ExecutablePreparedStatement {
+}
@@ -0,0 +1,31 @@
+package liquibase.ext.keyspace.statement;
+
+import liquibase.database.PreparedStatementFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.ext.keyspace.change.LoadDataChangeKeyspace;
+import liquibase.ext.keyspace.database.KeyspaceDatabase;
+import liquibase.statement.AbstractSqlStatement;
+
+/**
+ * Runs a {@link LoadDataChangeKeyspace} by streaming its CSV file, instead of turning every row into a statement up
+ * front.
+ */
+public class StreamingLoadDataStatement extends AbstractSqlStatement implements SharedConnectionStatement {
+
+    private final LoadDataChangeKeyspace change;
+    private final KeyspaceDatabase database;
+
+    public StreamingLoadDataStatement(LoadDataChangeKeyspace change, KeyspaceDatabase database) {
+        this.change = change;
+        this.database = database;
+    }
+
+    public LoadDataChangeKeyspace getChange() {
+        return change;
+    }
+
+    @Override
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        change.load(database);
+    }
+}
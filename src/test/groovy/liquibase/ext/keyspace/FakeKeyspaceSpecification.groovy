@@ -0,0 +1,121 @@
+package liquibase.ext.keyspace
+
+import liquibase.database.jvm.JdbcConnection
+import liquibase.ext.keyspace.database.KeyspaceDatabase
+import spock.lang.Specification
+
+import java.sql.*
+
+/**
+ * Base of specs which run against a {@link KeyspaceDatabase} whose connection answers every CQL statement from a
+ * closure instead of a cluster. The keyspace is "ks".
+ */
+abstract class FakeKeyspaceSpecification extends Specification {
+
+    /**
+     * Every CQL statement run on the fake connection, with its bound parameters, in the order they ran.
+     */
+    List<List> executed = Collections.synchronizedList([])
+
+    /**
+     * The fetch size set on every plain statement, in the order they were set.
+     */
+    List<Integer> fetchSizes = Collections.synchronizedList([])
+
+    /**
+     * @param answer called with the CQL and the bound parameters of every statement, returns the rows as maps keyed
+     * by lower case column name, or throws an SQLException
+     */
+    KeyspaceDatabase fakeDatabase(Closure<List<Map<String, ?>>> answer) {
+        def connection = Stub(Connection) {
+            prepareStatement(_ as String) >> { String cql -> preparedStatement(cql, answer) }
+            createStatement() >> { plainStatement(answer) }
+            getAutoCommit() >> true
+            isClosed() >> false
+            getWarnings() >> null
+        }
+        def database = new KeyspaceDatabase() {
+            @Override
+            String getKeyspace() {
+                "ks"
+            }
+        }
+        database.setConnection(new JdbcConnection(connection))
+        database
+    }
+
+    /**
+     * @return the CQL of every statement run so far which contains the given text
+     */
+    List<String> executedContaining(String text) {
+        executed.collect { it[0] as String }.findAll { it.contains(text) }
+    }
+
+    protected List<Map<String, ?>> run(Closure<List<Map<String, ?>>> answer, String cql, List parameters) {
+        executed << [cql, parameters]
+        answer(cql, parameters) ?: []
+    }
+
+    protected PreparedStatement preparedStatement(String cql, Closure<List<Map<String, ?>>> answer) {
+        Map<Integer, Object> parameters = new TreeMap<>()
+        ResultSet last = null
+        def bind = { int index, Object value -> parameters[index] = value }
+        Stub(PreparedStatement) {
+            setString(_, _) >> { args -> bind(args[0], args[1]) }
+            setInt(_, _) >> { args -> bind(args[0], args[1]) }
+            setLong(_, _) >> { args -> bind(args[0], args[1]) }
+            setBoolean(_, _) >> { args -> bind(args[0], args[1]) }
+            setTimestamp(_, _) >> { args -> bind(args[0], args[1]) }
+            setObject(_, _) >> { args -> bind(args[0], args[1]) }
+            setNull(_, _) >> { args -> bind(args[0], null) }
+            executeQuery() >> { resultSet(run(answer, cql, parameters.values() as List)) }
+            executeUpdate() >> { run(answer, cql, parameters.values() as List); 1 }
+            execute() >> {
+                def rows = run(answer, cql, parameters.values() as List)
+                last = resultSet(rows)
+                !rows.isEmpty()
+            }
+            getResultSet() >> { last }
+            isClosed() >> false
+            getWarnings() >> null
+        }
+    }
+
+    protected Statement plainStatement(Closure<List<Map<String, ?>>> answer) {
+        ResultSet last = null
+        Stub(Statement) {
+            executeQuery(_ as String) >> { String cql -> resultSet(run(answer, cql, [])) }
+            executeUpdate(_ as String) >> { String cql -> run(answer, cql, []); 1 }
+            execute(_ as String) >> { String cql ->
+                def rows = run(answer, cql, [])
+                last = resultSet(rows)
+                !rows.isEmpty()
+            }
+            setFetchSize(_) >> { int size -> fetchSizes << size }
+            getResultSet() >> { last }
+            getUpdateCount() >> -1
+            getMoreResults() >> false
+            getWarnings() >> null
+            isClosed() >> false
+        }
+    }
+
+    protected ResultSet resultSet(List<Map<String, ?>> rows) {
+        int index = -1
+        def value = { column -> column instanceof Integer ? rows[index].values().toList()[column - 1] : rows[index][column.toLowerCase()] }
+        Stub(ResultSet) {
+            next() >> { ++index < rows.size() }
+            getObject(_) >> { args -> value(args[0]) }
+            getString(_) >> { args -> value(args[0])?.toString() }
+            getInt(_) >> { args -> (value(args[0]) ?: 0) as int }
+            getLong(_) >> { args -> (value(args[0]) ?: 0) as long }
+            getBoolean(_) >> { args -> value(args[0]) as boolean }
+            getTimestamp(_) >> { args -> def date = value(args[0]); date == null ? null : new Timestamp(date.time) }
+            getMetaData() >> Stub(ResultSetMetaData) {
+                getColumnCount() >> { rows[index].size() }
+                getColumnLabel(_) >> { int column -> rows[index].keySet().toList()[column - 1] }
+            }
+            getWarnings() >> null
+        }
+    }
+}
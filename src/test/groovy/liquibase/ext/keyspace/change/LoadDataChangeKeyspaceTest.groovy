@@ -0,0 +1,69 @@
+package liquibase.ext.keyspace.change
+
+import liquibase.util.csv.CSVReader
+import spock.lang.Specification
+
+class LoadDataChangeKeyspaceTest extends Specification {
+
+    private static List<List<String>> readAll(CSVReader reader) {
+        def rows = []
+        String[] row
+        while ((row = reader.readNext()) != null) {
+            rows << (row as List)
+        }
+        rows
+    }
+
+    def "every chunk is read as a file of its own, starting with the header"() {
+        given:
+        def csv = new CSVReader(new StringReader("id,name\n1,a\n2,b\n3,c\n4,d\n5,e\n"))
+        def headers = csv.readNext()
+        def chunk = new LoadDataChangeKeyspace.ChunkReader(csv, headers, 2)
+        def chunks = []
+
+        when:
+        while (chunk.nextChunk()) {
+            chunks << readAll(chunk)
+        }
+
+        then:
+        chunks == [
+                [["id", "name"], ["1", "a"], ["2", "b"]],
+                [["id", "name"], ["3", "c"], ["4", "d"]],
+                [["id", "name"], ["5", "e"]]]
+    }
+
+    def "a file which ends with a full chunk has no empty chunk after it"() {
+        given:
+        def csv = new CSVReader(new StringReader("id\n1\n2\n"))
+        def chunk = new LoadDataChangeKeyspace.ChunkReader(csv, csv.readNext(), 2)
+
+        expect:
+        chunk.nextChunk()
+        readAll(chunk) == [["id"], ["1"], ["2"]]
+        !chunk.nextChunk()
+    }
+
+    def "a file without rows has no chunks"() {
+        given:
+        def csv = new CSVReader(new StringReader("id\n"))
+
+        expect:
+        !new LoadDataChangeKeyspace.ChunkReader(csv, csv.readNext(), 10).nextChunk()
+    }
+
+    def "closing a chunk leaves the file open"() {
+        given:
+        def csv = new CSVReader(new StringReader("id\n1\n2\n"))
+        def chunk = new LoadDataChangeKeyspace.ChunkReader(csv, csv.readNext(), 1)
+
+        when:
+        chunk.nextChunk()
+        readAll(chunk)
+        chunk.close()
+
+        then:
+        chunk.nextChunk()
+        readAll(chunk) == [["id"], ["2"]]
+    }
+}
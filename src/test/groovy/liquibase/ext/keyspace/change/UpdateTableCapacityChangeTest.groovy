@@ -0,0 +1,116 @@
+package liquibase.ext.keyspace.change
+
+import liquibase.Scope
+import liquibase.changelog.ChangeSet
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+import liquibase.ext.keyspace.database.KeyspaceDatabase
+import liquibase.ext.keyspace.statement.RecordTableCapacityStatement
+import liquibase.logging.core.BufferedLogService
+import liquibase.statement.core.RawSqlStatement
+
+import java.sql.SQLException
+import java.util.logging.Level
+
+class UpdateTableCapacityChangeTest extends FakeKeyspaceSpecification {
+
+    def "capacity units switch to provisioned capacity"() {
+        given:
+        def change = new UpdateTableCapacityChange(tableName: "orders", readCapacityUnits: 100, writeCapacityUnits: 2000)
+
+        expect:
+        change.validate(new KeyspaceDatabase()).errorMessages.empty
+        change.capacity.getAlterTableCql("ks", "orders") == "ALTER TABLE ks.orders WITH CUSTOM_PROPERTIES = " +
+                "{'capacity_mode': {'throughput_mode': 'PROVISIONED', 'read_capacity_units': 100, 'write_capacity_units': 2000}}"
+    }
+
+    def "on demand capacity has no capacity units"() {
+        given:
+        def change = new UpdateTableCapacityChange(tableName: "orders", capacityMode: "pay_per_request")
+
+        expect:
+        change.validate(new KeyspaceDatabase()).errorMessages.empty
+        change.capacity.getAlterTableCql("ks", "orders") == "ALTER TABLE ks.orders WITH CUSTOM_PROPERTIES = " +
+                "{'capacity_mode': {'throughput_mode': 'PAY_PER_REQUEST'}}"
+    }
+
+    def "a capacity is required"() {
+        expect:
+        !new UpdateTableCapacityChange(tableName: "orders").validate(new KeyspaceDatabase()).errorMessages.empty
+        !new UpdateTableCapacityChange(tableName: "orders", capacityMode: "PROVISIONED", readCapacityUnits: 5)
+                .validate(new KeyspaceDatabase()).errorMessages.empty
+    }
+
+    def "generating the statements reads nothing from the database"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters -> [] }
+        def change = new UpdateTableCapacityChange(tableName: "orders", capacityMode: "PAY_PER_REQUEST")
+
+        when:
+        def statements = change.generateStatements(database)
+
+        then:
+        statements[0] instanceof RecordTableCapacityStatement
+        (statements[1] as RawSqlStatement).sql.startsWith("ALTER TABLE ks.orders")
+        executed.isEmpty()
+    }
+
+    def "the capacity the table has when the change runs is recorded"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.contains("FROM system_schema_mcs.keyspaces")) {
+                return [[keyspace_name: "ks"]]
+            }
+            if (cql.contains("FROM system_schema_mcs.tables")) {
+                return [[custom_properties: [capacity_mode: [throughput_mode: "provisioned", read_capacity_units: "10",
+                                                             write_capacity_units: 20]]]]
+            }
+            if (cql.contains("FROM system_schema.tables")) {
+                return [[table_name: parameters[1]]]
+            }
+            []
+        }
+
+        when:
+        new UpdateTableCapacityChange(tableName: "Orders", capacityMode: "PAY_PER_REQUEST").recordCurrentCapacity(database)
+
+        then:
+        executedContaining("INSERT INTO ks.databasechangelog_capacity") == ["INSERT INTO ks.databasechangelog_capacity " +
+                "(TABLE_NAME, CHANGESET, CAPACITY_MODE, READ_CAPACITY_UNITS, WRITE_CAPACITY_UNITS) VALUES ('orders', '', 'PROVISIONED', 10, 20)"]
+    }
+
+    def "nothing is recorded when the capacity can't be read"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.contains("system_schema_mcs")) {
+                throw new SQLException("keyspace system_schema_mcs does not exist")
+            }
+            []
+        }
+
+        when:
+        new UpdateTableCapacityChange(tableName: "orders", capacityMode: "PAY_PER_REQUEST").recordCurrentCapacity(database)
+
+        then:
+        executedContaining("databasechangelog_capacity").isEmpty()
+    }
+
+    def "the warning about a capacity which can't be read names the table and the changeset"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.contains("system_schema_mcs")) {
+                throw new SQLException("keyspace system_schema_mcs does not exist")
+            }
+            []
+        }
+        def change = new UpdateTableCapacityChange(tableName: "orders", capacityMode: "PAY_PER_REQUEST")
+        change.setChangeSet(new ChangeSet("capacity", "alice", false, false, "db/changelog.xml", null, null, null))
+        def logService = new BufferedLogService()
+
+        when:
+        Scope.child([(Scope.Attr.logService.name()): logService], { change.recordCurrentCapacity(database) } as Scope.ScopedRunner)
+
+        then:
+        logService.getLogAsString(Level.WARNING).contains("Could not read the capacity of orders, "
+                + "rolling back db/changelog.xml::capacity::alice won't be possible")
+    }
+}
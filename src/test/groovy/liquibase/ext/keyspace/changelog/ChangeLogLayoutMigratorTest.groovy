@@ -0,0 +1,141 @@
+package liquibase.ext.keyspace.changelog
+
+import liquibase.Scope
+import liquibase.exception.DatabaseException
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+import liquibase.ext.keyspace.database.KeyspaceDatabase
+
+import java.sql.SQLException
+import java.sql.Timestamp
+
+class ChangeLogLayoutMigratorTest extends FakeKeyspaceSpecification {
+
+    /**
+     * The tables of the fake keyspace by lower case name, with their partition key and rows.
+     */
+    Map<String, List<String>> partitionKeys = [:]
+    Map<String, List<Map<String, Object>>> tables = [:]
+
+    /**
+     * Rows of this id are lost when they are inserted into the staging table.
+     */
+    String lostId
+
+    def "a classic table is migrated to the time ordered layout"() {
+        given:
+        classicTable()
+
+        when:
+        def migrated = migrate()
+
+        then:
+        migrated
+        partitionKeys.databasechangelog == ["bucket"]
+        tables.databasechangelog*.id.sort() == ["1", "2", "3"]
+        tables.databasechangelog.find { it.id == "3" }.bucket == 1
+        tables.databasechangelog.find { it.id == "3" }.orderexecuted == 1000
+        // only tags keep their description in the row
+        tables.databasechangelog.collectEntries { [it.id, it.description] } == ["1": null, "2": "tagDatabase", "3": null]
+        tables.databasechangelog_details.collectEntries { [it.id, it.description] } == ["1": "createTable", "2": "tagDatabase", "3": "addColumn"]
+        !tables.containsKey("databasechangelog_migration")
+    }
+
+    def "a migration interrupted after the drop resumes from the staging table"() {
+        given:
+        partitionKeys.databasechangelog_migration = ["bucket"]
+        tables.databasechangelog_migration = [row("1", 1, "createTable") + [bucket: 0], row("2", 2, "tagDatabase") + [bucket: 0]]
+
+        when:
+        def migrated = migrate()
+
+        then:
+        migrated
+        partitionKeys.databasechangelog == ["bucket"]
+        tables.databasechangelog*.id.sort() == ["1", "2"]
+        !tables.containsKey("databasechangelog_migration")
+    }
+
+    def "rows missing from the staging table stop the migration before anything is dropped"() {
+        given:
+        classicTable()
+        lostId = "2"
+
+        when:
+        migrate()
+
+        then:
+        def e = thrown(DatabaseException)
+        e.message.contains("found 2")
+        partitionKeys.databasechangelog == ["id"]
+        tables.databasechangelog.size() == 3
+        executedContaining("DROP TABLE").isEmpty()
+    }
+
+    def "nothing is migrated in the classic layout"() {
+        given:
+        classicTable()
+
+        expect:
+        !new ChangeLogLayoutMigrator(keyspace()).migrateIfNeeded()
+        tables.databasechangelog.size() == 3
+    }
+
+    private boolean migrate() {
+        Scope.child(["liquibase.keyspace.changeLogLayout": "timeOrdered"], {
+            new ChangeLogLayoutMigrator(keyspace()).migrateIfNeeded()
+        } as Scope.ScopedRunnerWithReturn)
+    }
+
+    private void classicTable() {
+        partitionKeys.databasechangelog = ["id"]
+        tables.databasechangelog = [row("1", 1, "createTable"), row("2", 2, "tagDatabase"), row("3", 1000, "addColumn")]
+    }
+
+    private static Map<String, Object> row(String id, int orderExecuted, String description) {
+        [filename: "changelog.xml", id: id, author: "me", orderexecuted: orderExecuted, description: description,
+         dateexecuted: new Timestamp(orderExecuted), exectype: "EXECUTED", comments: "comment " + id]
+    }
+
+    /**
+     * @return a database on a keyspace which only knows the statements the migrator runs, without system_schema_mcs
+     */
+    private KeyspaceDatabase keyspace() {
+        fakeDatabase { String cql, List parameters ->
+            def matcher
+            if (cql.contains("system_schema_mcs")) {
+                throw new SQLException("keyspace system_schema_mcs does not exist")
+            }
+            if (cql.contains("FROM system_schema.tables")) {
+                return tables.containsKey(parameters[1]) ? [[table_name: parameters[1]]] : []
+            }
+            if (cql.contains("FROM system_schema.columns")) {
+                def columns = partitionKeys[parameters[1]] ?: []
+                return columns.withIndex().collect { column, position -> [column_name: column, kind: "partition_key", position: position] }
+            }
+            if ((matcher = cql =~ /^CREATE TABLE IF NOT EXISTS \w+\.(\w+)/)) {
+                def table = matcher[0][1].toLowerCase()
+                if (!tables.containsKey(table)) {
+                    tables[table] = []
+                    partitionKeys[table] = cql.contains("(BUCKET)") ? ["bucket"] : ["id"]
+                }
+            } else if ((matcher = cql =~ /^DROP TABLE IF EXISTS \w+\.(\w+)/)) {
+                tables.remove(matcher[0][1].toLowerCase())
+                partitionKeys.remove(matcher[0][1].toLowerCase())
+            } else if ((matcher = cql =~ /^TRUNCATE \w+\.(\w+)/)) {
+                tables[matcher[0][1].toLowerCase()].clear()
+            } else if ((matcher = cql =~ /^INSERT INTO \w+\.(\w+) \(([^)]*)\)/)) {
+                def table = matcher[0][1].toLowerCase()
+                Map<String, Object> inserted = [matcher[0][2].split(",")*.trim()*.toLowerCase(), parameters].transpose().collectEntries()
+                if (table == "databasechangelog_migration" && inserted.id == lostId) {
+                    return []
+                }
+                tables[table].removeAll { it.filename == inserted.filename && it.id == inserted.id && it.author == inserted.author }
+                tables[table] << inserted
+            } else if ((matcher = cql =~ /^SELECT (.*) FROM \w+\.(\w+)$/)) {
+                def columns = matcher[0][1].split(",")*.trim()*.toLowerCase()
+                return tables[matcher[0][2].toLowerCase()].collect { stored -> columns.collectEntries { [it, stored[it]] } }
+            }
+            []
+        }
+    }
+}
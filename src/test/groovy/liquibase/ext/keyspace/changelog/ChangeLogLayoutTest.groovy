@@ -0,0 +1,35 @@
+package liquibase.ext.keyspace.changelog
+
+import liquibase.Scope
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ChangeLogLayoutTest extends Specification {
+
+    @Unroll
+    def "bucketOf #orderExecuted"() {
+        expect:
+        ChangeLogLayout.bucketOf(orderExecuted) == expected
+
+        where:
+        orderExecuted | expected
+        null          | 0
+        -1            | 0
+        1             | 0
+        999           | 0
+        1000          | 1
+        2500          | 2
+    }
+
+    @Unroll
+    def "configured #value"() {
+        expect:
+        Scope.child(["liquibase.keyspace.changeLogLayout": value], { ChangeLogLayout.configured() } as Scope.ScopedRunnerWithReturn) == expected
+
+        where:
+        value          | expected
+        "classic"      | ChangeLogLayout.CLASSIC
+        "timeOrdered"  | ChangeLogLayout.TIME_ORDERED
+        "TIME_ORDERED" | ChangeLogLayout.TIME_ORDERED
+    }
+}
@@ -1,6 +1,64 @@
 package liquibase.ext.keyspace.changelog
 
-import spock.lang.Specification
+import liquibase.Scope
+import liquibase.exception.DatabaseException
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
 
-class KeyspaceChangeLogHistoryServiceTest extends Specification {
+import java.sql.SQLException
+
+class KeyspaceChangeLogHistoryServiceTest extends FakeKeyspaceSpecification {
+
+    def "scoped deployments take ORDEREXECUTED in blocks from the counter table"() {
+        given:
+        def counter = 250
+        def historyService = new KeyspaceChangeLogHistoryService()
+        historyService.setDatabase(fakeDatabase { String cql, List parameters ->
+            if (cql.contains("FROM system_schema.tables")) {
+                return [[table_name: "databasechangelog_counter"]]
+            }
+            if (cql.startsWith("INSERT INTO ks.databasechangelog_counter")) {
+                // another scope created the counter already
+                return [["[applied]": false, name: "orderexecuted", next_value: counter]]
+            }
+            if (cql.startsWith("UPDATE ks.databasechangelog_counter")) {
+                def applied = parameters[2] == counter
+                counter = applied ? parameters[0] : counter
+                return [["[applied]": applied, next_value: counter]]
+            }
+            []
+        })
+
+        when:
+        def values = Scope.child(["liquibase.keyspace.lockScope": "db/orders"], {
+            [historyService.getNextSequenceValue(), historyService.getNextSequenceValue()]
+        } as Scope.ScopedRunnerWithReturn)
+
+        then:
+        values == [250, 251]
+        counter == 350
+        executedContaining("databasechangelog_counter").count { it.startsWith("UPDATE") } == 1
+        executedContaining("LOCKEDBY").isEmpty()
+    }
+
+    def "a failed reservation is reported as a database error"() {
+        given:
+        def historyService = new KeyspaceChangeLogHistoryService()
+        historyService.setDatabase(fakeDatabase { String cql, List parameters ->
+            if (cql.contains("FROM system_schema.tables")) {
+                return [[table_name: "databasechangelog_counter"]]
+            }
+            if (cql.contains("databasechangelog_counter")) {
+                throw new SQLException("Unauthorized")
+            }
+            []
+        })
+
+        when:
+        Scope.child(["liquibase.keyspace.lockScope": "db/orders"], {
+            historyService.getNextSequenceValue()
+        } as Scope.ScopedRunnerWithReturn)
+
+        then:
+        thrown(DatabaseException)
+    }
 }
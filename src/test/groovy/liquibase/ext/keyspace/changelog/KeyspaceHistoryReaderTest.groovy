@@ -0,0 +1,161 @@
+package liquibase.ext.keyspace.changelog
+
+import liquibase.Scope
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+import liquibase.ext.keyspace.database.KeyspaceDatabase
+
+import java.sql.SQLTimeoutException
+import java.sql.Timestamp
+
+class KeyspaceHistoryReaderTest extends FakeKeyspaceSpecification {
+
+    /**
+     * @return a database with a time ordered DATABASECHANGELOG holding the given rows by bucket, and the given details
+     */
+    private KeyspaceDatabase timeOrdered(Map<Integer, List<Map>> buckets, List<Map> details = []) {
+        fakeDatabase { String cql, List parameters ->
+            cql = cql.toLowerCase()
+            if (cql.contains("from system_schema.columns")) {
+                return parameters[1] == "databasechangelog" ? [[column_name: "bucket", kind: "partition_key", position: 0]] : []
+            }
+            if (cql.startsWith("select distinct bucket")) {
+                return buckets.keySet().collect { [bucket: it] }
+            }
+            if (cql.contains("from ks.databasechangelog_details")) {
+                return details
+            }
+            if (cql.contains("from ks.databasechangelog where bucket = ?")) {
+                return buckets[parameters[0]] ?: []
+            }
+            if (cql.contains("from ks.databasechangelog")) {
+                return buckets.values().flatten()
+            }
+            []
+        }
+    }
+
+    /**
+     * @return a database with a classic DATABASECHANGELOG holding the given rows
+     */
+    private KeyspaceDatabase classic(List<Map> rows) {
+        fakeDatabase { String cql, List parameters ->
+            cql = cql.toLowerCase()
+            if (cql.contains("from system_schema.columns")) {
+                return parameters[1] == "databasechangelog" ? [[column_name: "id", kind: "partition_key", position: 0]] : []
+            }
+            if (cql.contains("from ks.databasechangelog")) {
+                return rows
+            }
+            []
+        }
+    }
+
+    private static Map row(String id, int orderExecuted, String description = null) {
+        [filename: "changelog.xml", id: id, author: "me", orderexecuted: orderExecuted, description: description,
+         dateexecuted: new Timestamp(orderExecuted), exectype: "EXECUTED"]
+    }
+
+    def "the latest changesets are found behind empty buckets"() {
+        given:
+        def database = timeOrdered([0: [row("1", 1)], 2: [row("3", 2001), row("2", 2000)]])
+
+        when:
+        def latest = new KeyspaceHistoryReader(database).readLatest(KeyspaceHistoryReader.KEY_COLUMNS, 1)
+
+        then:
+        latest*.id == ["3"]
+        executedContaining("WHERE BUCKET = ?").size() == 1
+    }
+
+    def "compact reads of the time ordered layout take the description from the side table"() {
+        given:
+        def database = timeOrdered([0: [row("1", 1), row("2", 2, "tagDatabase")]], [
+                [filename: "changelog.xml", id: "1", author: "me", description: "createTable", comments: "first"],
+                [filename: "changelog.xml", id: "2", author: "me", description: "tagDatabase", comments: null]])
+
+        when:
+        def ranChangeSets = new KeyspaceHistoryReader(database).readRanChangeSets(KeyspaceHistoryReader.COMPACT_COLUMNS)
+
+        then:
+        ranChangeSets*.id == ["1", "2"]
+        ranChangeSets*.description == ["createTable", "tagDatabase"]
+        // not asked for
+        ranChangeSets*.comments == [null, null]
+    }
+
+    def "rows are read page by page with only the columns asked for"() {
+        given:
+        def database = classic([row("1", 1), row("2", 2)])
+        def ids = []
+
+        when:
+        Scope.child(["liquibase.keyspace.historyFetchSize": 50], {
+            new KeyspaceHistoryReader(database).read(KeyspaceHistoryReader.KEY_COLUMNS, { ids.clear() }, { rs -> ids << rs.getString("ID") })
+        } as Scope.ScopedRunner)
+
+        then:
+        ids == ["1", "2"]
+        fetchSizes == [50]
+        executedContaining("FROM ks.DATABASECHANGELOG") == ["SELECT FILENAME, ID, AUTHOR, ORDEREXECUTED FROM ks.DATABASECHANGELOG"]
+    }
+
+    def "a retried read starts over"() {
+        given:
+        def tries = 0
+        def rows = [row("1", 1), row("2", 2)]
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.contains("FROM ks.DATABASECHANGELOG") && ++tries == 1) {
+                throw new SQLTimeoutException("no response")
+            }
+            rows
+        }
+        def restarts = 0
+        def ids = []
+
+        when:
+        new KeyspaceHistoryReader(database).read(KeyspaceHistoryReader.KEY_COLUMNS, { restarts++; ids.clear() }, { rs -> ids << rs.getString("ID") })
+
+        then:
+        restarts == 2
+        ids == ["1", "2"]
+    }
+
+    def "ran changesets are ordered by execution and share repeated values"() {
+        given:
+        def database = classic([row("2", 2) + [contexts: "prod"], row("1", 1) + [contexts: "prod"]].collect {
+            // distinct string instances, as a driver returns them
+            it + [filename: new String("changelog.xml"), author: new String("me")]
+        })
+
+        when:
+        def ranChangeSets = new KeyspaceHistoryReader(database).readRanChangeSets(KeyspaceHistoryReader.COMPACT_COLUMNS)
+
+        then:
+        ranChangeSets*.id == ["1", "2"]
+        ranChangeSets[0].storedChangeLog.is(ranChangeSets[1].storedChangeLog)
+        ranChangeSets[0].author.is(ranChangeSets[1].author)
+        ranChangeSets[0].contextExpression.is(ranChangeSets[1].contextExpression)
+        ranChangeSets*.comments == [null, null]
+    }
+
+    def "pages are read while the connection is held and consumed after it is released"() {
+        given:
+        def database = classic([row("1", 1), row("2", 2), row("3", 3)])
+        def statementCache = database.statementCache
+        def readHeld = []
+        def consumedHeld = []
+        def consumed = []
+
+        when:
+        Scope.child(["liquibase.keyspace.historyFetchSize": 2], {
+            new KeyspaceHistoryReader(database).read(database.databaseChangeLogTableName, KeyspaceHistoryReader.KEY_COLUMNS, {},
+                    { rs -> readHeld << Thread.holdsLock(statementCache); rs.getString("ID") },
+                    { id -> consumedHeld << Thread.holdsLock(statementCache); consumed << id })
+        } as Scope.ScopedRunner)
+
+        then:
+        consumed == ["1", "2", "3"]
+        readHeld == [true, true, true]
+        consumedHeld == [false, false, false]
+    }
+}
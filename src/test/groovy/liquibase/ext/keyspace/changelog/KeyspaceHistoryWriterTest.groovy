@@ -0,0 +1,42 @@
+package liquibase.ext.keyspace.changelog
+
+import liquibase.Scope
+import liquibase.ext.keyspace.database.KeyspaceStatementCache
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.PreparedStatement
+
+class KeyspaceHistoryWriterTest extends Specification {
+
+    def flushesEveryIntervalInBatchesWithoutRepeatedRows() {
+        given:
+        def statements = []
+        def connection = Mock(Connection) {
+            prepareStatement(_ as String) >> { String cql ->
+                def parameters = []
+                Mock(PreparedStatement) {
+                    setString(_, _) >> { int index, String value -> parameters << value }
+                    executeUpdate() >> { statements << [cql, new ArrayList(parameters)]; parameters.clear(); 1 }
+                }
+            }
+        }
+        def statementCache = new KeyspaceStatementCache(connection)
+        def writer = new KeyspaceHistoryWriter({ statementCache })
+
+        when:
+        Scope.child(["liquibase.keyspace.historyFlushInterval": 3], {
+            ["a", "b", "a"].each { id ->
+                writer.add("INSERT INTO t (ID) VALUES (?)", ["t", id], ["t", id], id)
+                writer.changeSetAdded()
+            }
+        } as Scope.ScopedRunner)
+
+        then:
+        statements.size() == 2
+        statements[0] == ["INSERT INTO t (ID) VALUES (?)", ["a"]]
+        statements[1][0].startsWith("BEGIN UNLOGGED BATCH")
+        statements[1][1] == ["a", "b"]
+        writer.isEmpty()
+    }
+}
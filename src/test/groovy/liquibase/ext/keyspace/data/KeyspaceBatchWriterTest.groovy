@@ -0,0 +1,94 @@
+package liquibase.ext.keyspace.data
+
+import liquibase.exception.DatabaseException
+import liquibase.ext.keyspace.database.KeyspaceStatementCache
+import liquibase.ext.keyspace.executor.KeyspaceRetryPolicy
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.SQLException
+import java.sql.Statement
+import java.util.concurrent.atomic.AtomicInteger
+
+class KeyspaceBatchWriterTest extends Specification {
+
+    def "statements are sent one at a time over the shared connection"() {
+        given:
+        def running = new AtomicInteger()
+        def mostRunning = new AtomicInteger()
+        def statement = Stub(Statement) {
+            execute(_) >> {
+                int now = running.incrementAndGet()
+                mostRunning.set(Math.max(mostRunning.get(), now))
+                Thread.sleep(2)
+                running.decrementAndGet()
+                true
+            }
+        }
+        def connection = Stub(Connection) {
+            createStatement() >> statement
+        }
+        def writer = new KeyspaceBatchWriter(new KeyspaceStatementCache(connection), 4, null, new KeyspaceRetryPolicy())
+
+        when:
+        20.times { writer.submit("INSERT INTO ks.t (id) VALUES ($it)", 1) }
+        writer.flush()
+
+        then:
+        writer.written == 20
+        mostRunning.get() == 1
+
+        cleanup:
+        writer.close()
+    }
+
+    def "statements are sent in the order they were submitted"() {
+        given:
+        def sent = Collections.synchronizedList([])
+        def random = new Random(42)
+        def statement = Stub(Statement) {
+            execute(_) >> { String cql ->
+                Thread.sleep(random.nextInt(3))
+                sent << cql
+                true
+            }
+        }
+        def connection = Stub(Connection) {
+            createStatement() >> statement
+        }
+        def writer = new KeyspaceBatchWriter(new KeyspaceStatementCache(connection), 4, null, new KeyspaceRetryPolicy())
+        def submitted = (1..30).collect { "UPDATE ks.t SET v = $it WHERE id = ${it % 3}".toString() }
+
+        when:
+        submitted.each { writer.submit(it, 1) }
+        writer.flush()
+
+        then:
+        sent == submitted
+
+        cleanup:
+        writer.close()
+    }
+
+    def "the first failure is rethrown by the next flush"() {
+        given:
+        def statement = Stub(Statement) {
+            execute(_) >> { throw new SQLException("Invalid column") }
+        }
+        def connection = Stub(Connection) {
+            createStatement() >> statement
+        }
+        def writer = new KeyspaceBatchWriter(new KeyspaceStatementCache(connection), 2, null, new KeyspaceRetryPolicy())
+
+        when:
+        writer.submit("INSERT INTO ks.t (id) VALUES (1)", 1)
+        writer.flush()
+
+        then:
+        thrown(DatabaseException)
+        writer.written == 0
+
+        cleanup:
+        writer.close()
+    }
+}
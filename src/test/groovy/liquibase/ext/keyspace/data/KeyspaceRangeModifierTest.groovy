@@ -0,0 +1,64 @@
+package liquibase.ext.keyspace.data
+
+import liquibase.exception.DatabaseException
+import liquibase.ext.keyspace.database.KeyspaceDatabase
+import liquibase.ext.keyspace.database.KeyspaceStatementCache
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.SQLTimeoutException
+import java.sql.Statement
+
+class KeyspaceRangeModifierTest extends Specification {
+
+    def "where clauses are keyed only if they restrict the full primary key by equality"() {
+        expect:
+        KeyspaceRangeModifier.isKeyed(where, ["id", "ts"]) == keyed
+
+        where:
+        where                                         | keyed
+        "id = 1 AND ts = 2"                           | true
+        "ID IN (1, 2) and \"ts\"=2"                   | true
+        "id = 1"                                      | false
+        "id = 1 AND ts > 2"                           | false
+        "id = 1 AND ts = 2 AND name = 'x'"            | false
+        "name = 'id = 1 AND ts = 2'"                  | false
+        "token(id) > 5 AND ts = 2"                    | false
+        null                                          | false
+    }
+
+    def "where clauses without a known primary key are left alone"() {
+        expect:
+        KeyspaceRangeModifier.isKeyed("name = 'x'", [])
+    }
+
+    def "partition keys restricted by equality are not scanned by token"() {
+        expect:
+        KeyspaceRangeModifier.restricts("id = 1 AND name = 'x'", ["id"])
+        !KeyspaceRangeModifier.restricts("id > 1 AND name = 'x'", ["id"])
+        !KeyspaceRangeModifier.restricts("name = 'x'", ["id"])
+    }
+
+    def "a failed range is only scanned again if the modification can be repeated"() {
+        given:
+        def statement = Mock(Statement)
+        def connection = Mock(Connection) {
+            prepareStatement(_) >> Mock(PreparedStatement)
+            createStatement() >> statement
+        }
+        def modifier = new KeyspaceRangeModifier(new KeyspaceDatabase(), "t", "name = 'x'", modification)
+
+        when:
+        modifier.modifyRange(new KeyspaceStatementCache(connection), "SELECT id FROM ks.t", modification + " WHERE id = ?", 1, 10, null)
+
+        then:
+        scans * statement.executeQuery(_) >> { throw new SQLTimeoutException("Operation timed out") }
+        thrown(DatabaseException)
+
+        where:
+        modification                    | scans
+        "DELETE FROM ks.t"              | 5
+        "UPDATE ks.t SET c = c + 1"     | 1
+    }
+}
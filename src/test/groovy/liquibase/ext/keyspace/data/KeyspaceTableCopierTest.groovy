@@ -0,0 +1,120 @@
+package liquibase.ext.keyspace.data
+
+import liquibase.exception.DatabaseException
+import liquibase.ext.keyspace.change.CopyTableDataChange
+import liquibase.ext.keyspace.database.KeyspaceStatementCache
+import liquibase.ext.keyspace.executor.KeyspaceRetryPolicy
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.Statement
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class KeyspaceTableCopierTest extends Specification {
+
+    def "token ranges cover the whole ring without gaps"() {
+        when:
+        def ranges = KeyspaceTableCopier.split(partitioner, 7)
+
+        then:
+        ranges.size() == 7
+        ranges.first()[0] == min
+        ranges.last()[1] == max
+        (1..<ranges.size()).every { ranges[it][0] == ranges[it - 1][1] && ranges[it][0] < ranges[it][1] }
+
+        where:
+        partitioner                                   | min                                   | max
+        "org.apache.cassandra.dht.Murmur3Partitioner" | BigInteger.valueOf(Long.MIN_VALUE)    | BigInteger.valueOf(Long.MAX_VALUE)
+        "com.amazonaws.cassandra.DefaultPartitioner"  | BigInteger.ONE.negate()               | BigInteger.ONE.shiftLeft(127)
+    }
+
+    def "checkpoints are only resumed from if the ranges are the same"() {
+        given:
+        def ranges = KeyspaceTableCopier.split("org.apache.cassandra.dht.Murmur3Partitioner", 4)
+        def checkpoint = { int range -> [range, ranges[range][0].toString(), ranges[range][1].toString()] as Object[] }
+
+        expect:
+        KeyspaceTableCopier.copiedRanges(ranges, []) == [] as Set
+        KeyspaceTableCopier.copiedRanges(ranges, [checkpoint(0), checkpoint(2)]) == [0, 2] as Set
+
+        when:
+        KeyspaceTableCopier.copiedRanges(KeyspaceTableCopier.split("org.apache.cassandra.dht.Murmur3Partitioner", 8), [checkpoint(1)])
+
+        then:
+        thrown(DatabaseException)
+
+        when:
+        KeyspaceTableCopier.copiedRanges(ranges.subList(0, 2), [checkpoint(3)])
+
+        then:
+        thrown(DatabaseException)
+    }
+
+    def "rows are scanned in batches"() {
+        given:
+        def remaining = 5
+        def rs = Stub(ResultSet) {
+            next() >> { remaining-- > 0 }
+            getObject(_) >> { int column -> "row ${remaining} column ${column}" }
+        }
+        def connection = Stub(Connection) {
+            createStatement() >> Stub(Statement) {
+                executeQuery(_) >> rs
+            }
+        }
+        def batches = []
+
+        when:
+        def rows = KeyspaceTableCopier.scan(new KeyspaceStatementCache(connection), "SELECT a, b FROM ks.t", 2, 2,
+                { batch -> batches << batch.size(); batch.size() } as KeyspaceTableCopier.BatchHandler)
+
+        then:
+        rows == 5
+        batches == [2, 2, 1]
+    }
+
+    def "batches written from several threads use the connection one at a time"() {
+        given:
+        def running = new AtomicInteger()
+        def mostRunning = new AtomicInteger()
+        def preparedStatement = Stub(PreparedStatement) {
+            executeBatch() >> {
+                int now = running.incrementAndGet()
+                mostRunning.set(Math.max(mostRunning.get(), now))
+                Thread.sleep(2)
+                running.decrementAndGet()
+                [1] as int[]
+            }
+        }
+        def connection = Stub(Connection) {
+            prepareStatement(_) >> preparedStatement
+        }
+        def statementCache = new KeyspaceStatementCache(connection)
+        def retryPolicy = new KeyspaceRetryPolicy()
+        def pool = Executors.newFixedThreadPool(4)
+
+        when:
+        def futures = (1..20).collect { row ->
+            pool.submit({
+                KeyspaceTableCopier.write(retryPolicy, statementCache, "INSERT INTO ks.t (id) VALUES (?)", [[row] as Object[]], null)
+            } as Callable)
+        }
+
+        then:
+        futures.sum { it.get() } == 20
+        mostRunning.get() == 1
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+    def "column mappings map target to source columns"() {
+        expect:
+        new CopyTableDataChange(columnMapping: "id, name = full_name,").columnMap == [id: "id", name: "full_name"]
+        new CopyTableDataChange().columnMap == null
+    }
+}
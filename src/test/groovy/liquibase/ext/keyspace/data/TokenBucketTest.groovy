@@ -0,0 +1,67 @@
+package liquibase.ext.keyspace.data
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class TokenBucketTest extends Specification {
+
+    def "a full bucket hands out one second worth of tokens without waiting"() {
+        given:
+        def bucket = new TokenBucket(1000)
+        def start = System.nanoTime()
+
+        when:
+        bucket.acquire(1000)
+
+        then:
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500
+        bucket.availableTokens < 1000
+    }
+
+    def "taking more tokens than are available waits until the debt is paid"() {
+        given:
+        def bucket = new TokenBucket(10)
+        bucket.acquire(10)
+        def start = System.nanoTime()
+
+        when:
+        // 3 tokens more than the bucket holds, 300 ms at 10 per second
+        bucket.acquire(3)
+
+        then:
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250
+        bucket.availableTokens < 1
+    }
+
+    def "requests larger than the bucket still go through"() {
+        given:
+        def bucket = new TokenBucket(100)
+        def start = System.nanoTime()
+
+        when:
+        bucket.acquire(120)
+
+        then:
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150
+    }
+
+    def "the bucket never holds more than one second worth of tokens"() {
+        given:
+        def bucket = new TokenBucket(5)
+
+        when:
+        Thread.sleep(50)
+
+        then:
+        bucket.availableTokens == 5
+    }
+
+    def "the rate must be positive"() {
+        when:
+        new TokenBucket(0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,65 @@
+package liquibase.ext.keyspace.database
+
+import liquibase.change.core.AddColumnChange
+import liquibase.change.core.CreateTableChange
+import liquibase.change.core.DropTableChange
+import liquibase.change.core.InsertDataChange
+import liquibase.change.core.RawSQLChange
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration
+import liquibase.Scope
+import spock.lang.Specification
+
+import static liquibase.ext.keyspace.database.TableReadinessBarrier.PendingState.*
+
+class ChangeTableNamesTest extends Specification {
+
+    def "CQL is parsed into the tables it touches and the state DDL sends them into"() {
+        expect:
+        ChangeTableNames.parseCql([
+                "CREATE TABLE IF NOT EXISTS ks.Orders (id int PRIMARY KEY)",
+                "alter table \"Items\" ADD name text",
+                "  ",
+                "DROP TABLE ks.old",
+                "INSERT INTO ks.orders (id) VALUES (1)",
+                "UPDATE customers SET name = 'a' WHERE id = 1",
+                "DELETE name FROM ks.customers WHERE id = 1",
+                "CREATE INDEX ON ks.invoices (customer)",
+                "CREATE INDEX IF NOT EXISTS by_customer ON ks.invoices (customer)",
+        ] as String[], "ks") == [orders: CREATING, Items: UPDATING, old: DELETING, customers: null, invoices: null]
+    }
+
+    def "statements which are not understood make the tables unknown"() {
+        expect:
+        ChangeTableNames.parseCql(["CREATE TABLE ks.orders (id int PRIMARY KEY)", "CREATE TYPE ks.address (street text)"] as String[], "ks") == null
+    }
+
+    def "the later DDL on a table wins over DML"() {
+        expect:
+        ChangeTableNames.parseCql(["INSERT INTO ks.orders (id) VALUES (1)", "ALTER TABLE ks.orders ADD name text"] as String[], "ks") ==
+                [orders: UPDATING]
+        ChangeTableNames.parseCql(["ALTER TABLE ks.orders ADD name text", "INSERT INTO ks.orders (id) VALUES (1)"] as String[], "ks") ==
+                [orders: UPDATING]
+    }
+
+    def "rolling back DDL sends the table into the opposite state"() {
+        expect:
+        ChangeTableNames.ddlOf(new CreateTableChange(tableName: "Orders"), "ks") == [orders: CREATING]
+        ChangeTableNames.rollbackDdlOf(new CreateTableChange(tableName: "Orders"), "ks") == [orders: DELETING]
+        ChangeTableNames.rollbackDdlOf(new DropTableChange(tableName: "orders"), "ks") == [orders: CREATING]
+        ChangeTableNames.rollbackDdlOf(new AddColumnChange(tableName: "orders"), "ks") == [orders: UPDATING]
+        ChangeTableNames.rollbackDdlOf(new InsertDataChange(tableName: "orders"), "ks").isEmpty()
+    }
+
+    def "tables of another keyspace are qualified by it"() {
+        expect:
+        ChangeTableNames.parseCql(["CREATE TABLE other.orders (id int PRIMARY KEY)", "DROP TABLE KS.items",
+                                   "ALTER TABLE \"Other\".\"Items\" ADD name text"] as String[], "ks") ==
+                ["other.orders": CREATING, items: DELETING, "Other.Items": UPDATING]
+        ChangeTableNames.ddlOf(new CreateTableChange(catalogName: "Other", tableName: "Orders"), "ks") == ["other.orders": CREATING]
+        ChangeTableNames.ddlOf(new CreateTableChange(catalogName: "ks", tableName: "Orders"), "ks") == [orders: CREATING]
+        ChangeTableNames.of(new DropTableChange(catalogName: "other", tableName: "orders"), "ks") == ["other.orders"] as Set
+        Scope.child([(KeyspaceConfiguration.PARALLEL_DDL.key): true], {
+            ChangeTableNames.of(new RawSQLChange("DROP TABLE other.orders"), "ks")
+        } as Scope.ScopedRunnerWithReturn) == ["other.orders"] as Set
+    }
+}
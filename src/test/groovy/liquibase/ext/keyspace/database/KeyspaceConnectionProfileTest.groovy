@@ -0,0 +1,47 @@
+package liquibase.ext.keyspace.database
+
+import liquibase.Scope
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+
+import java.sql.SQLException
+import java.sql.SQLTimeoutException
+
+class KeyspaceConnectionProfileTest extends FakeKeyspaceSpecification {
+
+    def "a probe which timed out is not remembered"() {
+        given:
+        def probes = 0
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.contains("system_schema_mcs") && ++probes == 1) {
+                throw new SQLTimeoutException("no response")
+            }
+            [[keyspace_name: "ks"]]
+        }
+        def profile = new KeyspaceConnectionProfile(database, database.connection)
+
+        expect:
+        Scope.child(["liquibase.keyspace.retryMaxAttempts": 1], {
+            // not an AWS Keyspaces endpoint
+            !profile.hasSystemSchemaMcs()
+        } as Scope.ScopedRunnerWithReturn)
+        profile.hasSystemSchemaMcs()
+        profile.hasSystemSchemaMcs()
+        probes == 2
+    }
+
+    def "a missing system_schema_mcs is remembered"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.contains("system_schema_mcs")) {
+                throw new SQLException("keyspace system_schema_mcs does not exist")
+            }
+            []
+        }
+        def profile = new KeyspaceConnectionProfile(database, database.connection)
+
+        expect:
+        !profile.hasSystemSchemaMcs()
+        !profile.hasSystemSchemaMcs()
+        executedContaining("system_schema_mcs").size() == 1
+    }
+}
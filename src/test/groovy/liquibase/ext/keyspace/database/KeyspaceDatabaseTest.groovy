@@ -1,8 +1,17 @@
 package liquibase.ext.keyspace.database
 
-import spock.lang.Specification
+import liquibase.Scope
+import liquibase.change.core.CreateTableChange
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+import liquibase.ext.keyspace.snapshot.KeyspaceSnapshotCache
+import liquibase.structure.core.Column
+import liquibase.structure.core.Schema
+import liquibase.structure.core.Table
+import spock.lang.Unroll
 
-class KeyspaceDatabaseTest extends Specification {
+import java.nio.file.Files
+
+class KeyspaceDatabaseTest extends FakeKeyspaceSpecification {
 
     def getShortName() {
         expect:
@@ -30,4 +39,48 @@ class KeyspaceDatabaseTest extends Specification {
         db.setAutoCommit(false)
         db.isAutoCommit()
     }
+
+    @Unroll
+    def "isLiquibaseObject #tableName"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters -> [] }
+        def table = new Table().setName(tableName).setSchema(new Schema("ks", null))
+
+        expect:
+        database.isLiquibaseObject(table) == expected
+        database.isLiquibaseObject(new Column().setName("id").setRelation(table)) == expected
+
+        where:
+        tableName                     | expected
+        "databasechangelog"           | true
+        "DATABASECHANGELOGLOCK"       | true
+        "databasechangelog_details"   | true
+        "databasechangelog_migration" | true
+        "databasechangelog_capacity"  | true
+        "databasechangelog_copy"      | true
+        "person"                      | false
+        "person_copy"                 | false
+    }
+
+    def "rolling back DDL registers the table with the readiness barrier and drops the cached snapshot"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters -> [] }
+        def directory = Files.createTempDirectory("snapshot-cache")
+        def snapshotCache = new KeyspaceSnapshotCache(directory, 3600)
+        def cluster = database.connection.URL
+        snapshotCache.writeColumns(cluster, "ks", "abc", [])
+
+        when:
+        Scope.child(["liquibase.keyspace.snapshotCacheDirectory": directory.toString()], {
+            database.executeRollbackStatements(new CreateTableChange(tableName: "Orders"), null)
+        } as Scope.ScopedRunner)
+
+        then:
+        executedContaining("DROP TABLE").size() == 1
+        database.tableReadinessBarrier.pendingTables == [orders: TableReadinessBarrier.PendingState.DELETING]
+        snapshotCache.readColumns(cluster, "ks", "abc") == null
+
+        cleanup:
+        directory.toFile().deleteDir()
+    }
 }
@@ -0,0 +1,67 @@
+package liquibase.ext.keyspace.database
+
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.Statement
+
+class KeyspaceStatementCacheTest extends Specification {
+
+    def "prepared statements are reused and evicted least recently used first"() {
+        given:
+        def prepared = ["SELECT 1": Mock(PreparedStatement), "SELECT 2": Mock(PreparedStatement), "SELECT 3": Mock(PreparedStatement)]
+        def connection = Mock(Connection) {
+            prepareStatement(_ as String) >> { String cql -> prepared[cql] }
+        }
+        def cache = new KeyspaceStatementCache(connection, 2)
+
+        when:
+        def first = cache.prepare("SELECT 1")
+        cache.prepare("SELECT 2")
+        def again = cache.prepare("SELECT 1")
+        cache.prepare("SELECT 3")
+
+        then:
+        first.is(again)
+        cache.hits == 1
+        cache.misses == 3
+        cache.evictions == 1
+        1 * prepared["SELECT 2"].close()
+    }
+
+    def "plain statements left open are counted as leaked on close"() {
+        given:
+        def closedStatement = Mock(Statement) {
+            isClosed() >> true
+        }
+        def openStatement = Mock(Statement) {
+            isClosed() >> false
+        }
+        def connection = Mock(Connection) {
+            createStatement() >>> [closedStatement, openStatement]
+        }
+        def cache = new KeyspaceStatementCache(connection)
+
+        when:
+        cache.createStatement()
+        cache.createStatement()
+        cache.close()
+
+        then:
+        cache.leakedStatements == 1
+        1 * openStatement.close()
+    }
+
+    def "conditional updates report whether they were applied"() {
+        expect:
+        KeyspaceStatementCache.isApplied(row) == applied
+
+        where:
+        row                                       | applied
+        [:]                                       | false
+        ["locked": true]                          | false
+        ["[applied]": true]                       | true
+        ["[applied]": false, "lockedby": "other"] | false
+    }
+}
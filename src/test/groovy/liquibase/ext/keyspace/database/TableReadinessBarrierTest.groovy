@@ -0,0 +1,163 @@
+package liquibase.ext.keyspace.database
+
+import liquibase.Scope
+import liquibase.exception.DatabaseException
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class TableReadinessBarrierTest extends FakeKeyspaceSpecification {
+
+    /**
+     * @return a database on AWS Keyspaces whose tables report the given statuses, one list of rows per poll, the last
+     * one repeated
+     */
+    KeyspaceDatabase keyspaces(List<List<Map>> polls, Closure onPoll = {}) {
+        def count = 0
+        fakeDatabase { String cql, List parameters ->
+            if (cql.contains("FROM system_schema_mcs.keyspaces")) {
+                return [[keyspace_name: "ks"]]
+            }
+            if (cql.contains("FROM system_schema_mcs.tables")) {
+                onPoll()
+                return polls[Math.min(count++, polls.size() - 1)]
+            }
+            []
+        }
+    }
+
+    def "tables are polled until they are active"() {
+        given:
+        def database = keyspaces([
+                [[table_name: "a", status: "CREATING"], [table_name: "b", status: "UPDATING"]],
+                [[table_name: "a", status: "ACTIVE"], [table_name: "b", status: "UPDATING"]]])
+        def barrier = new TableReadinessBarrier(database)
+        barrier.register("A", TableReadinessBarrier.PendingState.CREATING)
+        barrier.register("b", TableReadinessBarrier.PendingState.UPDATING)
+
+        when:
+        barrier.await(["a"])
+
+        then:
+        executedContaining("FROM system_schema_mcs.tables").size() == 2
+        !barrier.isPending("a")
+        barrier.isPending("B")
+    }
+
+    def "a table which isn't pending is not polled for"() {
+        given:
+        def barrier = new TableReadinessBarrier(keyspaces([[[table_name: "a", status: "CREATING"]]]))
+        barrier.register("a", TableReadinessBarrier.PendingState.CREATING)
+
+        when:
+        barrier.await(["other"])
+
+        then:
+        executedContaining("FROM system_schema_mcs.tables").isEmpty()
+        barrier.isPending("a")
+    }
+
+    def "tables of another keyspace are polled in their keyspace"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.contains("FROM system_schema_mcs.keyspaces")) {
+                return [[keyspace_name: "ks"]]
+            }
+            if (cql.contains("FROM system_schema_mcs.tables")) {
+                // a table of the same name in the logged keyspace must not settle the other one
+                return parameters[0] == "other" ? [[table_name: "a", status: "ACTIVE"]]
+                        : [[table_name: "a", status: "CREATING"], [table_name: "b", status: "DELETING"]]
+            }
+            []
+        }
+        def barrier = new TableReadinessBarrier(database)
+        barrier.register("Other.A", TableReadinessBarrier.PendingState.CREATING)
+        barrier.register("ks.b", TableReadinessBarrier.PendingState.DELETING)
+
+        when:
+        barrier.await(["other.a"])
+
+        then:
+        executed.findAll { it[0].contains("FROM system_schema_mcs.tables") }*.get(1) == [["other"], ["ks"]]
+        !barrier.isPending("other.a")
+        barrier.pendingTables == [b: TableReadinessBarrier.PendingState.DELETING]
+        barrier.isPending("KS.B")
+    }
+
+    def "a deleted table settles once it is gone"() {
+        given:
+        def barrier = new TableReadinessBarrier(keyspaces([[[table_name: "a", status: "DELETING"]], []]))
+        barrier.register("a", TableReadinessBarrier.PendingState.DELETING)
+
+        when:
+        barrier.awaitAll()
+
+        then:
+        executedContaining("FROM system_schema_mcs.tables").size() == 2
+        !barrier.hasPendingTables()
+    }
+
+    def "tables which don't settle in time fail the wait and stay pending"() {
+        given:
+        def barrier = new TableReadinessBarrier(keyspaces([[[table_name: "a", status: "CREATING"]]]))
+        barrier.register("a", TableReadinessBarrier.PendingState.CREATING)
+
+        when:
+        Scope.child(["liquibase.keyspace.tableReadinessTimeout": 0L], { barrier.awaitAll() } as Scope.ScopedRunner)
+
+        then:
+        def e = thrown(DatabaseException)
+        e.message.contains("did not settle")
+        barrier.isPending("a")
+    }
+
+    def "without system_schema_mcs nothing is waited for"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.contains("system_schema_mcs")) {
+                throw new java.sql.SQLException("keyspace system_schema_mcs does not exist")
+            }
+            []
+        }
+        def barrier = new TableReadinessBarrier(database)
+        barrier.register("a", TableReadinessBarrier.PendingState.CREATING)
+
+        when:
+        barrier.awaitAll()
+
+        then:
+        !barrier.hasPendingTables()
+    }
+
+    def "other threads can use the barrier while one waits"() {
+        given:
+        def barrier
+        def others = Executors.newSingleThreadExecutor()
+        def registeredWhilePolling = []
+        barrier = new TableReadinessBarrier(keyspaces([
+                [[table_name: "a", status: "CREATING"]],
+                [[table_name: "a", status: "ACTIVE"]]], {
+            // would block until the poll is over if the poll held the monitor
+            def future = others.submit({
+                barrier.register("b", TableReadinessBarrier.PendingState.CREATING)
+                barrier.isPending("b")
+            } as Callable)
+            registeredWhilePolling << future.get(5, TimeUnit.SECONDS)
+        }))
+        barrier.register("a", TableReadinessBarrier.PendingState.CREATING)
+
+        when:
+        barrier.await(["a"])
+
+        then:
+        registeredWhilePolling == [true, true]
+        !barrier.isPending("a")
+        // not created yet according to the polls
+        barrier.isPending("b")
+
+        cleanup:
+        others.shutdownNow()
+    }
+}
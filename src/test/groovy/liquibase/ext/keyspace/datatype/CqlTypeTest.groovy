@@ -0,0 +1,35 @@
+package liquibase.ext.keyspace.datatype
+
+import spock.lang.Specification
+
+class CqlTypeTest extends Specification {
+
+    def "types are parsed into their parameters"() {
+        when:
+        def type = CqlType.parse("frozen<map<text, tuple<int, \"MyType\">>>")
+
+        then:
+        type.frozen
+        type.parameters[0].name == "map"
+        type.parameters[0].collection
+        type.parameters[0].parameters*.toString() == ["text", "tuple<int, \"MyType\">"]
+        type.parameters[0].parameters[1].parameters[1].name == "\"MyType\""
+    }
+
+    def "every spelling of a type is the same instance"() {
+        expect:
+        CqlType.parse("map<text, list<int>>").is(CqlType.parse("MAP< text ,list<INT> >"))
+        CqlType.parse("map<text, list<int>>").parameters[1].is(CqlType.parse("list<int>"))
+        CqlType.parse("text").toDataType().is(CqlType.parse(" text").toDataType())
+        CqlType.parse("Map<Text,Int>").toString() == "map<text, int>"
+    }
+
+    def "text which doesn't parse is kept as it is"() {
+        expect:
+        CqlType.parse(text).toString() == text
+        CqlType.parse(text).parameters.empty
+
+        where:
+        text << ["list<map<text, int>", "map<text int>", "list<>"]
+    }
+}
@@ -0,0 +1,61 @@
+package liquibase.ext.keyspace.diff
+
+import spock.lang.Specification
+
+class KeyspaceStreamingDiffTest extends Specification {
+
+    static column(String name, String type, String kind, int position = -1, String order = "none") {
+        [COLUMN_NAME: name, TYPE: type, KIND: kind, POSITION: position, CLUSTERING_ORDER: order]
+    }
+
+    static source(String keyspaceName, Map<String, List<Map>> tables) {
+        [getKeyspaceName: { keyspaceName },
+         getTableNames  : { new ArrayList<>(tables.keySet()) },
+         getColumns     : { String tableName -> tables[tableName] }] as KeyspaceStreamingDiff.SchemaSource
+    }
+
+    def "missing and surplus tables and columns become changesets"() {
+        given:
+        def reference = source("ref", [
+                events: [column("id", "uuid", "partition_key", 0), column("at", "timestamp", "clustering", 0, "desc"),
+                         column("payload", "text", "regular")],
+                users : [column("id", "uuid", "partition_key", 0), column("name", "text", "regular"),
+                         column("email", "text", "regular")],
+        ])
+        def target = source("app", [
+                users : [column("id", "uuid", "partition_key", 0), column("name", "text", "regular"),
+                         column("legacy", "int", "regular")],
+                zombie: [column("id", "int", "partition_key", 0)],
+        ])
+        def writer = new StringWriter()
+
+        when:
+        def count = new KeyspaceStreamingDiff(reference, target, "ci").write(writer)
+        def cql = writer.toString().readLines().findAll { it && !it.startsWith("--") }
+
+        then:
+        count == 4
+        cql == [
+                "CREATE TABLE app.events (id uuid, at timestamp, payload text, PRIMARY KEY ((id), at)) WITH CLUSTERING ORDER BY (at DESC);",
+                "ALTER TABLE app.users ADD email text;",
+                "ALTER TABLE app.users DROP legacy;",
+                "DROP TABLE app.zombie;",
+        ]
+        writer.toString().startsWith("-- liquibase formatted sql")
+        writer.toString().contains("--changeset ci:")
+    }
+
+    def "differences which can't be altered are only commented"() {
+        given:
+        def reference = source("ref", [t: [column("id", "uuid", "partition_key", 0), column("v", "text", "regular")]])
+        def target = source("app", [t: [column("id", "uuid", "partition_key", 0), column("v", "int", "regular")]])
+        def writer = new StringWriter()
+
+        when:
+        def count = new KeyspaceStreamingDiff(reference, target, "ci").write(writer)
+
+        then:
+        count == 0
+        writer.toString().contains("-- Column t.v differs, expected v text but found v int")
+    }
+}
@@ -0,0 +1,128 @@
+package liquibase.ext.keyspace.executor
+
+import liquibase.Scope
+import liquibase.database.Database
+import liquibase.database.PreparedStatementFactory
+import liquibase.exception.DatabaseException
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+import liquibase.ext.keyspace.sqlgenerator.LockDatabaseChangeLogGeneratorKeyspace
+import liquibase.ext.keyspace.statement.SharedConnectionStatement
+import liquibase.sql.visitor.AbstractSqlVisitor
+import liquibase.statement.AbstractSqlStatement
+import liquibase.statement.ExecutablePreparedStatement
+import liquibase.statement.core.InsertSetStatement
+import liquibase.statement.core.InsertStatement
+import liquibase.statement.core.RawSqlStatement
+import liquibase.statement.core.UnlockDatabaseChangeLogStatement
+
+import java.sql.SQLTimeoutException
+
+class JdbcExecutorKeyspaceTest extends FakeKeyspaceSpecification {
+
+    def "a retried statement is generated once and runs the same CQL again"() {
+        given:
+        def tries = 0
+        def executor = new JdbcExecutorKeyspace()
+        executor.setDatabase(fakeDatabase { String cql, List parameters ->
+            if (cql.startsWith("INSERT") && ++tries == 1) {
+                throw new SQLTimeoutException("no response")
+            }
+            []
+        })
+        def visitor = new CountingSqlVisitor()
+
+        when:
+        executor.execute(new RawSqlStatement("INSERT INTO ks.t (id) VALUES (1)"), [visitor])
+
+        then:
+        visitor.calls == 1
+        executedContaining("INSERT").size() == 2
+        executedContaining("INSERT").unique().size() == 1
+    }
+
+    def "a release only clears a lock held by this process"() {
+        given:
+        def executor = new JdbcExecutorKeyspace()
+        executor.setDatabase(fakeDatabase { String cql, List parameters ->
+            if (cql.contains("SET LOCKED = FALSE")) {
+                return [["[applied]": parameters[2] == holder, locked: true, lockedby: holder]]
+            }
+            []
+        })
+
+        expect:
+        executor.update(new UnlockDatabaseChangeLogStatement(), null) == released
+        executedContaining("SET LOCKED = FALSE")[0].endsWith("IF LOCKED = TRUE AND LOCKEDBY = ?")
+
+        where:
+        holder                                               | released
+        LockDatabaseChangeLogGeneratorKeyspace.getLockedBy() | 1
+        "other host"                                         | 0
+    }
+
+    def "statements generated together are retried one by one"() {
+        given:
+        def tries = 0
+        def executor = new JdbcExecutorKeyspace()
+        executor.setDatabase(fakeDatabase { String cql, List parameters ->
+            if (cql.contains("(2)") && ++tries == 1) {
+                throw new SQLTimeoutException("no response")
+            }
+            []
+        })
+        def statement = new InsertSetStatement(null, null, "t")
+        (1..2).each { statement.addInsertStatement(new InsertStatement(null, null, "t").addColumnValue("id", it)) }
+
+        when:
+        Scope.child(["liquibase.keyspace.batchSize": 1], { executor.execute(statement, null) } as Scope.ScopedRunner)
+
+        then:
+        executedContaining("(1)").size() == 1
+        executedContaining("(2)").size() == 2
+    }
+
+    def "statements which use the connection directly run while it is held"() {
+        given:
+        def executor = new JdbcExecutorKeyspace()
+        def database = fakeDatabase { String cql, List parameters -> [] }
+        executor.setDatabase(database)
+        def direct = new LockCheckingStatement(statementCache: database.statementCache)
+        def shared = new SharedLockCheckingStatement(statementCache: database.statementCache)
+
+        when:
+        executor.execute(direct)
+        executor.execute(shared)
+
+        then:
+        direct.held
+        !shared.held
+    }
+
+    static class LockCheckingStatement extends AbstractSqlStatement implements ExecutablePreparedStatement {
+        Object statementCache
+        Boolean held
+
+        @Override
+        void execute(PreparedStatementFactory factory) throws DatabaseException {
+            held = Thread.holdsLock(statementCache)
+        }
+    }
+
+    static class SharedLockCheckingStatement extends LockCheckingStatement implements SharedConnectionStatement {
+    }
+
+    static class CountingSqlVisitor extends AbstractSqlVisitor {
+        int calls
+
+        @Override
+        String getName() {
+            "counting"
+        }
+
+        @Override
+        String modifySql(String sql, Database database) {
+            calls++
+            sql
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package liquibase.ext.keyspace.executor
+
+import liquibase.exception.DatabaseException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.sql.SQLException
+import java.sql.SQLTimeoutException
+
+class KeyspaceRetryPolicyTest extends Specification {
+
+    @Unroll
+    def "isIdempotent #cql"() {
+        expect:
+        KeyspaceRetryPolicy.isIdempotent(cql) == expected
+
+        where:
+        cql                                                      | expected
+        "SELECT * FROM ks.t"                                     | true
+        "INSERT INTO ks.t (id, v) VALUES (1, 'a')"               | true
+        "INSERT INTO ks.t (id, v) VALUES (1, 'a') IF NOT EXISTS" | false
+        "UPDATE ks.t SET c = c + 1 WHERE id = 1"                 | false
+        "UPDATE ks.t SET l = [1] + l WHERE id = 1"               | false
+        "UPDATE ks.t SET v = 'b' WHERE id = 1"                   | true
+        "CREATE TABLE IF NOT EXISTS ks.t (id int PRIMARY KEY)"   | true
+        "CREATE TABLE ks.t (id int PRIMARY KEY)"                 | false
+        "ALTER TABLE ks.t ADD v text"                            | false
+    }
+
+    @Unroll
+    def "classify #error"() {
+        expect:
+        KeyspaceRetryPolicy.classify(new DatabaseException(error)) == expected
+
+        where:
+        error                                                                        | expected
+        new SQLException("Queried host was overloaded", "HY000", 0x1001)             | KeyspaceRetryPolicy.ErrorClass.THROTTLED
+        new OverloadedException()                                                    | KeyspaceRetryPolicy.ErrorClass.THROTTLED
+        new SQLException("Throughput exceeds the current capacity of your table")    | KeyspaceRetryPolicy.ErrorClass.THROTTLED
+        new SQLException("Cassandra timeout during write query", "HY000", 0x1100)   | KeyspaceRetryPolicy.ErrorClass.TIMEOUT
+        new SQLTimeoutException("no response")                                       | KeyspaceRetryPolicy.ErrorClass.TIMEOUT
+        new WriteTimeoutException()                                                  | KeyspaceRetryPolicy.ErrorClass.TIMEOUT
+        new UnavailableException()                                                   | KeyspaceRetryPolicy.ErrorClass.OTHER
+        new SQLException("Not enough replicas available, unavailable", "HY000", 0x1000) | KeyspaceRetryPolicy.ErrorClass.OTHER
+        // only the type tells, not a message mentioning a timeout
+        new SQLException("Invalid value for option timeout")                         | KeyspaceRetryPolicy.ErrorClass.OTHER
+    }
+
+    def withClientTimestamp() {
+        expect:
+        KeyspaceRetryPolicy.withClientTimestamp("INSERT INTO t (id) VALUES (1);", 5) == "INSERT INTO t (id) VALUES (1) USING TIMESTAMP 5"
+        KeyspaceRetryPolicy.withClientTimestamp("UPDATE t SET v = 1 WHERE id = 1", 5) == "UPDATE t USING TIMESTAMP 5 SET v = 1 WHERE id = 1"
+        KeyspaceRetryPolicy.withClientTimestamp("DELETE FROM t WHERE id = 1", 5) == "DELETE FROM t USING TIMESTAMP 5 WHERE id = 1"
+        KeyspaceRetryPolicy.withClientTimestamp("UPDATE t SET c = c + 1 WHERE id = 1", 5) == "UPDATE t SET c = c + 1 WHERE id = 1"
+    }
+
+    def retriesThrottledStatements() {
+        given:
+        def policy = new KeyspaceRetryPolicy()
+        def calls = 0
+
+        when:
+        def result = policy.execute("UPDATE t SET c = c + 1 WHERE id = 1", {
+            if (++calls < 3) {
+                throw new SQLException("Queried host was overloaded", "HY000", 0x1001)
+            }
+            return "done"
+        })
+
+        then:
+        result == "done"
+        policy.getErrors(KeyspaceRetryPolicy.ErrorClass.THROTTLED) == 2
+        policy.getRetries() == 2
+    }
+
+    def doesNotRetryTimedOutNonIdempotentStatements() {
+        given:
+        def policy = new KeyspaceRetryPolicy()
+        def calls = 0
+
+        when:
+        policy.execute("UPDATE t SET c = c + 1 WHERE id = 1", {
+            calls++
+            throw new SQLTimeoutException("Operation timed out")
+        })
+
+        then:
+        thrown(DatabaseException)
+        calls == 1
+        policy.getErrors(KeyspaceRetryPolicy.ErrorClass.TIMEOUT) == 1
+    }
+
+    // stand-ins for the driver exceptions, which are recognized by their simple name
+
+    static class OverloadedException extends RuntimeException {
+    }
+
+    static class WriteTimeoutException extends RuntimeException {
+    }
+
+    static class UnavailableException extends RuntimeException {
+    }
+}
@@ -0,0 +1,38 @@
+package liquibase.ext.keyspace.executor
+
+import liquibase.Scope
+import liquibase.ext.keyspace.configuration.KeyspaceConfiguration
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+
+class KeyspaceThreadsTest extends Specification {
+
+    def "tasks run with the settings of the scope they were created in"() {
+        given:
+        def pool = KeyspaceThreads.newFixedThreadPool("keyspace-test", 1)
+        def task = Scope.child(["liquibase.keyspace.batchSize": 7], {
+            KeyspaceThreads.inCurrentScope({ KeyspaceConfiguration.BATCH_SIZE.currentValue } as Callable)
+        } as Scope.ScopedRunnerWithReturn)
+
+        expect:
+        pool.submit(task).get() == 7
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+    def "pools run with the settings of the scope they were created in"() {
+        given:
+        def pool = Scope.child(["liquibase.keyspace.batchSize": 9], {
+            KeyspaceThreads.newFixedThreadPool("keyspace-test", 2)
+        } as Scope.ScopedRunnerWithReturn)
+
+        expect:
+        // a closure is a Runnable as well, submit would take it as one
+        pool.invokeAll([{ KeyspaceConfiguration.BATCH_SIZE.currentValue } as Callable])[0].get() == 9
+
+        cleanup:
+        pool.shutdownNow()
+    }
+}
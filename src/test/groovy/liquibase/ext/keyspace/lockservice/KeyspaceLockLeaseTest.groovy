@@ -0,0 +1,52 @@
+package liquibase.ext.keyspace.lockservice
+
+import liquibase.ext.keyspace.database.KeyspaceStatementCache
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.ResultSetMetaData
+
+class KeyspaceLockLeaseTest extends Specification {
+
+    def "a renewal which is not applied marks the lease as lost"() {
+        given:
+        def metaData = Mock(ResultSetMetaData) {
+            getColumnCount() >> 2
+            getColumnLabel(1) >> "[applied]"
+            getColumnLabel(2) >> "lockedby"
+        }
+        def resultSet = Mock(ResultSet) {
+            next() >> true
+            getMetaData() >> metaData
+            getObject(1) >> applied
+            getObject(2) >> "other"
+        }
+        def statement = Mock(PreparedStatement) {
+            execute() >> true
+            getResultSet() >> resultSet
+        }
+        def connection = Mock(Connection) {
+            prepareStatement(_ as String) >> statement
+        }
+        def cache = new KeyspaceStatementCache(connection)
+        def lease = new KeyspaceLockLease({ cache }, "ks.databasechangeloglock", 1, "me", 60)
+
+        expect:
+        lease.renew() == applied
+        lease.lost == !applied
+
+        cleanup:
+        lease.close()
+
+        where:
+        applied << [true, false]
+    }
+
+    def "a lease not renewed for its whole duration is lost"() {
+        expect:
+        new KeyspaceLockLease({ null }, "ks.databasechangeloglock", 1, "me", 0).lost
+        !new KeyspaceLockLease({ null }, "ks.databasechangeloglock", 1, "me", 60).lost
+    }
+}
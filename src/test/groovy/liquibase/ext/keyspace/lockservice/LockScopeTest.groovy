@@ -0,0 +1,53 @@
+package liquibase.ext.keyspace.lockservice
+
+import spock.lang.Specification
+
+class LockScopeTest extends Specification {
+
+    def "scopes get their own lock row"() {
+        expect:
+        LockScope.lockId(null) == LockScope.GLOBAL_LOCK_ID
+        LockScope.lockId("db/orders/") > LockScope.GLOBAL_LOCK_ID
+        LockScope.lockId("db/orders/") == LockScope.lockId("db/orders/")
+        LockScope.lockId("db/orders/") != LockScope.lockId("db/billing/")
+    }
+
+    def "history rows belong to the scope their file is under"() {
+        expect:
+        LockScope.contains(scope, fileName) == contained
+
+        where:
+        scope                     | fileName                                 | contained
+        null                      | "db/orders/changelog.xml"                | true
+        "db/orders/"              | "db/orders/changelog.xml"                | true
+        "db/orders/"              | "classpath:db/Orders/tables.xml"         | true
+        "db/orders/"              | "db/billing/changelog.xml"               | false
+        "db/orders/changelog.xml" | "db/orders/changelog.xml"                | true
+        "db/orders"               | "db/orders/changelog.xml"                | true
+        "db/orders"               | "db/orders-archive/changelog.xml"        | false
+        "db/orders/changelog.xml" | "db/orders/changelog.xml.bak"            | false
+    }
+
+    def "scopes overlap if one contains the other"() {
+        expect:
+        LockScope.overlaps(scope, otherScope) == overlapping
+        LockScope.overlaps(otherScope, scope) == overlapping
+
+        where:
+        scope        | otherScope                | overlapping
+        null         | "db/orders/"              | true
+        "db/orders/" | "db/orders/"              | true
+        "db/orders/" | "db/orders/changelog.xml" | true
+        "db"         | "db/orders/"              | true
+        "db/orders/" | "db/billing/"             | false
+        "db/orders"  | "db/orders-archive"       | false
+    }
+
+    def "the LOCKEDBY of a scoped lock names the scope"() {
+        expect:
+        LockScope.lockedBy("host (10.0.0.1) #1234abcd", null) == "host (10.0.0.1) #1234abcd"
+        LockScope.scopeOf(LockScope.lockedBy("host (10.0.0.1) #1234abcd", null)) == null
+        LockScope.scopeOf(LockScope.lockedBy("host (10.0.0.1) #1234abcd", "db/Orders/")) == "db/orders/"
+        LockScope.scopeOf(null) == null
+    }
+}
@@ -0,0 +1,123 @@
+package liquibase.ext.keyspace.lockservice
+
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+
+import java.sql.SQLException
+
+class LockServiceKeyspaceTest extends FakeKeyspaceSpecification {
+
+    def "an existing lock row is read once and no table is created"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters ->
+            cql.startsWith("SELECT LOCKED") ? [[locked: false, lockedby: null, lockgranted: null]] : []
+        }
+        def lockService = new LockServiceKeyspace()
+        lockService.setDatabase(database)
+
+        when:
+        lockService.init()
+        lockService.init()
+
+        then:
+        executedContaining("SELECT LOCKED").size() == 1
+        executedContaining("CREATE TABLE").isEmpty()
+        executedContaining("INSERT").isEmpty()
+        executedContaining("UPDATE").isEmpty()
+    }
+
+    def "a missing lock row is inserted if not exists"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters -> [] }
+        def lockService = new LockServiceKeyspace()
+        lockService.setDatabase(database)
+
+        when:
+        lockService.init()
+
+        then:
+        executedContaining("SELECT LOCKED").size() == 1
+        executedContaining("CREATE TABLE").isEmpty()
+        executedContaining("INSERT INTO").size() == 1
+        executedContaining("INSERT INTO")[0].endsWith("IF NOT EXISTS")
+    }
+
+    def "a lock row without LOCKED is reset"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters ->
+            cql.startsWith("SELECT LOCKED") ? [[locked: null, lockedby: null, lockgranted: null]] : []
+        }
+        def lockService = new LockServiceKeyspace()
+        lockService.setDatabase(database)
+
+        when:
+        lockService.init()
+
+        then:
+        executedContaining("UPDATE").size() == 1
+        executedContaining("UPDATE")[0].endsWith("IF LOCKED = null")
+        executedContaining("INSERT").isEmpty()
+    }
+
+    def "a missing lock table is created and both tracking tables are waited for"() {
+        given:
+        def lockTableCreated = false
+        def changeLogPolls = 0
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.startsWith("SELECT LOCKED")) {
+                if (!lockTableCreated) {
+                    throw new SQLException("unconfigured table databasechangeloglock")
+                }
+                return [[locked: false, lockedby: null, lockgranted: null]]
+            }
+            if (cql.startsWith("CREATE TABLE") && cql.toLowerCase().contains("databasechangeloglock")) {
+                lockTableCreated = true
+            }
+            if (cql.contains("FROM system_schema.tables")) {
+                // another node created DATABASECHANGELOG just before, it is not active yet
+                return [[table_name: "databasechangelog"]]
+            }
+            if (cql.contains("FROM system_schema_mcs.keyspaces")) {
+                return [[keyspace_name: "ks"]]
+            }
+            if (cql.contains("FROM system_schema_mcs.tables")) {
+                return [[table_name: "databasechangeloglock", status: "ACTIVE"],
+                        [table_name: "databasechangelog", status: changeLogPolls++ < 1 ? "CREATING" : "ACTIVE"]]
+            }
+            []
+        }
+        def lockService = new LockServiceKeyspace()
+        lockService.setDatabase(database)
+
+        when:
+        lockService.init()
+
+        then:
+        executedContaining("CREATE TABLE").size() == 1
+        executedContaining("CREATE TABLE")[0].toLowerCase().contains("databasechangeloglock")
+        executedContaining("FROM system_schema_mcs.tables").size() == 2
+        !database.tableReadinessBarrier.hasPendingTables()
+        executedContaining("SELECT LOCKED").size() == 2
+    }
+
+    def "a forced release clears the lock whoever holds it"() {
+        given:
+        def database = fakeDatabase { String cql, List parameters ->
+            if (cql.startsWith("SELECT LOCKED")) {
+                return [[locked: true, lockedby: "other host", lockgranted: new Date()]]
+            }
+            if (cql.contains("FROM system_schema.tables")) {
+                return [[table_name: "databasechangeloglock"]]
+            }
+            []
+        }
+        def lockService = new LockServiceKeyspace()
+        lockService.setDatabase(database)
+
+        when:
+        lockService.forceReleaseLock()
+
+        then:
+        executedContaining("SET LOCKED = FALSE").size() == 1
+        executedContaining("SET LOCKED = FALSE")[0].endsWith("IF LOCKED = TRUE")
+    }
+}
@@ -0,0 +1,76 @@
+package liquibase.ext.keyspace.snapshot
+
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+import liquibase.ext.keyspace.database.KeyspaceDatabase
+
+class KeyspaceSchemaMetadataTest extends FakeKeyspaceSpecification {
+
+    /**
+     * @return a database with the tables person and pet in keyspace ks
+     */
+    private KeyspaceDatabase keyspace() {
+        def columns = [
+                [keyspace_name: "ks", table_name: "person", column_name: "id", type: "int", kind: "partition_key"],
+                [keyspace_name: "ks", table_name: "person", column_name: "name", type: "text", kind: "regular"],
+                [keyspace_name: "ks", table_name: "pet", column_name: "id", type: "uuid", kind: "partition_key"]]
+        fakeDatabase { String cql, List parameters ->
+            def tableName = parameters.size() > 1 ? parameters[1] : null
+            if (cql.contains("FROM system_schema.tables")) {
+                def tables = [[table_name: "person", keyspace_name: "ks", comment: null], [table_name: "pet", keyspace_name: "ks", comment: "pets"]]
+                return tableName == null ? tables : tables.findAll { it.table_name == tableName }
+            }
+            if (cql.contains("FROM system_schema.columns")) {
+                return tableName == null ? columns : columns.findAll { it.table_name == tableName }
+            }
+            []
+        }
+    }
+
+    def "tables and columns are looked up by their lower case name and read once"() {
+        given:
+        def metadata = new KeyspaceSchemaMetadata(keyspace(), "ks", null)
+
+        when:
+        def table = metadata.getTable("PERSON")
+        def columns = metadata.getColumns("Person")
+        def column = metadata.getColumn("person", "NAME")
+        metadata.getTable("person")
+        metadata.getColumns("PERSON")
+
+        then:
+        table.TABLE_NAME == "person"
+        columns*.COLUMN_NAME == ["id", "name"]
+        column.TYPE == "text"
+        executedContaining("FROM system_schema.tables").size() == 1
+        executedContaining("FROM system_schema.columns").size() == 1
+        executed.find { it[0].contains("FROM system_schema.columns") }[1] == ["ks", "person"]
+    }
+
+    def "a missing table is remembered as missing"() {
+        given:
+        def metadata = new KeyspaceSchemaMetadata(keyspace(), "ks", null)
+
+        expect:
+        metadata.getTable("car") == null
+        metadata.getTable("CAR") == null
+        metadata.getColumn("car", "id") == null
+        executedContaining("FROM system_schema.tables").size() == 1
+    }
+
+    def "once the whole keyspace is read, its columns are read with a single query"() {
+        given:
+        def metadata = new KeyspaceSchemaMetadata(keyspace(), "ks", null)
+
+        when:
+        def tables = metadata.getTables()
+        def personColumns = metadata.getColumns("person")
+        def petColumns = metadata.getColumns("PET")
+
+        then:
+        tables*.TABLE_NAME == ["person", "pet"]
+        personColumns*.COLUMN_NAME == ["id", "name"]
+        petColumns*.TYPE == ["uuid"]
+        executedContaining("FROM system_schema.columns").size() == 1
+        metadata.getTable("Pet").COMMENT == "pets"
+    }
+}
@@ -0,0 +1,81 @@
+package liquibase.ext.keyspace.snapshot
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+class KeyspaceSnapshotCacheTest extends Specification {
+
+    static final String CLUSTER = "jdbc:cassandra://cassandra.eu-west-1.amazonaws.com:9142/ks"
+
+    def columns = [
+            [KEYSPACE_NAME: "ks", TABLE_NAME: "orders", COLUMN_NAME: "id", TYPE: "uuid", KIND: "partition_key"],
+            [KEYSPACE_NAME: "ks", TABLE_NAME: "orders", COLUMN_NAME: "items", TYPE: "map<text, frozen<list<int>>>", KIND: "regular"],
+    ]
+
+    def "cached columns are only reused with the same fingerprint on the same cluster"() {
+        given:
+        def directory = Files.createTempDirectory("snapshot-cache")
+        def cache = new KeyspaceSnapshotCache(directory, 3600)
+
+        when:
+        cache.writeColumns(CLUSTER, "ks", "abc", columns)
+
+        then:
+        cache.readColumns(CLUSTER, "ks", "abc") == columns
+        cache.readColumns(CLUSTER, "ks", "def") == null
+        cache.readColumns(CLUSTER, "other", "abc") == null
+        cache.readColumns("jdbc:cassandra://cassandra.us-east-1.amazonaws.com:9142/ks", "ks", "abc") == null
+
+        cleanup:
+        directory.toFile().deleteDir()
+    }
+
+    def "cached columns expire"() {
+        given:
+        def directory = Files.createTempDirectory("snapshot-cache")
+        def cache = new KeyspaceSnapshotCache(directory, 60)
+        cache.writeColumns(CLUSTER, "ks", "abc", columns)
+
+        when:
+        Files.list(directory).each { Files.setLastModifiedTime(it, FileTime.fromMillis(System.currentTimeMillis() - 120000)) }
+
+        then:
+        cache.readColumns(CLUSTER, "ks", "abc") == null
+
+        cleanup:
+        directory.toFile().deleteDir()
+    }
+
+    def "invalidating drops the keyspaces of the cluster only"() {
+        given:
+        def directory = Files.createTempDirectory("snapshot-cache")
+        def cache = new KeyspaceSnapshotCache(directory, 3600)
+        def otherCluster = "jdbc:cassandra://cassandra.us-east-1.amazonaws.com:9142/ks"
+        cache.writeColumns(CLUSTER, "ks", "abc", columns)
+        cache.writeColumns(CLUSTER, "other", "abc", columns)
+        cache.writeColumns(otherCluster, "ks", "abc", columns)
+
+        when:
+        cache.invalidate(CLUSTER)
+
+        then:
+        cache.readColumns(CLUSTER, "ks", "abc") == null
+        cache.readColumns(CLUSTER, "other", "abc") == null
+        cache.readColumns(otherCluster, "ks", "abc") == columns
+
+        cleanup:
+        directory.toFile().deleteDir()
+    }
+
+    def "the fingerprint changes with the tables"() {
+        given:
+        def tables = [[TABLE_NAME: "orders", COMMENT: null], [TABLE_NAME: "items", COMMENT: "x"]]
+
+        expect:
+        KeyspaceSnapshotCache.fingerprint(tables) == KeyspaceSnapshotCache.fingerprint(tables.reverse())
+        KeyspaceSnapshotCache.fingerprint(tables) != KeyspaceSnapshotCache.fingerprint(tables.subList(0, 1))
+        KeyspaceSnapshotCache.fingerprint(tables) != KeyspaceSnapshotCache.fingerprint([[TABLE_NAME: "orders", COMMENT: "y"], tables[1]])
+    }
+}
@@ -0,0 +1,51 @@
+package liquibase.ext.keyspace.sqlgenerator
+
+import liquibase.change.ColumnConfig
+import liquibase.change.ConstraintsConfig
+import liquibase.ext.keyspace.change.CreateTableChangeKeyspace
+import liquibase.ext.keyspace.database.KeyspaceDatabase
+import spock.lang.Specification
+
+class CreateTableGeneratorKeyspaceTest extends Specification {
+
+    def change = new CreateTableChangeKeyspace(tableName: "orders", columns: [
+            new ColumnConfig(name: "id", type: "uuid", constraints: new ConstraintsConfig(primaryKey: true))])
+
+    def "table options are set by the CREATE TABLE"() {
+        given:
+        def database = new KeyspaceDatabase()
+        change.readCapacityUnits = 10
+        change.writeCapacityUnits = 20
+        change.defaultTimeToLive = 3600
+        change.pointInTimeRecovery = true
+
+        when:
+        def sql = new CreateTableGeneratorKeyspace().generateSql(change.generateStatements(database)[0], database, null)
+
+        then:
+        change.validate(database).errorMessages.empty
+        sql[0].toSql().endsWith(" WITH CUSTOM_PROPERTIES = {'capacity_mode': {'throughput_mode': 'PROVISIONED', " +
+                "'read_capacity_units': 10, 'write_capacity_units': 20}, 'point_in_time_recovery': {'status': 'enabled'}, " +
+                "'ttl': {'status': 'enabled'}} AND default_time_to_live = 3600")
+    }
+
+    def "without options the table is created as before"() {
+        given:
+        def database = new KeyspaceDatabase()
+
+        when:
+        def sql = new CreateTableGeneratorKeyspace().generateSql(change.generateStatements(database)[0], database, null)
+
+        then:
+        !sql[0].toSql().contains("WITH")
+    }
+
+    def "capacity units need provisioned capacity"() {
+        given:
+        change.capacityMode = "pay_per_request"
+        change.readCapacityUnits = 10
+
+        expect:
+        !change.validate(new KeyspaceDatabase()).errorMessages.empty
+    }
+}
@@ -0,0 +1,94 @@
+package liquibase.ext.keyspace.sqlgenerator
+
+import liquibase.Scope
+import liquibase.ext.keyspace.FakeKeyspaceSpecification
+import liquibase.ext.keyspace.database.KeyspaceDatabase
+import liquibase.statement.core.InsertSetStatement
+import liquibase.statement.core.InsertStatement
+
+class InsertSetGeneratorKeyspaceTest extends FakeKeyspaceSpecification {
+
+    def splitsRowsIntoUnloggedBatchesOfAtMostThirty() {
+        given:
+        def database = new KeyspaceDatabase()
+        def statement = new InsertSetStatement(null, null, "person")
+        (1..31).each { statement.addInsertStatement(new InsertStatement(null, null, "person").addColumnValue("id", it)) }
+
+        when:
+        def sql = new InsertSetGeneratorKeyspace().generateSql(statement, database, null)
+
+        then:
+        sql.length == 2
+        sql[0].toSql().startsWith("BEGIN UNLOGGED BATCH")
+        sql[0].toSql().endsWith("APPLY BATCH")
+        sql[0].toSql().count("INSERT INTO") == 30
+        !sql[1].toSql().contains("BATCH")
+        sql[1].toSql().contains("(31)")
+    }
+
+    def "every batch holds a single partition, large partitions are split"() {
+        given:
+        def statement = new InsertSetStatement(null, null, "person")
+        [["a", 1], ["b", 1], ["a", 2], ["b", 2], ["a", 3]].each { tenant, id ->
+            statement.addInsertStatement(new InsertStatement(null, null, "person").addColumnValue("TENANT", tenant).addColumnValue("id", id))
+        }
+
+        when:
+        def sql = Scope.child(["liquibase.keyspace.batchSize": 2], {
+            new InsertSetGeneratorKeyspace().generateSql(statement, personDatabase(), null)
+        } as Scope.ScopedRunnerWithReturn)
+
+        then:
+        sql*.toSql().collect { it.findAll(/'(\w)', (\d)/) { match, tenant, id -> tenant + id } } == [["a1", "a2"], ["a3"], ["b1", "b2"]]
+    }
+
+    def "rows with the same primary key go into different batches"() {
+        given:
+        def statement = new InsertSetStatement(null, null, "person")
+        [["a", 1, "x"], ["a", 2, "x"], ["a", 1, "y"]].each { tenant, id, name ->
+            statement.addInsertStatement(new InsertStatement(null, null, "person")
+                    .addColumnValue("tenant", tenant).addColumnValue("id", id).addColumnValue("name", name))
+        }
+
+        when:
+        def sql = new InsertSetGeneratorKeyspace().generateSql(statement, personDatabase(), null)
+
+        then:
+        sql.length == 2
+        sql[0].toSql().count("INSERT INTO") == 2
+        sql[0].toSql().contains("'x'") && !sql[0].toSql().contains("'y'")
+        sql[1].toSql().contains("'y'")
+    }
+
+    def "the key of a table in another keyspace is read from that keyspace"() {
+        given:
+        def statement = new InsertSetStatement("other", null, "person")
+        [["a", 1], ["b", 1]].each { tenant, id ->
+            statement.addInsertStatement(new InsertStatement("other", null, "person").addColumnValue("tenant", tenant).addColumnValue("id", id))
+        }
+        def database = fakeDatabase { String cql, List parameters ->
+            cql.contains("FROM system_schema.columns") && parameters == ["other", "person"] ? [
+                    [column_name: "tenant", kind: "partition_key", position: 0],
+                    [column_name: "id", kind: "clustering", position: 0]] : []
+        }
+
+        when:
+        def sql = new InsertSetGeneratorKeyspace().generateSql(statement, database, null)
+
+        then:
+        sql.length == 2
+        executed.find { it[0].contains("FROM system_schema.columns") }[1] == ["other", "person"]
+    }
+
+    /**
+     * @return a database with a table person partitioned by tenant and clustered by id
+     */
+    private KeyspaceDatabase personDatabase() {
+        fakeDatabase { String cql, List parameters ->
+            cql.contains("FROM system_schema.columns") && parameters[1] == "person" ? [
+                    [column_name: "tenant", kind: "partition_key", position: 0],
+                    [column_name: "id", kind: "clustering", position: 0],
+                    [column_name: "name", kind: "regular", position: -1]] : []
+        }
+    }
+}